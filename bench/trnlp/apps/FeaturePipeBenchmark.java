@@ -0,0 +1,106 @@
+package trnlp.apps;
+
+import cc.mallet.fst.CRF;
+import cc.mallet.pipe.Pipe;
+import cc.mallet.types.Alphabet;
+import cc.mallet.types.Instance;
+import cc.mallet.types.InstanceList;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link CrfTrainer.SimpleTaggerSentence2FeatureVectorSequence} with {@link FeatureIndexPipe}, used
+ * sequentially or with {@link ParallelInstancePiping}, while loading a training corpus. Every call pipes all
+ * sentences to a new instance list with a new pipe, so both new and known features are looked up, as in training.
+ * <p/>
+ * Sentences are generated from the feature strings of a trained model. Every word has one feature for each template
+ * and features are drawn with a skewed distribution, so frequent features repeat like in real data. Input is either
+ * the text of a full feature file block, or String[][] rows as generated by {@link CrfTemplates#getFullFeatureTokens}.
+ * Run with "ant bench", gc profiler reports the allocation rates.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class FeaturePipeBenchmark {
+
+    static final String[] LABELS = {"SB", "SI", "OB", "OI", "AB", "AI", "VB", "VI"};
+
+    @Param({"simple", "trove", "parallel"})
+    String pipe;
+
+    @Param({"text", "tokens"})
+    String input;
+
+    @Param({"2000"})
+    int sentenceCount;
+
+    @Param({"100"})
+    int featuresPerWord;
+
+    @Param({"4"})
+    int threads;
+
+    Object[] sentences;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, ClassNotFoundException {
+        File model = new File(System.getProperty("bench.model", "src/tr/models/chunk-model.ser"));
+        Alphabet alphabet;
+        try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(model)))) {
+            alphabet = ((CRF) ois.readObject()).getInputAlphabet();
+        }
+        Random random = new Random(1);
+        sentences = new Object[sentenceCount];
+        for (int i = 0; i < sentenceCount; i++) {
+            String[][] rows = new String[5 + random.nextInt(20)][featuresPerWord + 1];
+            for (String[] row : rows) {
+                for (int f = 0; f < featuresPerWord; f++) {
+                    // squared uniform value favors small indexes.
+                    double r = random.nextDouble();
+                    row[f] = alphabet.lookupObject((int) (r * r * alphabet.size())).toString();
+                }
+                row[featuresPerWord] = LABELS[random.nextInt(LABELS.length)];
+            }
+            sentences[i] = input.equals("text") ? toText(rows) : rows;
+        }
+    }
+
+    static String toText(String[][] rows) {
+        StringBuilder sb = new StringBuilder();
+        for (String[] row : rows) {
+            for (int i = 0; i < row.length; i++) {
+                if (i > 0)
+                    sb.append(' ');
+                sb.append(row[i]);
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    @Benchmark
+    public InstanceList load() throws IOException {
+        Pipe p = pipe.equals("simple") ?
+                new CrfTrainer.SimpleTaggerSentence2FeatureVectorSequence() : new FeatureIndexPipe();
+        p.setTargetProcessing(true);
+        InstanceList instances = new InstanceList(p);
+        List<Instance> input = new ArrayList<>(sentences.length);
+        for (int i = 0; i < sentences.length; i++) {
+            input.add(new Instance(sentences[i], null, "sentence:" + i, null));
+        }
+        if (pipe.equals("parallel")) {
+            new ParallelInstancePiping((FeatureIndexPipe) p, threads, ParallelInstancePiping.DEFAULT_BLOCK_SIZE)
+                    .addThruPipe(input.iterator(), instances);
+        } else
+            instances.addThruPipe(input.iterator());
+        return instances;
+    }
+}
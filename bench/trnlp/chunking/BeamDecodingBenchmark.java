@@ -0,0 +1,104 @@
+package trnlp.chunking;
+
+import org.openjdk.jmh.annotations.*;
+import trnlp.apps.CrfBeamDecoder;
+import trnlp.apps.CrfTemplates;
+import trnlp.apps.TurkishMorphology;
+import trnlp.apps.TurkishSentenceTokenizer;
+import zemberek3.parser.morphology.SentenceMorphParse;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares beam search decoding with exact Viterbi decoding for different beam widths. Beam width 0 is the exact
+ * Viterbi decoder. Sentences are the same with {@link ChunkingBenchmark}.
+ * <p/>
+ * Accuracy of each beam width is printed in setup, as the ratio of words and sentences that get the same labels with
+ * exact decoding. So latency of a width can be read together with its search errors. Run e.g. with
+ * -Dbench.args="BeamDecodingBenchmark -p length=long"
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BeamDecodingBenchmark {
+
+    @Param({"short", "long"})
+    String length;
+
+    @Param({"0", "1", "2", "4", "8"})
+    int beamWidth;
+
+    @Param({"5"})
+    int nBest;
+
+    MalletBasedChunker chunker;
+    CrfBeamDecoder beamDecoder;
+
+    int[][][] featureIndexes;
+
+    int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        File model = new File(System.getProperty("bench.model", "src/tr/models/chunk-model.ser"));
+        File template = new File(System.getProperty("bench.template", "crfplusplus/template_cemil"));
+        chunker = new MalletBasedChunker(model, CrfTemplates.loadFromCrfPlusPlusTemplate(template, "/"));
+        TurkishSentenceTokenizer tokenizer = new TurkishSentenceTokenizer();
+        TurkishMorphology morphology = new TurkishMorphology();
+
+        List<String> sentences = ChunkingBenchmark.loadSentences(
+                length.equals("short") ? 1 : 12, length.equals("short") ? 7 : Integer.MAX_VALUE);
+        featureIndexes = new int[sentences.size()][][];
+        for (int i = 0; i < featureIndexes.length; i++) {
+            SentenceMorphParse parse = morphology.parseAndDisambiguateSentence(tokenizer.tokenizeAsStrings(sentences.get(i)));
+            featureIndexes[i] = chunker.compiledTemplates.getFeatureIndexes(ChunkingBenchmark.getSingleFeatures(parse));
+        }
+        if (beamWidth > 0) {
+            beamDecoder = new CrfBeamDecoder(chunker.decoder, beamWidth, Double.POSITIVE_INFINITY);
+            printAccuracy();
+        }
+    }
+
+    private void printAccuracy() {
+        int words = 0, sameWords = 0, sameSentences = 0;
+        for (int[][] sentence : featureIndexes) {
+            byte[] exact = chunker.decoder.decode(sentence);
+            byte[] beam = beamDecoder.decode(sentence);
+            int same = 0;
+            for (int i = 0; i < exact.length; i++) {
+                if (exact[i] == beam[i])
+                    same++;
+            }
+            words += exact.length;
+            sameWords += same;
+            if (same == exact.length)
+                sameSentences++;
+        }
+        System.out.println(String.format("%s sentences, beam width %d: word agreement %.4f, sentence agreement %.4f",
+                length, beamWidth, (double) sameWords / words, (double) sameSentences / featureIndexes.length));
+    }
+
+    int next() {
+        int i = cursor;
+        cursor = i + 1 == featureIndexes.length ? 0 : i + 1;
+        return i;
+    }
+
+    @Benchmark
+    public byte[] decode() {
+        int[][] sentence = featureIndexes[next()];
+        return beamDecoder == null ? chunker.decoder.decode(sentence) : beamDecoder.decode(sentence);
+    }
+
+    @Benchmark
+    public List<CrfBeamDecoder.Path> decodeNBest() {
+        int[][] sentence = featureIndexes[next()];
+        return beamDecoder == null ? chunker.nBestDecoder.decode(sentence, nBest) : beamDecoder.decode(sentence, nBest);
+    }
+}
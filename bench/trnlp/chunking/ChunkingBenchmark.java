@@ -0,0 +1,189 @@
+package trnlp.chunking;
+
+import cc.mallet.fst.CRF;
+import cc.mallet.types.FeatureVectorSequence;
+import cc.mallet.types.Sequence;
+import org.jcaki.SimpleTextReader;
+import org.openjdk.jmh.annotations.*;
+import trnlp.apps.CrfTemplates;
+import trnlp.apps.TurkishMorphology;
+import trnlp.apps.TurkishSentenceTokenizer;
+import zemberek3.parser.morphology.SentenceMorphParse;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures each stage of chunking a sentence separately, and the whole pipeline. Every benchmark call processes
+ * one sentence, sentences are used in turn. Inputs of a stage are prepared in setup with the previous stages, so
+ * a stage is measured in isolation.
+ * <p/>
+ * Sentences are taken from the annotation files, annotations are removed. "short" sentences have at most 7 words
+ * and "long" sentences have at least 12 words.
+ * <p/>
+ * Sentences are used many times, so with a word analysis cache the parse stages mostly measure cache hits.
+ * cacheSize=0 measures Zemberek itself.
+ * <p/>
+ * Model and template files can be changed with bench.model and bench.template system properties. Run with
+ * "ant bench", it enables gc profiler for allocation rates.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ChunkingBenchmark {
+
+    static final String[] SENTENCE_FILES = {"data/chunker-test.txt", "data/chunker-annotated.txt"};
+    static final int MAX_SENTENCES = 256;
+
+    @Param({"short", "long"})
+    String length;
+
+    @Param({"0", "50000"})
+    int cacheSize;
+
+    TurkishSentenceTokenizer tokenizer;
+    TurkishMorphology morphology;
+    MalletBasedChunker chunker;
+    CRF crf;
+    CrfTemplates templates;
+    ChunkingPipeline pipeline;
+
+    // inputs of each stage, one entry per sentence.
+    String[] sentences;
+    List<String>[] tokens;
+    SentenceMorphParse[] parses;
+    List<List<String>>[] singleFeatures;
+    FeatureVectorSequence[] featureSequences;
+    int[][][] featureIndexes;
+    byte[][] labels;
+
+    int cursor;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() throws IOException {
+        File model = new File(System.getProperty("bench.model", "src/tr/models/chunk-model.ser"));
+        File template = new File(System.getProperty("bench.template", "crfplusplus/template_cemil"));
+        templates = CrfTemplates.loadFromCrfPlusPlusTemplate(template, "/");
+        chunker = new MalletBasedChunker(model, templates);
+        crf = chunker.getCrf();
+        tokenizer = new TurkishSentenceTokenizer();
+        morphology = new TurkishMorphology(cacheSize);
+        pipeline = new ChunkingPipeline(tokenizer, morphology, chunker);
+
+        List<String> selected = loadSentences(length.equals("short") ? 1 : 12, length.equals("short") ? 7 : Integer.MAX_VALUE);
+        int n = selected.size();
+        sentences = selected.toArray(new String[n]);
+        tokens = new List[n];
+        parses = new SentenceMorphParse[n];
+        singleFeatures = new List[n];
+        featureSequences = new FeatureVectorSequence[n];
+        featureIndexes = new int[n][][];
+        labels = new byte[n][];
+        for (int i = 0; i < n; i++) {
+            tokens[i] = tokenizer.tokenizeAsStrings(sentences[i]);
+            parses[i] = morphology.parseAndDisambiguateSentence(tokens[i]);
+            singleFeatures[i] = getSingleFeatures(parses[i]);
+            featureSequences[i] = chunker.compiledTemplates.getFeatureVectorSequence(
+                    singleFeatures[i], crf.getInputAlphabet());
+            featureIndexes[i] = chunker.compiledTemplates.getFeatureIndexes(singleFeatures[i]);
+            labels[i] = chunker.decoder.decode(featureIndexes[i]);
+        }
+        System.out.println(length + " sentences: " + n);
+    }
+
+    static List<String> loadSentences(int minWords, int maxWords) throws IOException {
+        List<String> result = new ArrayList<>();
+        for (String fileName : SENTENCE_FILES) {
+            for (String line : new SimpleTextReader(fileName, "utf-8").asStringList()) {
+                if (result.size() == MAX_SENTENCES)
+                    return result;
+                String sentence = line.replaceAll("\\[[^\\]]*\\]", " ")
+                        .replace('/', ' ')
+                        .replace("\uFEFF", "")
+                        .replaceAll("\\s+", " ")
+                        .trim();
+                int wordCount = sentence.length() == 0 ? 0 : sentence.split(" ").length;
+                if (wordCount >= minWords && wordCount <= maxWords)
+                    result.add(sentence);
+            }
+        }
+        return result;
+    }
+
+    static List<List<String>> getSingleFeatures(SentenceMorphParse parse) {
+        List<List<String>> result = new ArrayList<>(parse.size());
+        for (SentenceMorphParse.Entry entry : parse) {
+            result.add(new ChunkerAnnotationFeatureExtractor.TurkishChunkFeatures(entry.input, entry.parses.get(0))
+                    .getFeatureList());
+        }
+        return result;
+    }
+
+    int next() {
+        int i = cursor;
+        cursor = i + 1 == sentences.length ? 0 : i + 1;
+        return i;
+    }
+
+    @Benchmark
+    public List<String> tokenize() {
+        return tokenizer.tokenizeAsStrings(sentences[next()]);
+    }
+
+    @Benchmark
+    public SentenceMorphParse parseSentence() {
+        return morphology.parseSentence(tokens[next()]);
+    }
+
+    @Benchmark
+    public SentenceMorphParse disambiguate() {
+        // disambiguation only reorders the parses of each entry, so the same parse can be used again.
+        SentenceMorphParse parse = parses[next()];
+        morphology.disambiguate(parse);
+        return parse;
+    }
+
+    @Benchmark
+    public List<ChunkerAnnotationFeatureExtractor.TurkishChunkFeatures> chunkFeatures() {
+        SentenceMorphParse parse = parses[next()];
+        List<ChunkerAnnotationFeatureExtractor.TurkishChunkFeatures> result = new ArrayList<>(parse.size());
+        for (SentenceMorphParse.Entry entry : parse) {
+            result.add(new ChunkerAnnotationFeatureExtractor.TurkishChunkFeatures(
+                    entry.input, entry.parses.get(0), chunker.compiledTemplates));
+        }
+        return result;
+    }
+
+    @Benchmark
+    public List<List<String>> featureLines() {
+        return templates.getFeatureLinesForTest(singleFeatures[next()]);
+    }
+
+    @Benchmark
+    public Sequence transduce() {
+        return crf.transduce(featureSequences[next()]);
+    }
+
+    @Benchmark
+    public byte[] viterbiDecode() {
+        return chunker.decoder.decode(featureIndexes[next()]);
+    }
+
+    @Benchmark
+    public List<Chunk> labelsToChunks() {
+        int i = next();
+        return chunker.getChunks(tokens[i], labels[i], chunker.labels, parses[i]);
+    }
+
+    @Benchmark
+    public List<Chunk> pipeline() {
+        return pipeline.getChunks(sentences[next()]);
+    }
+}
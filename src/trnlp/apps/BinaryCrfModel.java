@@ -0,0 +1,740 @@
+package trnlp.apps;
+
+import cc.mallet.fst.CRF;
+import cc.mallet.types.Alphabet;
+import cc.mallet.types.IndexedSparseVector;
+import cc.mallet.types.LabelAlphabet;
+import cc.mallet.types.SparseVector;
+import com.google.common.base.Charsets;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A compact, versioned binary representation of a trained Mallet CRF. All information necessary for decoding is
+ * kept in flat arrays: feature and label alphabets, states with their initial and final weights, transitions and
+ * the weights of the features. Input pipe and training related data is not stored.
+ * <p/>
+ * Weights are kept feature major, which is the layout {@link CrfViterbiDecoder} uses. For every feature there is a
+ * list of weight set indexes and values. A loaded model keeps the weights and feature names in the memory mapped
+ * file, decoder reads the weights from there and {@link CompiledTemplates} reads the feature names once. So loading
+ * only copies the small state and transition arrays, and no Mallet CRF is built unless {@link #toCrf()} is called.
+ * <p/>
+ * File layout (big endian):
+ * <pre>
+ * int magic, int version, int hashBits, int weightBits, int featureCount
+ * strings  labelNames, stateNames, weightNames
+ * double[] initialWeights, finalWeights               (stateCount)
+ * int[]    transitionOffsets                          (stateCount + 1)
+ * int[]    transitionDestinations, transitionLabels   (transitionCount)
+ * int[]    transitionWeightOffsets                    (transitionCount + 1)
+ * int[]    transitionWeights                          (weight set indexes of transitions)
+ * double[] defaultWeights                             (weightCount)
+ * int[]    featureOffsets                             (featureCount + 1)
+ * char[]   featureWeightSets                          (weight set index of each weight)
+ * double[] featureValues                              (if weightBits is 64)
+ * double[] weightScales                               (weightCount, if weightBits is 16 or 8)
+ * short[] or byte[] quantizedFeatureValues
+ * int      byte count, UTF-8 feature names, each one followed by a new line
+ * </pre>
+ * Arrays are stored as an int count followed by the values. Strings are stored as int count, int[] byte offsets
+ * (count + 1) and UTF-8 bytes.
+ * <p/>
+ * Models trained with {@link FeatureHashing} have hashBits greater than 0 and no feature names. Their feature
+ * indexes are the hash buckets. Weight values can be stored quantized to 16 or 8 bits, with one scale for each
+ * weight set. They are converted back to doubles while loading, so only 64 bit values are used from the mapped
+ * file directly. Files of earlier versions stored weights weight set major, they need to be converted again.
+ */
+public class BinaryCrfModel {
+
+    public static final int MAGIC = 0x54524346; // "TRCF"
+    public static final int VERSION = 4;
+
+    static final byte NAME_END = '\n';
+
+    final int hashBits;
+    final int featureCount;
+    // UTF-8 feature names, each followed by NAME_END. Empty for hashed models.
+    final ByteBuffer featureNames;
+    final String[] labelNames;
+    final String[] stateNames;
+    final String[] weightNames;
+
+    final double[] initialWeights;
+    final double[] finalWeights;
+
+    final int[] transitionOffsets;
+    final int[] transitionDestinations;
+    final int[] transitionLabels;
+    final int[] transitionWeightOffsets;
+    final int[] transitionWeights;
+
+    final double[] defaultWeights;
+
+    // weight set indexes and values of each feature. Weight sets of a feature are in increasing order.
+    final IntBuffer featureOffsets;
+    final CharBuffer featureWeightSets;
+    final DoubleBuffer featureValues;
+
+    BinaryCrfModel(int hashBits, int featureCount, ByteBuffer featureNames,
+                   String[] labelNames, String[] stateNames, String[] weightNames,
+                   double[] initialWeights, double[] finalWeights,
+                   int[] transitionOffsets, int[] transitionDestinations, int[] transitionLabels,
+                   int[] transitionWeightOffsets, int[] transitionWeights, double[] defaultWeights,
+                   IntBuffer featureOffsets, CharBuffer featureWeightSets, DoubleBuffer featureValues) {
+        if (weightNames.length > Character.MAX_VALUE + 1)
+            throw new IllegalArgumentException("Too many weight sets: " + weightNames.length);
+        this.hashBits = hashBits;
+        this.featureCount = featureCount;
+        this.featureNames = featureNames;
+        this.labelNames = labelNames;
+        this.stateNames = stateNames;
+        this.weightNames = weightNames;
+        this.initialWeights = initialWeights;
+        this.finalWeights = finalWeights;
+        this.transitionOffsets = transitionOffsets;
+        this.transitionDestinations = transitionDestinations;
+        this.transitionLabels = transitionLabels;
+        this.transitionWeightOffsets = transitionWeightOffsets;
+        this.transitionWeights = transitionWeights;
+        this.defaultWeights = defaultWeights;
+        this.featureOffsets = featureOffsets;
+        this.featureWeightSets = featureWeightSets;
+        this.featureValues = featureValues;
+    }
+
+    /**
+     * Generates the binary representation of a CRF.
+     *
+     * @param crf trained CRF.
+     * @return binary model.
+     */
+    public static BinaryCrfModel fromCrf(CRF crf) {
+        FeatureHashing hashing = FeatureHashing.fromAlphabet(crf.getInputAlphabet());
+        Alphabet inputAlphabet = crf.getInputAlphabet();
+        int featureCount = hashing == null ? inputAlphabet.size() : hashing.getSize();
+        ByteBuffer featureNames = ByteBuffer.allocate(0);
+        if (hashing == null) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            for (int i = 0; i < featureCount; i++) {
+                writeName(bytes, inputAlphabet.lookupObject(i).toString());
+            }
+            featureNames = ByteBuffer.wrap(bytes.toByteArray());
+        }
+        String[] labelNames = alphabetToArray(crf.getOutputAlphabet());
+        Alphabet labelAlphabet = crf.getOutputAlphabet();
+
+        int stateCount = crf.numStates();
+        String[] stateNames = new String[stateCount];
+        double[] initialWeights = new double[stateCount];
+        double[] finalWeights = new double[stateCount];
+        int[] transitionOffsets = new int[stateCount + 1];
+        List<Integer> destinations = new ArrayList<>();
+        List<Integer> labels = new ArrayList<>();
+        List<Integer> transitionWeightOffsets = new ArrayList<>();
+        List<Integer> transitionWeights = new ArrayList<>();
+        transitionWeightOffsets.add(0);
+        for (int i = 0; i < stateCount; i++) {
+            CRF.State state = (CRF.State) crf.getState(i);
+            stateNames[i] = state.getName();
+            initialWeights[i] = state.getInitialWeight();
+            finalWeights[i] = state.getFinalWeight();
+            for (int d = 0; d < state.numDestinations(); d++) {
+                destinations.add(state.getDestinationState(d).getIndex());
+                int label = labelAlphabet.lookupIndex(state.getLabelName(d), false);
+                if (label < 0)
+                    throw new IllegalStateException("Label " + state.getLabelName(d) + " is not in label alphabet.");
+                labels.add(label);
+                for (String weightName : state.getWeightNames(d)) {
+                    transitionWeights.add(crf.getWeightsIndex(weightName));
+                }
+                transitionWeightOffsets.add(transitionWeights.size());
+            }
+            transitionOffsets[i + 1] = destinations.size();
+        }
+
+        // inverts weight set major sparse vectors to feature major arrays.
+        SparseVector[] weights = crf.getWeights();
+        String[] weightNames = new String[weights.length];
+        int[] featureOffsets = new int[featureCount + 1];
+        for (int w = 0; w < weights.length; w++) {
+            weightNames[w] = crf.getWeightsName(w);
+            for (int l = 0; l < weights[w].numLocations(); l++) {
+                featureOffsets[weights[w].indexAtLocation(l) + 1]++;
+            }
+        }
+        for (int f = 0; f < featureCount; f++) {
+            featureOffsets[f + 1] += featureOffsets[f];
+        }
+        char[] featureWeightSets = new char[featureOffsets[featureCount]];
+        double[] featureValues = new double[featureWeightSets.length];
+        int[] fill = Arrays.copyOf(featureOffsets, featureCount);
+        for (int w = 0; w < weights.length; w++) {
+            for (int l = 0; l < weights[w].numLocations(); l++) {
+                int location = fill[weights[w].indexAtLocation(l)]++;
+                featureWeightSets[location] = (char) w;
+                featureValues[location] = weights[w].valueAtLocation(l);
+            }
+        }
+
+        return new BinaryCrfModel(hashing == null ? 0 : hashing.getBits(), featureCount, featureNames,
+                labelNames, stateNames, weightNames,
+                initialWeights, finalWeights,
+                transitionOffsets, toArray(destinations), toArray(labels),
+                toArray(transitionWeightOffsets), toArray(transitionWeights), crf.getDefaultWeights().clone(),
+                IntBuffer.wrap(featureOffsets), CharBuffer.wrap(featureWeightSets), DoubleBuffer.wrap(featureValues));
+    }
+
+    private static void writeName(ByteArrayOutputStream bytes, String name) {
+        if (name.indexOf(NAME_END) >= 0)
+            throw new IllegalArgumentException("Feature name contains a new line: " + name);
+        byte[] b = name.getBytes(Charsets.UTF_8);
+        bytes.write(b, 0, b.length);
+        bytes.write(NAME_END);
+    }
+
+    private static String[] alphabetToArray(Alphabet alphabet) {
+        String[] result = new String[alphabet.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = alphabet.lookupObject(i).toString();
+        }
+        return result;
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] result = new int[list.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = list.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * @return feature names in index order. Names are decoded while iterating, nothing is kept. It is empty for
+     *         hashed models.
+     */
+    Iterable<String> featureNames() {
+        return new Iterable<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                return new FeatureNameIterator(featureNames.duplicate());
+            }
+        };
+    }
+
+    /**
+     * @return all feature names. It is empty for hashed models.
+     */
+    public String[] getFeatureNames() {
+        List<String> names = new ArrayList<>(hashBits > 0 ? 0 : featureCount);
+        for (String name : featureNames()) {
+            names.add(name);
+        }
+        return names.toArray(new String[names.size()]);
+    }
+
+    private static class FeatureNameIterator implements Iterator<String> {
+        final ByteBuffer buffer;
+        byte[] bytes = new byte[64];
+
+        FeatureNameIterator(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return buffer.hasRemaining();
+        }
+
+        @Override
+        public String next() {
+            if (!buffer.hasRemaining())
+                throw new NoSuchElementException();
+            int length = 0;
+            byte b;
+            while ((b = buffer.get()) != NAME_END) {
+                if (length == bytes.length)
+                    bytes = Arrays.copyOf(bytes, length * 2);
+                bytes[length++] = b;
+            }
+            return new String(bytes, 0, length, Charsets.UTF_8);
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Generates a Mallet CRF from this model. CRF does not contain an input pipe, so sequences should be given to
+     * it as {@link cc.mallet.types.FeatureVectorSequence}.
+     *
+     * @return CRF instance.
+     */
+    public CRF toCrf() {
+        Alphabet inputAlphabet;
+        if (hashBits > 0) {
+            inputAlphabet = new FeatureHashing(hashBits).newAlphabet();
+        } else {
+            inputAlphabet = new Alphabet();
+            for (String featureName : featureNames()) {
+                inputAlphabet.lookupIndex(featureName);
+            }
+            inputAlphabet.stopGrowth();
+        }
+        LabelAlphabet outputAlphabet = new LabelAlphabet();
+        for (String labelName : labelNames) {
+            outputAlphabet.lookupIndex(labelName);
+        }
+        CRF crf = new CRF(inputAlphabet, outputAlphabet);
+        for (int s = 0; s < stateNames.length; s++) {
+            int begin = transitionOffsets[s];
+            int count = transitionOffsets[s + 1] - begin;
+            String[] destinationNames = new String[count];
+            String[] labels = new String[count];
+            String[][] names = new String[count][];
+            for (int t = 0; t < count; t++) {
+                int transition = begin + t;
+                destinationNames[t] = stateNames[transitionDestinations[transition]];
+                labels[t] = labelNames[transitionLabels[transition]];
+                int weightBegin = transitionWeightOffsets[transition];
+                names[t] = new String[transitionWeightOffsets[transition + 1] - weightBegin];
+                for (int w = 0; w < names[t].length; w++) {
+                    names[t][w] = weightNames[transitionWeights[weightBegin + w]];
+                }
+            }
+            crf.addState(stateNames[s], initialWeights[s], finalWeights[s], destinationNames, labels, names);
+        }
+
+        // features are visited in increasing order, so indexes of every weight set are sorted.
+        int weightCount = weightNames.length;
+        int[] counts = new int[weightCount];
+        int total = featureWeightSets.limit();
+        for (int l = 0; l < total; l++) {
+            counts[featureWeightSets.get(l)]++;
+        }
+        int[][] indexes = new int[weightCount][];
+        double[][] values = new double[weightCount][];
+        for (int w = 0; w < weightCount; w++) {
+            indexes[w] = new int[counts[w]];
+            values[w] = new double[counts[w]];
+        }
+        Arrays.fill(counts, 0);
+        for (int f = 0; f < featureCount; f++) {
+            for (int l = featureOffsets.get(f); l < featureOffsets.get(f + 1); l++) {
+                int w = featureWeightSets.get(l);
+                indexes[w][counts[w]] = f;
+                values[w][counts[w]++] = featureValues.get(l);
+            }
+        }
+        for (int w = 0; w < weightCount; w++) {
+            int index = crf.getWeightsIndex(weightNames[w]);
+            crf.setWeights(index, new IndexedSparseVector(indexes[w], values[w]));
+            crf.setDefaultWeight(index, defaultWeights[w]);
+        }
+        crf.weightsValueChanged();
+        return crf;
+    }
+
+    /**
+     * Saves the model.
+     *
+     * @param file output file.
+     * @throws IOException
+     */
+    public void save(File file) throws IOException {
+        save(file, 64);
+    }
+
+    /**
+     * Saves the model with quantized weight values. Every weight set gets a scale so that its largest absolute
+     * value maps to the largest quantized value.
+     *
+     * @param file       output file.
+     * @param weightBits 64 for no quantization, 16 or 8.
+     * @throws IOException
+     */
+    public void save(File file, int weightBits) throws IOException {
+        if (weightBits != 64 && weightBits != 16 && weightBits != 8)
+            throw new IllegalArgumentException("Weight bits must be 64, 16 or 8. But it is " + weightBits);
+        try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+            dos.writeInt(MAGIC);
+            dos.writeInt(VERSION);
+            dos.writeInt(hashBits);
+            dos.writeInt(weightBits);
+            dos.writeInt(featureCount);
+            writeStrings(dos, labelNames);
+            writeStrings(dos, stateNames);
+            writeStrings(dos, weightNames);
+            writeDoubles(dos, initialWeights);
+            writeDoubles(dos, finalWeights);
+            writeInts(dos, transitionOffsets);
+            writeInts(dos, transitionDestinations);
+            writeInts(dos, transitionLabels);
+            writeInts(dos, transitionWeightOffsets);
+            writeInts(dos, transitionWeights);
+            writeDoubles(dos, defaultWeights);
+            dos.writeInt(featureOffsets.limit());
+            for (int i = 0; i < featureOffsets.limit(); i++) {
+                dos.writeInt(featureOffsets.get(i));
+            }
+            dos.writeInt(featureWeightSets.limit());
+            for (int i = 0; i < featureWeightSets.limit(); i++) {
+                dos.writeChar(featureWeightSets.get(i));
+            }
+            if (weightBits == 64) {
+                dos.writeInt(featureValues.limit());
+                for (int i = 0; i < featureValues.limit(); i++) {
+                    dos.writeDouble(featureValues.get(i));
+                }
+            } else {
+                writeQuantized(dos, weightBits);
+            }
+            ByteBuffer names = featureNames.duplicate();
+            dos.writeInt(names.remaining());
+            while (names.hasRemaining()) {
+                dos.write(names.get());
+            }
+        }
+    }
+
+    private void writeQuantized(DataOutputStream dos, int weightBits) throws IOException {
+        int maxValue = (1 << (weightBits - 1)) - 1;
+        int total = featureValues.limit();
+        double[] scales = new double[defaultWeights.length];
+        for (int l = 0; l < total; l++) {
+            int w = featureWeightSets.get(l);
+            scales[w] = Math.max(scales[w], Math.abs(featureValues.get(l)));
+        }
+        for (int w = 0; w < scales.length; w++) {
+            scales[w] = scales[w] == 0 ? 1 : scales[w] / maxValue;
+        }
+        writeDoubles(dos, scales);
+        dos.writeInt(total);
+        for (int l = 0; l < total; l++) {
+            int q = (int) Math.round(featureValues.get(l) / scales[featureWeightSets.get(l)]);
+            if (weightBits == 16)
+                dos.writeShort(q);
+            else
+                dos.writeByte(q);
+        }
+    }
+
+    private static DoubleBuffer readQuantized(ByteBuffer buffer, int weightBits, CharBuffer weightSets) {
+        double[] scales = readDoubles(buffer);
+        double[] values = new double[buffer.getInt()];
+        for (int l = 0; l < values.length; l++) {
+            values[l] = (weightBits == 16 ? buffer.getShort() : buffer.get()) * scales[weightSets.get(l)];
+        }
+        return DoubleBuffer.wrap(values);
+    }
+
+    /**
+     * Loads a model by memory mapping the file. Feature names and 64 bit weights are used from the mapped file.
+     *
+     * @param file binary model file.
+     * @return loaded model.
+     * @throws IOException if file cannot be read or it is not a binary CRF model with known version.
+     */
+    public static BinaryCrfModel load(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return load(buffer);
+        }
+    }
+
+    static BinaryCrfModel load(ByteBuffer buffer) throws IOException {
+        if (buffer.getInt() != MAGIC)
+            throw new IOException("Not a binary CRF model.");
+        int version = buffer.getInt();
+        if (version != VERSION)
+            throw new IOException("Unsupported binary CRF model version " + version + ". Expected " + VERSION);
+        int hashBits = buffer.getInt();
+        int weightBits = buffer.getInt();
+        int featureCount = buffer.getInt();
+        String[] labelNames = readStrings(buffer);
+        String[] stateNames = readStrings(buffer);
+        String[] weightNames = readStrings(buffer);
+        double[] initialWeights = readDoubles(buffer);
+        double[] finalWeights = readDoubles(buffer);
+        int[] transitionOffsets = readInts(buffer);
+        int[] transitionDestinations = readInts(buffer);
+        int[] transitionLabels = readInts(buffer);
+        int[] transitionWeightOffsets = readInts(buffer);
+        int[] transitionWeights = readInts(buffer);
+        double[] defaultWeights = readDoubles(buffer);
+        IntBuffer featureOffsets = slice(buffer, buffer.getInt() * 4).asIntBuffer();
+        CharBuffer featureWeightSets = slice(buffer, buffer.getInt() * 2).asCharBuffer();
+        DoubleBuffer featureValues = weightBits == 64 ?
+                slice(buffer, buffer.getInt() * 8).asDoubleBuffer() :
+                readQuantized(buffer, weightBits, featureWeightSets);
+        ByteBuffer featureNames = slice(buffer, buffer.getInt());
+        return new BinaryCrfModel(hashBits, featureCount, featureNames,
+                labelNames, stateNames, weightNames,
+                initialWeights, finalWeights,
+                transitionOffsets, transitionDestinations, transitionLabels,
+                transitionWeightOffsets, transitionWeights, defaultWeights,
+                featureOffsets, featureWeightSets, featureValues);
+    }
+
+    // a view of the next bytes of the buffer, buffer is moved past them.
+    private static ByteBuffer slice(ByteBuffer buffer, int byteCount) {
+        ByteBuffer slice = buffer.slice();
+        slice.limit(byteCount);
+        buffer.position(buffer.position() + byteCount);
+        return slice;
+    }
+
+    /**
+     * Generates a smaller model by removing small weights and the features left without weights. Removed weights
+     * are the same with zero weights for decoding, and removed features are ignored like unknown features.
+     *
+     * @param threshold   weights with an absolute value smaller than this are removed.
+     * @param maxFeatures if positive, only this amount of features with the largest absolute weights are kept.
+     * @return pruned model. Feature names of the kept features are in the same order.
+     */
+    public BinaryCrfModel prune(double threshold, int maxFeatures) {
+        double[] featureMax = new double[featureCount];
+        for (int f = 0; f < featureCount; f++) {
+            for (int l = featureOffsets.get(f); l < featureOffsets.get(f + 1); l++) {
+                double value = Math.abs(featureValues.get(l));
+                if (value >= threshold && value > 0)
+                    featureMax[f] = Math.max(featureMax[f], value);
+            }
+        }
+        boolean[] kept = new boolean[featureCount];
+        int keptCount = 0;
+        for (int f = 0; f < featureCount; f++) {
+            if (featureMax[f] > 0) {
+                kept[f] = true;
+                keptCount++;
+            }
+        }
+        if (maxFeatures > 0 && keptCount > maxFeatures) {
+            double[] sorted = featureMax.clone();
+            Arrays.sort(sorted);
+            double limit = sorted[featureCount - maxFeatures];
+            // features equal to the limit are kept in index order until the amount is reached.
+            int above = 0;
+            for (double max : featureMax) {
+                if (max > limit)
+                    above++;
+            }
+            int equalAllowed = maxFeatures - above;
+            keptCount = 0;
+            for (int f = 0; f < featureCount; f++) {
+                kept[f] = featureMax[f] > limit || (featureMax[f] == limit && equalAllowed-- > 0);
+                if (kept[f])
+                    keptCount++;
+            }
+        }
+
+        // hashed models keep their buckets, features of dictionary models are compacted.
+        int newFeatureCount = hashBits > 0 ? featureCount : keptCount;
+        ByteBuffer newFeatureNames = featureNames;
+        if (hashBits == 0) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            int f = 0;
+            for (String name : featureNames()) {
+                if (kept[f++])
+                    writeName(bytes, name);
+            }
+            newFeatureNames = ByteBuffer.wrap(bytes.toByteArray());
+        }
+        int[] newOffsets = new int[newFeatureCount + 1];
+        char[] newWeightSets = new char[featureWeightSets.limit()];
+        double[] newValues = new double[featureValues.limit()];
+        int count = 0;
+        for (int f = 0, next = 0; f < featureCount; f++) {
+            if (kept[f]) {
+                for (int l = featureOffsets.get(f); l < featureOffsets.get(f + 1); l++) {
+                    double value = featureValues.get(l);
+                    if (Math.abs(value) < threshold || value == 0)
+                        continue;
+                    newWeightSets[count] = featureWeightSets.get(l);
+                    newValues[count] = value;
+                    count++;
+                }
+            }
+            if (kept[f] || hashBits > 0)
+                newOffsets[++next] = count;
+        }
+        return new BinaryCrfModel(hashBits, newFeatureCount, newFeatureNames,
+                labelNames, stateNames, weightNames,
+                initialWeights, finalWeights,
+                transitionOffsets, transitionDestinations, transitionLabels,
+                transitionWeightOffsets, transitionWeights, defaultWeights,
+                IntBuffer.wrap(newOffsets), CharBuffer.wrap(Arrays.copyOf(newWeightSets, count)),
+                DoubleBuffer.wrap(Arrays.copyOf(newValues, count)));
+    }
+
+    /**
+     * @param file file to check.
+     * @return true if file starts with binary CRF model magic number.
+     * @throws IOException
+     */
+    public static boolean isBinaryModel(File file) throws IOException {
+        if (file.length() < 4)
+            return false;
+        try (DataInputStream dis = new DataInputStream(new FileInputStream(file))) {
+            return dis.readInt() == MAGIC;
+        }
+    }
+
+    private static void writeInts(DataOutputStream dos, int[] array) throws IOException {
+        dos.writeInt(array.length);
+        for (int i : array) {
+            dos.writeInt(i);
+        }
+    }
+
+    private static void writeDoubles(DataOutputStream dos, double[] array) throws IOException {
+        dos.writeInt(array.length);
+        for (double d : array) {
+            dos.writeDouble(d);
+        }
+    }
+
+    private static void writeStrings(DataOutputStream dos, String[] strings) throws IOException {
+        byte[][] bytes = new byte[strings.length][];
+        int[] offsets = new int[strings.length + 1];
+        for (int i = 0; i < strings.length; i++) {
+            bytes[i] = strings[i].getBytes(Charsets.UTF_8);
+            offsets[i + 1] = offsets[i] + bytes[i].length;
+        }
+        dos.writeInt(strings.length);
+        for (int offset : offsets) {
+            dos.writeInt(offset);
+        }
+        for (byte[] b : bytes) {
+            dos.write(b);
+        }
+    }
+
+    private static int[] readInts(ByteBuffer buffer) {
+        int[] result = new int[buffer.getInt()];
+        buffer.asIntBuffer().get(result);
+        buffer.position(buffer.position() + result.length * 4);
+        return result;
+    }
+
+    private static double[] readDoubles(ByteBuffer buffer) {
+        double[] result = new double[buffer.getInt()];
+        buffer.asDoubleBuffer().get(result);
+        buffer.position(buffer.position() + result.length * 8);
+        return result;
+    }
+
+    private static String[] readStrings(ByteBuffer buffer) {
+        int count = buffer.getInt();
+        int[] offsets = new int[count + 1];
+        buffer.asIntBuffer().get(offsets);
+        buffer.position(buffer.position() + offsets.length * 4);
+        byte[] bytes = new byte[offsets[count]];
+        buffer.get(bytes);
+        String[] result = new String[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = new String(bytes, offsets[i], offsets[i + 1] - offsets[i], Charsets.UTF_8);
+        }
+        return result;
+    }
+
+    /**
+     * @return amount of stored feature weights.
+     */
+    public int getWeightCount() {
+        return featureValues.limit();
+    }
+
+    public int getStateCount() {
+        return stateNames.length;
+    }
+
+    public int getFeatureCount() {
+        return featureCount;
+    }
+
+    /**
+     * @return bits of the feature hashing, or 0 if model has a feature dictionary.
+     */
+    public int getHashBits() {
+        return hashBits;
+    }
+
+    public String[] getLabelNames() {
+        return labelNames.clone();
+    }
+
+    /**
+     * Converts a serialized Mallet CRF to binary format and reports load time and heap usage of both formats. Heap
+     * of the binary model is measured with the decoder and compiled templates that chunking uses, and the time of
+     * building a Mallet CRF from it is reported separately.
+     *
+     * @param args serialized model file, output binary model file and optionally the CRF++ template file.
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Usage: BinaryCrfModel [serialized-model] [binary-model-output] [template]");
+            return;
+        }
+        File serFile = new File(args[0]);
+        File binFile = new File(args[1]);
+        CrfTemplates templates = CrfTemplates.loadFromCrfPlusPlusTemplate(
+                new File(args.length > 2 ? args[2] : "crfplusplus/template_cemil"), "/");
+
+        long heapBefore = usedHeap();
+        long start = System.nanoTime();
+        CRF crf;
+        try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(serFile)))) {
+            crf = (CRF) ois.readObject();
+        }
+        CrfViterbiDecoder serDecoder = CrfViterbiDecoder.fromCrf(crf);
+        CompiledTemplates serTemplates = templates.compile(crf.getInputAlphabet());
+        long serTime = System.nanoTime() - start;
+        long serHeap = usedHeap() - heapBefore;
+
+        fromCrf(crf).save(binFile);
+        crf = null;
+        serDecoder = null;
+        serTemplates = null;
+
+        heapBefore = usedHeap();
+        start = System.nanoTime();
+        BinaryCrfModel model = load(binFile);
+        CrfViterbiDecoder binDecoder = CrfViterbiDecoder.fromModel(model);
+        CompiledTemplates binTemplates = CompiledTemplates.compile(templates, model);
+        long binTime = System.nanoTime() - start;
+        long binHeap = usedHeap() - heapBefore;
+        start = System.nanoTime();
+        CRF rebuilt = model.toCrf();
+        long rebuildTime = System.nanoTime() - start;
+
+        System.out.format("%-10s %12s %12s %12s%n", "Format", "Size(KB)", "Load(ms)", "Heap(KB)");
+        System.out.format("%-10s %12d %12.1f %12d%n", "ser", serFile.length() / 1024, serTime / 1e6, serHeap / 1024);
+        System.out.format("%-10s %12d %12.1f %12d%n", "binary", binFile.length() / 1024, binTime / 1e6, binHeap / 1024);
+        System.out.format("Binary model decoder has %d labels, compiled templates have %d symbols.%n",
+                binDecoder.getLabelNames().length, binTemplates.getSymbolCount());
+        System.out.format("Mallet CRF from binary model, only needed for training: %.1f ms, %d states.%n",
+                rebuildTime / 1e6, rebuilt.numStates());
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
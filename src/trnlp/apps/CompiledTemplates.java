@@ -0,0 +1,362 @@
+package trnlp.apps;
+
+import cc.mallet.types.Alphabet;
+import cc.mallet.types.FeatureVector;
+import cc.mallet.types.FeatureVectorSequence;
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import gnu.trove.TLongIntHashMap;
+import gnu.trove.TObjectIntHashMap;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Template list of {@link CrfTemplates} compiled against the feature alphabet of a trained model, given as a Mallet
+ * alphabet or as the feature names of a {@link BinaryCrfModel}. Instead of building a compound feature string for
+ * every template, column values of each word are converted to symbol ids once, and compound features are
+ * represented with 64 bit keys generated from those ids. Keys are mapped to the alphabet indexes directly.
+ * <p/>
+ * Because compound feature strings do not contain template information, a key only depends on the symbols it is
+ * made of. This gives exactly the same indexes with the string based lookup. Values that contain the compound
+ * feature delimiter are rare, features that contain them are split and looked up again, and features that still
+ * cannot be represented with keys are kept as strings. So the alphabet is not needed after compiling.
+ * <p/>
+ * If the alphabet is a hashed alphabet of {@link FeatureHashing}, there is nothing to look up. Buckets of compound
+ * features are calculated from the hashes of column values.
+ * <p/>
+ * Symbol ids only come from the alphabet of the model, values that are not in the alphabet all get the same unknown
+ * id. So nothing is added while decoding, and memory does not grow with the vocabulary of the processed text. Feature
+ * extractors can resolve column values to symbol ids with {@link #getSymbolId(String)} while building the features
+ * of a word, and give the ids to {@link #getFeatureIndexes(int[][], List)}.
+ * <p/>
+ * Instances can be shared between threads.
+ */
+public class CompiledTemplates {
+
+    // Keys contain item count in the highest 4 bits and up to three 20 bit symbol ids.
+    static final int MAX_ITEMS = 3;
+    static final int SYMBOL_BITS = 20;
+    static final int MAX_SYMBOL_ID = (1 << SYMBOL_BITS) - 1;
+
+    // Symbol id of a value that does not exist in the alphabet.
+    public static final int UNKNOWN = -1;
+    // Symbol id of a value that cannot be represented in a key. Such as values containing compound feature delimiter.
+    public static final int STRING_LOOKUP = -2;
+
+    static final String OUT_OF_SENTENCE = "_";
+
+    final int[][] positions;
+    final int[][] featureIndexes;
+    final int columnCount;
+
+    final String delimiter;
+    final SymbolTable symbols;
+    final boolean[] symbolContainsDelimiter;
+    final TLongIntHashMap keyIndexes;
+    // features that cannot be represented with keys.
+    final TObjectIntHashMap<String> stringIndexes;
+
+    // only for hashed alphabets.
+    final FeatureHashing hashing;
+    final long delimiterHash;
+    final long delimiterShift;
+
+    CompiledTemplates(CrfTemplates templates, FeatureHashing hashing, Iterable<String> featureNames, int featureCount) {
+        this.delimiter = templates.compoundFeatureDelimiter;
+        int templateCount = templates.templateLists.size();
+        positions = new int[templateCount][];
+        featureIndexes = new int[templateCount][];
+        int maxColumn = 0;
+        for (int i = 0; i < templateCount; i++) {
+            List<CrfTemplates.TemplateItem> items = templates.templateLists.get(i);
+            positions[i] = new int[items.size()];
+            featureIndexes[i] = new int[items.size()];
+            for (int j = 0; j < items.size(); j++) {
+                positions[i][j] = items.get(j).position;
+                featureIndexes[i][j] = items.get(j).featureIndex;
+                maxColumn = Math.max(maxColumn, items.get(j).featureIndex);
+            }
+        }
+        columnCount = maxColumn + 1;
+        this.hashing = hashing;
+        delimiterHash = FeatureHashing.hash(delimiter);
+        delimiterShift = FeatureHashing.shift(delimiter.length());
+
+        // generate symbols and keys from the compound features of the model.
+        symbols = new SymbolTable();
+        symbols.add(OUT_OF_SENTENCE);
+        keyIndexes = new TLongIntHashMap(hashing == null ? featureCount * 2 : 1);
+        stringIndexes = new TObjectIntHashMap<>();
+        Splitter splitter = Splitter.on(delimiter);
+        int[] ids = new int[MAX_ITEMS];
+        int index = 0;
+        for (String feature : hashing == null ? featureNames : Collections.<String>emptyList()) {
+            int count = 0;
+            boolean fits = true;
+            for (String s : splitter.split(feature)) {
+                if (count == MAX_ITEMS) {
+                    fits = false;
+                    break;
+                }
+                ids[count] = symbols.add(s);
+                if (ids[count] > MAX_SYMBOL_ID)
+                    fits = false;
+                count++;
+            }
+            if (fits)
+                keyIndexes.put(key(ids, count), index);
+            else
+                stringIndexes.put(feature, index);
+            index++;
+        }
+        symbolContainsDelimiter = new boolean[symbols.size()];
+        for (int i = 0; i < symbols.size(); i++) {
+            symbolContainsDelimiter[i] = symbols.getSymbol(i).contains(delimiter);
+        }
+    }
+
+    /**
+     * Compiles templates for a model.
+     *
+     * @param templates templates used for generating training features of the model.
+     * @param alphabet  feature alphabet of the model.
+     * @return compiled templates.
+     */
+    public static CompiledTemplates compile(CrfTemplates templates, final Alphabet alphabet) {
+        FeatureHashing hashing = FeatureHashing.fromAlphabet(alphabet);
+        List<String> featureNames = new AbstractList<String>() {
+            @Override
+            public String get(int index) {
+                return alphabet.lookupObject(index).toString();
+            }
+
+            @Override
+            public int size() {
+                return alphabet.size();
+            }
+        };
+        return new CompiledTemplates(templates, hashing, featureNames, alphabet.size());
+    }
+
+    /**
+     * Compiles templates for a binary model. Feature names are read once from the model, no alphabet is built.
+     *
+     * @param templates templates used for generating training features of the model.
+     * @param model     binary model.
+     * @return compiled templates.
+     */
+    public static CompiledTemplates compile(CrfTemplates templates, BinaryCrfModel model) {
+        FeatureHashing hashing = model.getHashBits() > 0 ? new FeatureHashing(model.getHashBits()) : null;
+        return new CompiledTemplates(templates, hashing, model.featureNames(), model.getFeatureCount());
+    }
+
+    /**
+     * @return true if the model uses feature hashing. Hashed models have no symbols, their indexes are calculated
+     *         from the column values.
+     */
+    public boolean isHashed() {
+        return hashing != null;
+    }
+
+    /**
+     * @return amount of symbols generated from the alphabet. It does not change after compiling.
+     */
+    public int getSymbolCount() {
+        return symbols.size();
+    }
+
+    static long key(int[] ids, int count) {
+        long key = count;
+        for (int i = 0; i < MAX_ITEMS; i++) {
+            key = (key << SYMBOL_BITS) | (i < count ? ids[i] : 0);
+        }
+        return key;
+    }
+
+    /**
+     * Finds alphabet indexes of the features of each word. Order of the indexes is the template order, features
+     * that do not exist in the alphabet are omitted.
+     *
+     * @param singleFeatures single word features of a sentence.
+     * @return feature indexes for each word.
+     */
+    public int[][] getFeatureIndexes(List<? extends List<String>> singleFeatures) {
+        if (hashing != null)
+            return getHashedIndexes(singleFeatures);
+        int size = singleFeatures.size();
+        // look up column values once per word.
+        int[][] wordSymbols = new int[size][columnCount];
+        for (int i = 0; i < size; i++) {
+            List<String> columns = singleFeatures.get(i);
+            for (int c = 0; c < columnCount; c++) {
+                wordSymbols[i][c] = getSymbolId(columns.get(c));
+            }
+        }
+        return getIndexes(wordSymbols, singleFeatures);
+    }
+
+    /**
+     * Finds alphabet indexes of the features of each word from the symbol ids of their column values. Result is the
+     * same with {@link #getFeatureIndexes(List)}.
+     *
+     * @param wordSymbols    symbol ids of the column values of each word, found with {@link #getSymbolId(String)}.
+     * @param singleFeatures single word features of the sentence. Values are only read for symbols that are
+     *                       {@link #STRING_LOOKUP}, or if the model is hashed.
+     * @return feature indexes for each word.
+     */
+    public int[][] getFeatureIndexes(int[][] wordSymbols, List<? extends List<String>> singleFeatures) {
+        if (hashing != null)
+            return getHashedIndexes(singleFeatures);
+        return getIndexes(wordSymbols, singleFeatures);
+    }
+
+    // every template gives one bucket. Hash of a compound feature is combined from the hashes of its values.
+    private int[][] getHashedIndexes(List<? extends List<String>> singleFeatures) {
+        int size = singleFeatures.size();
+        long[][] hashes = new long[size][columnCount];
+        long[][] shifts = new long[size][columnCount];
+        for (int i = 0; i < size; i++) {
+            List<String> columns = singleFeatures.get(i);
+            for (int c = 0; c < columnCount; c++) {
+                String value = columns.get(c);
+                hashes[i][c] = FeatureHashing.hash(value);
+                shifts[i][c] = FeatureHashing.shift(value.length());
+            }
+        }
+        long outHash = FeatureHashing.hash(OUT_OF_SENTENCE);
+        long outShift = FeatureHashing.shift(OUT_OF_SENTENCE.length());
+
+        int[][] result = new int[size][positions.length];
+        for (int k = 0; k < size; k++) {
+            for (int t = 0; t < positions.length; t++) {
+                long hash = 0;
+                for (int j = 0; j < positions[t].length; j++) {
+                    int pos = positions[t][j] + k;
+                    boolean out = pos < 0 || pos >= size;
+                    long valueHash = out ? outHash : hashes[pos][featureIndexes[t][j]];
+                    long valueShift = out ? outShift : shifts[pos][featureIndexes[t][j]];
+                    hash = j == 0 ? valueHash : FeatureHashing.combine(
+                            FeatureHashing.combine(hash, delimiterHash, delimiterShift), valueHash, valueShift);
+                }
+                result[k][t] = hashing.bucket(hash);
+            }
+        }
+        return result;
+    }
+
+    private int[][] getIndexes(int[][] wordSymbols, List<? extends List<String>> singleFeatures) {
+        int size = wordSymbols.length;
+        int outOfSentence = symbols.getId(OUT_OF_SENTENCE);
+
+        int[][] result = new int[size][];
+        int[] buffer = new int[positions.length];
+        int[] ids = new int[MAX_ITEMS];
+        for (int k = 0; k < size; k++) {
+            int found = 0;
+            for (int t = 0; t < positions.length; t++) {
+                int[] templatePositions = positions[t];
+                int count = templatePositions.length;
+                boolean unknown = false;
+                boolean asString = count == 0 || count > MAX_ITEMS;
+                for (int j = 0; j < count && !asString; j++) {
+                    int pos = templatePositions[j] + k;
+                    int id = pos < 0 || pos >= size ? outOfSentence : wordSymbols[pos][featureIndexes[t][j]];
+                    if (id == STRING_LOOKUP)
+                        asString = true;
+                    else if (id == UNKNOWN)
+                        unknown = true;
+                    else
+                        ids[j] = id;
+                }
+                int index;
+                if (asString)
+                    index = lookupIndex(featureString(singleFeatures, t, k));
+                else if (unknown)
+                    continue;
+                else {
+                    long key = key(ids, count);
+                    index = keyIndexes.containsKey(key) ? keyIndexes.get(key) : -1;
+                }
+                if (index >= 0)
+                    buffer[found++] = index;
+            }
+            int[] indexes = new int[found];
+            System.arraycopy(buffer, 0, indexes, 0, found);
+            result[k] = indexes;
+        }
+        return result;
+    }
+
+    // same with the alphabet lookup of the feature, because a feature string gives the same symbols while compiling.
+    private int lookupIndex(String feature) {
+        if (stringIndexes.containsKey(feature))
+            return stringIndexes.get(feature);
+        int[] ids = new int[MAX_ITEMS];
+        int count = 0;
+        for (String s : Splitter.on(delimiter).split(feature)) {
+            if (count == MAX_ITEMS)
+                return -1;
+            ids[count] = symbols.getId(s);
+            if (ids[count] < 0 || ids[count] > MAX_SYMBOL_ID)
+                return -1;
+            count++;
+        }
+        long key = key(ids, count);
+        return keyIndexes.containsKey(key) ? keyIndexes.get(key) : -1;
+    }
+
+    /**
+     * Generates the feature vector sequence of a sentence that can be given to CRF directly.
+     *
+     * @param singleFeatures single word features of a sentence.
+     * @param alphabet       input alphabet of the CRF.
+     * @return feature vector sequence.
+     */
+    public FeatureVectorSequence getFeatureVectorSequence(List<List<String>> singleFeatures, Alphabet alphabet) {
+        int[][] indexes = getFeatureIndexes(singleFeatures);
+        FeatureVector[] vectors = new FeatureVector[indexes.length];
+        for (int i = 0; i < indexes.length; i++) {
+            vectors[i] = new FeatureVector(alphabet, indexes[i]);
+        }
+        return new FeatureVectorSequence(vectors);
+    }
+
+    /**
+     * @param value a column value.
+     * @return symbol id of the value, {@link #UNKNOWN} if no feature of the model contains it, or
+     *         {@link #STRING_LOOKUP} if features that contain it are looked up as strings.
+     */
+    public int getSymbolId(String value) {
+        int id = symbols.getId(value);
+        if (id >= 0)
+            return symbolContainsDelimiter[id] || id > MAX_SYMBOL_ID ? STRING_LOOKUP : id;
+        if (value.contains(delimiter))
+            return STRING_LOOKUP;
+        return UNKNOWN;
+    }
+
+    /**
+     * Generates the compound feature string of a template for a word. This is only used for debugging and for
+     * values that cannot be represented with keys.
+     *
+     * @param singleFeatures single word features of a sentence.
+     * @param template       template index.
+     * @param k              word index.
+     * @return compound feature string.
+     */
+    public String featureString(List<? extends List<String>> singleFeatures, int template, int k) {
+        List<String> feature = new ArrayList<>(positions[template].length);
+        for (int j = 0; j < positions[template].length; j++) {
+            int pos = positions[template][j] + k;
+            if (pos < 0 || pos >= singleFeatures.size()) {
+                feature.add(OUT_OF_SENTENCE);
+                continue;
+            }
+            feature.add(singleFeatures.get(pos).get(featureIndexes[template][j]));
+        }
+        return Joiner.on(delimiter).join(feature);
+    }
+}
@@ -1,7 +1,26 @@
 package trnlp.apps;
 
+import java.io.IOException;
+import java.io.Reader;
+
 public class ContentPreprocessor {
 
+    // replacement of each character, 0 if character is kept.
+    static final char[] REPLACEMENTS = new char[0x2040];
+
+    static {
+        // rdquo, ldquo, laquo, raquo, Prime sybols in unicode.
+        for (char c : "“”»«″\u0093\u0094".toCharArray()) {
+            REPLACEMENTS[c] = '"';
+        }
+        for (char c : "\u0091\u0092′´`’‘".toCharArray()) {
+            REPLACEMENTS[c] = '\'';
+        }
+        for (char c : "\u0096\u0097–".toCharArray()) {
+            REPLACEMENTS[c] = '-';
+        }
+    }
+
     public String process(String input) {
         return normalizeQuotesHyphens(input);
     }
@@ -9,16 +28,110 @@ public class ContentPreprocessor {
     /**
      * This method converts different single and double quote symbols to a
      * unified form. also it reduces two connected single quotes to a one double
-     * quote.
+     * quote. Only single quotes that are in the input are reduced, not the ones generated from other symbols.
      *
      * @param input input string.
-     * @return cleaned input string.
+     * @return cleaned input string. If nothing is changed, input itself is returned.
      */
     public static String normalizeQuotesHyphens(String input) {
-        // rdquo, ldquo, laquo, raquo, Prime sybols in unicode.
-        return input
-                .replaceAll("[\u201C\u201D\u00BB\u00AB\u2033\u0093\u0094]|''",
-                        "\"").replaceAll("[\u0091\u0092\u2032´`’‘]", "'")
-                .replaceAll("[\u0096\u0097–]", "-");
+        int length = input.length();
+        int i = 0;
+        while (i < length && !needsChange(input, i, length))
+            i++;
+        if (i == length)
+            return input;
+        StringBuilder sb = new StringBuilder(length);
+        sb.append(input, 0, i);
+        for (; i < length; i++) {
+            char c = input.charAt(i);
+            if (c == '\'' && i + 1 < length && input.charAt(i + 1) == '\'') {
+                sb.append('"');
+                i++;
+            } else {
+                sb.append(replace(c));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean needsChange(String input, int i, int length) {
+        char c = input.charAt(i);
+        if (c == '\'')
+            return i + 1 < length && input.charAt(i + 1) == '\'';
+        return c < REPLACEMENTS.length && REPLACEMENTS[c] != 0;
+    }
+
+    static char replace(char c) {
+        if (c < REPLACEMENTS.length && REPLACEMENTS[c] != 0)
+            return REPLACEMENTS[c];
+        return c;
+    }
+
+    /**
+     * Same as {@link #normalizeQuotesHyphens(String)} for streams, so large documents do not need to be loaded
+     * to memory.
+     *
+     * @param input input reader.
+     * @return a reader that normalizes characters of input while reading. Closing it closes input.
+     */
+    public static Reader normalizeQuotesHyphens(Reader input) {
+        return new NormalizingReader(input);
+    }
+
+    static class NormalizingReader extends Reader {
+        final Reader in;
+        final char[] buffer = new char[8192];
+        int position;
+        int limit;
+        boolean eof;
+
+        NormalizingReader(Reader in) {
+            this.in = in;
+        }
+
+        // returns false at end of input.
+        private boolean fill() throws IOException {
+            while (position == limit) {
+                if (eof)
+                    return false;
+                int n = in.read(buffer, 0, buffer.length);
+                if (n < 0) {
+                    eof = true;
+                    return false;
+                }
+                position = 0;
+                limit = n;
+            }
+            return true;
+        }
+
+        @Override
+        public int read(char[] chars, int offset, int length) throws IOException {
+            if (length == 0)
+                return 0;
+            int count = 0;
+            // after some characters are read, do not block for more.
+            while (count < length && (count == 0 || position < limit)) {
+                if (!fill())
+                    break;
+                char c = buffer[position++];
+                if (c == '\'') {
+                    // two single quotes may be split between reads.
+                    if (fill() && buffer[position] == '\'') {
+                        position++;
+                        c = '"';
+                    }
+                } else {
+                    c = replace(c);
+                }
+                chars[offset + count++] = c;
+            }
+            return count == 0 ? -1 : count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
     }
 }
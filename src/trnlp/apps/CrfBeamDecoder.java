@@ -0,0 +1,288 @@
+package trnlp.apps;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Beam search decoder for chunking CRF models. It uses the weights of a {@link CrfViterbiDecoder}, but instead of
+ * keeping the best path for every state, it keeps at most beam width best partial paths for every word. Partial
+ * paths that score lower than the best one by more than the score threshold are dropped too. So search is not
+ * exact, but work per word depends on the beam width instead of the amount of states.
+ * <p/>
+ * Paths are kept separately even if they end in the same state, so the decoder can return n-best paths. With a
+ * beam wide enough to keep all paths and no threshold, results are the exact n-best state paths of the model. Models
+ * trained with {@link CrfTrainer} have a single start state, so different paths have different label sequences.
+ * Path scores contain initial and final weights. Note that {@link CrfViterbiDecoder} follows Mallet, which ranks
+ * end states without final weights, so the best path here may differ from it when final weights are used.
+ * <p/>
+ * Decoder is immutable and can be shared. Working memory is kept per thread and reused.
+ */
+public class CrfBeamDecoder {
+
+    final CrfViterbiDecoder model;
+    final int beamWidth;
+    final double scoreThreshold;
+
+    final ThreadLocal<Beam> beams = new ThreadLocal<Beam>() {
+        @Override
+        protected Beam initialValue() {
+            return new Beam(model);
+        }
+    };
+
+    /**
+     * @param model          decoder that holds the model weights.
+     * @param beamWidth      maximum amount of partial paths kept for every word.
+     * @param scoreThreshold partial paths with a score lower than best score minus this value are dropped. Use
+     *                       {@link Double#POSITIVE_INFINITY} for pruning only with the beam width.
+     */
+    public CrfBeamDecoder(CrfViterbiDecoder model, int beamWidth, double scoreThreshold) {
+        if (beamWidth < 1)
+            throw new IllegalArgumentException("Beam width must be positive. But it is " + beamWidth);
+        if (!(scoreThreshold >= 0))
+            throw new IllegalArgumentException("Score threshold must be non negative. But it is " + scoreThreshold);
+        this.model = model;
+        this.beamWidth = beamWidth;
+        this.scoreThreshold = scoreThreshold;
+    }
+
+    public int getBeamWidth() {
+        return beamWidth;
+    }
+
+    public double getScoreThreshold() {
+        return scoreThreshold;
+    }
+
+    /**
+     * Finds the best label codes of a sentence.
+     *
+     * @param featureIndexes feature alphabet indexes of each word.
+     * @return label codes of each word.
+     * @throws IllegalStateException if no complete path is found.
+     */
+    public byte[] decode(int[][] featureIndexes) {
+        byte[] labels = new byte[featureIndexes.length];
+        Beam beam = beams.get();
+        if (search(featureIndexes, beamWidth, beam) > 0)
+            beam.backtrack(0, labels);
+        else if (labels.length > 0)
+            throw new IllegalStateException("No label sequence is found for the sentence of "
+                    + featureIndexes.length + " words.");
+        return labels;
+    }
+
+    /**
+     * Finds the k best label sequences of a sentence. If k is larger than the beam width, beam is widened to k for
+     * this call.
+     *
+     * @param featureIndexes feature alphabet indexes of each word.
+     * @param k              maximum amount of paths to return.
+     * @return paths in decreasing order of their scores. It can have less than k paths, and it is empty if the
+     *         sentence is empty or no path is found.
+     */
+    public List<Path> decode(int[][] featureIndexes, int k) {
+        if (k < 1)
+            throw new IllegalArgumentException("Path count must be positive. But it is " + k);
+        Beam beam = beams.get();
+        int count = Math.min(k, search(featureIndexes, Math.max(beamWidth, k), beam));
+        if (count == 0)
+            return Collections.emptyList();
+        int lastBase = (featureIndexes.length - 1) * beam.width;
+        List<Path> paths = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte[] labels = new byte[featureIndexes.length];
+            beam.backtrack(i, labels);
+            paths.add(new Path(labels, beam.scores[lastBase + i]));
+        }
+        return paths;
+    }
+
+    /**
+     * Fills the beam of every word. Entries of every word are in decreasing order of their scores.
+     *
+     * @return amount of complete paths in the beam of the last word.
+     */
+    int search(int[][] featureIndexes, int width, Beam beam) {
+        final int length = featureIndexes.length;
+        if (length == 0)
+            return 0;
+        beam.ensureCapacity(length, width);
+        final CrfViterbiDecoder m = model;
+        final int stateCount = m.initialWeights.length;
+        final double[] transitionScores = beam.transitionScores;
+        final double[] slotScores = beam.slotScores;
+        final int[] slotStates = beam.slotStates;
+        final int[] slotBack = beam.slotBack;
+        final byte[] slotLabels = beam.slotLabels;
+        final int[] heap = beam.heap;
+
+        for (int ip = 0; ip < length; ip++) {
+            m.scoreWeightSets(featureIndexes[ip], beam.scratch);
+            m.scoreTransitions(beam.scratch.weightScores, transitionScores);
+
+            final boolean first = ip == 0;
+            final boolean last = ip == length - 1;
+            final int previousBase = (ip - 1) * width;
+            final int sourceCount = first ? stateCount : beam.counts[ip - 1];
+            int heapSize = 0;
+            for (int h = 0; h < sourceCount; h++) {
+                final int s = first ? h : beam.states[previousBase + h];
+                final double sourceScore = first ? m.initialWeights[h] : beam.scores[previousBase + h];
+                if (sourceScore == Double.NEGATIVE_INFINITY)
+                    continue;
+                for (int t = m.transitionOffsets[s]; t < m.transitionOffsets[s + 1]; t++) {
+                    final int destination = m.transitionDestinations[t];
+                    double score = sourceScore + transitionScores[t];
+                    if (last)
+                        score += m.finalWeights[destination];
+                    if (score == Double.NEGATIVE_INFINITY)
+                        continue;
+                    int slot;
+                    boolean replace = heapSize == width;
+                    if (!replace) {
+                        slot = heapSize;
+                        heap[heapSize++] = slot;
+                    } else if (score > slotScores[heap[0]]) {
+                        // replaces the worst path in the beam.
+                        slot = heap[0];
+                    } else {
+                        continue;
+                    }
+                    slotScores[slot] = score;
+                    slotStates[slot] = destination;
+                    slotBack[slot] = h;
+                    slotLabels[slot] = m.transitionLabels[t];
+                    if (replace)
+                        siftDown(heap, heapSize, slotScores);
+                    else
+                        siftUp(heap, heapSize - 1, slotScores);
+                }
+            }
+            if (heapSize == 0)
+                return 0;
+
+            // pops the worst path each time, so paths are written from the end in decreasing order of scores.
+            final int base = ip * width;
+            for (int n = heapSize - 1; n >= 0; n--) {
+                int slot = heap[0];
+                heap[0] = heap[n];
+                siftDown(heap, n, slotScores);
+                beam.scores[base + n] = slotScores[slot];
+                beam.states[base + n] = slotStates[slot];
+                beam.back[base + n] = slotBack[slot];
+                beam.labels[base + n] = slotLabels[slot];
+            }
+            int count = heapSize;
+            double limit = beam.scores[base] - scoreThreshold;
+            while (beam.scores[base + count - 1] < limit) {
+                count--;
+            }
+            beam.counts[ip] = count;
+        }
+        return beam.counts[length - 1];
+    }
+
+    // min heap of slots ordered by their scores, so the root is the worst path in the beam.
+    private static void siftUp(int[] heap, int i, double[] scores) {
+        int slot = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!(scores[slot] < scores[heap[parent]]))
+                break;
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = slot;
+    }
+
+    private static void siftDown(int[] heap, int size, double[] scores) {
+        if (size == 0)
+            return;
+        int i = 0;
+        int slot = heap[0];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size)
+                break;
+            if (child + 1 < size && scores[heap[child + 1]] < scores[heap[child]])
+                child++;
+            if (!(scores[heap[child]] < scores[slot]))
+                break;
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = slot;
+    }
+
+    /**
+     * A complete label sequence and its score. Score is the unnormalized log weight of the path, so difference of
+     * two scores is the log ratio of their probabilities.
+     */
+    public static class Path {
+        public final byte[] labels;
+        public final double score;
+
+        public Path(byte[] labels, double score) {
+            this.labels = labels;
+            this.score = score;
+        }
+    }
+
+    /**
+     * Working memory of the search. Paths of every word are kept in a row of beam width entries, each entry points
+     * to its source entry in the row of the previous word. Arrays grow to the longest sentence and widest beam seen.
+     */
+    static class Beam {
+        final CrfViterbiDecoder.Lattice scratch;
+        final double[] transitionScores;
+        int width;
+        int[] counts = new int[32];
+        double[] scores = new double[0];
+        int[] states = new int[0];
+        int[] back = new int[0];
+        byte[] labels = new byte[0];
+
+        // candidates of the current word.
+        int[] heap = new int[0];
+        double[] slotScores = new double[0];
+        int[] slotStates = new int[0];
+        int[] slotBack = new int[0];
+        byte[] slotLabels = new byte[0];
+
+        Beam(CrfViterbiDecoder model) {
+            scratch = model.newLattice();
+            transitionScores = new double[model.transitionDestinations.length];
+        }
+
+        void ensureCapacity(int length, int width) {
+            this.width = width;
+            if (heap.length < width) {
+                heap = new int[width];
+                slotScores = new double[width];
+                slotStates = new int[width];
+                slotBack = new int[width];
+                slotLabels = new byte[width];
+            }
+            if (counts.length < length)
+                counts = new int[Math.max(length, counts.length * 2)];
+            int size = length * width;
+            if (scores.length < size) {
+                size = Math.max(size, scores.length * 2);
+                scores = new double[size];
+                states = new int[size];
+                back = new int[size];
+                labels = new byte[size];
+            }
+        }
+
+        void backtrack(int index, byte[] result) {
+            int h = index;
+            for (int ip = result.length - 1; ip >= 0; ip--) {
+                result[ip] = labels[ip * width + h];
+                h = back[ip * width + h];
+            }
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package trnlp.apps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Exact n-best decoder for chunking CRF models. It is a Viterbi search that keeps the k best partial paths for every
+ * state of every word instead of only the best one, so the k best complete paths are always found. It uses the
+ * weights of a {@link CrfViterbiDecoder} and sums path scores in the same order.
+ * <p/>
+ * Paths ending in the same state are ordered by score, and equal scores keep the order in which Viterbi search
+ * visits them. So the best path is the same with {@link CrfViterbiDecoder#decode(int[][])} when final weights are all
+ * equal, as in models trained with {@link CrfTrainer}. Otherwise Mallet's end state selection, which the Viterbi
+ * decoder follows, may pick a different path than the highest scoring one. Models trained with {@link CrfTrainer}
+ * have a single start state, so different paths have different label sequences.
+ * <p/>
+ * Decoder is immutable and can be shared. Working memory is kept per thread and reused.
+ */
+public class CrfNBestDecoder {
+
+    final CrfViterbiDecoder model;
+
+    final ThreadLocal<Table> tables = new ThreadLocal<Table>() {
+        @Override
+        protected Table initialValue() {
+            return new Table(model);
+        }
+    };
+
+    /**
+     * @param model decoder that holds the model weights.
+     */
+    public CrfNBestDecoder(CrfViterbiDecoder model) {
+        this.model = model;
+    }
+
+    /**
+     * Finds the k best label sequences of a sentence.
+     *
+     * @param featureIndexes feature alphabet indexes of each word.
+     * @param k              maximum amount of paths to return.
+     * @return paths in decreasing order of their scores. It can have less than k paths, and it is empty if the
+     *         sentence is empty or no path exists.
+     */
+    public List<CrfBeamDecoder.Path> decode(int[][] featureIndexes, int k) {
+        if (k < 1)
+            throw new IllegalArgumentException("Path count must be positive. But it is " + k);
+        final int length = featureIndexes.length;
+        if (length == 0)
+            return Collections.emptyList();
+        final CrfViterbiDecoder m = model;
+        final int stateCount = m.initialWeights.length;
+        Table table = tables.get();
+        table.ensureCapacity(length, k);
+        final double[] transitionScores = table.transitionScores;
+        final double[] scores = table.scores;
+        final int[] back = table.back;
+        final byte[] labels = table.labels;
+        final int[] counts = table.counts;
+
+        for (int ip = 0; ip < length; ip++) {
+            m.scoreWeightSets(featureIndexes[ip], table.scratch);
+            m.scoreTransitions(table.scratch.weightScores, transitionScores);
+            final boolean first = ip == 0;
+            final boolean last = ip == length - 1;
+            final int countBase = ip * stateCount;
+            final int previousCountBase = countBase - stateCount;
+            Arrays.fill(counts, countBase, countBase + stateCount, 0);
+            boolean reachable = false;
+            for (int s = 0; s < stateCount; s++) {
+                final int sourceCount = first ? 1 : counts[previousCountBase + s];
+                final int sourceBase = (previousCountBase + s) * k;
+                for (int t = m.transitionOffsets[s]; t < m.transitionOffsets[s + 1]; t++) {
+                    final int destination = m.transitionDestinations[t];
+                    final int base = (countBase + destination) * k;
+                    for (int r = 0; r < sourceCount; r++) {
+                        double score = (first ? m.initialWeights[s] : scores[sourceBase + r]) + transitionScores[t];
+                        if (last)
+                            score += m.finalWeights[destination];
+                        if (score == Double.NEGATIVE_INFINITY)
+                            break;
+                        // sources are in decreasing order, so following ones can not enter a full list either.
+                        int count = counts[countBase + destination];
+                        if (count == k && !(score > scores[base + k - 1]))
+                            break;
+                        // equal scores stay behind the earlier ones.
+                        int i = count == k ? k - 1 : count;
+                        while (i > 0 && score > scores[base + i - 1]) {
+                            scores[base + i] = scores[base + i - 1];
+                            back[base + i] = back[base + i - 1];
+                            labels[base + i] = labels[base + i - 1];
+                            i--;
+                        }
+                        scores[base + i] = score;
+                        back[base + i] = first ? -1 : sourceBase + r;
+                        labels[base + i] = m.transitionLabels[t];
+                        if (count < k)
+                            counts[countBase + destination] = count + 1;
+                        reachable = true;
+                    }
+                }
+            }
+            if (!reachable)
+                return Collections.emptyList();
+        }
+
+        // merges the lists of end states. Equal scores are ordered by state and rank, like the Viterbi decoder.
+        final int countBase = (length - 1) * stateCount;
+        int[] heads = table.heads;
+        Arrays.fill(heads, 0, stateCount, 0);
+        List<CrfBeamDecoder.Path> paths = new ArrayList<>(k);
+        while (paths.size() < k) {
+            int best = -1;
+            double bestScore = Double.NEGATIVE_INFINITY;
+            for (int s = 0; s < stateCount; s++) {
+                if (heads[s] < counts[countBase + s]) {
+                    double score = scores[(countBase + s) * k + heads[s]];
+                    if (best < 0 || score > bestScore) {
+                        best = s;
+                        bestScore = score;
+                    }
+                }
+            }
+            if (best < 0)
+                break;
+            byte[] path = new byte[length];
+            int entry = (countBase + best) * k + heads[best];
+            for (int ip = length - 1; ip >= 0; ip--) {
+                path[ip] = labels[entry];
+                entry = back[entry];
+            }
+            paths.add(new CrfBeamDecoder.Path(path, bestScore));
+            heads[best]++;
+        }
+        return paths;
+    }
+
+    /**
+     * Working memory of the search. Every state of every word has a list of k entries in decreasing order of their
+     * scores, each entry points to its source entry of the previous word. Arrays grow to the longest sentence and
+     * largest k seen.
+     */
+    static class Table {
+        final CrfViterbiDecoder.Lattice scratch;
+        final double[] transitionScores;
+        final int stateCount;
+        final int[] heads;
+        int[] counts = new int[0];
+        double[] scores = new double[0];
+        int[] back = new int[0];
+        byte[] labels = new byte[0];
+
+        Table(CrfViterbiDecoder model) {
+            scratch = model.newLattice();
+            transitionScores = new double[model.transitionDestinations.length];
+            stateCount = model.initialWeights.length;
+            heads = new int[stateCount];
+        }
+
+        void ensureCapacity(int length, int k) {
+            int nodes = length * stateCount;
+            if (counts.length < nodes)
+                counts = new int[Math.max(nodes, counts.length * 2)];
+            int size = nodes * k;
+            if (scores.length < size) {
+                size = Math.max(size, scores.length * 2);
+                scores = new double[size];
+                back = new int[size];
+                labels = new byte[size];
+            }
+        }
+    }
+}
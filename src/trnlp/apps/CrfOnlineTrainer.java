@@ -0,0 +1,210 @@
+package trnlp.apps;
+
+import cc.mallet.fst.CRF;
+import cc.mallet.fst.SumLatticeDefault;
+import cc.mallet.fst.Transducer;
+import cc.mallet.fst.TransducerTrainer;
+import cc.mallet.types.Instance;
+import cc.mallet.types.InstanceList;
+import cc.mallet.types.Sequence;
+import cc.mallet.types.SparseVector;
+import cc.mallet.util.MalletLogger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Logger;
+
+/**
+ * Online trainers for CRF models. Instances are visited in a random order in every pass and weights are updated
+ * after every mini batch, so a few passes are usually enough instead of hundreds of L-BFGS iterations over the
+ * whole data.
+ * <ul>
+ * <li>SGD: Stochastic gradient ascent on the label likelihood with a gaussian prior. Learning rate of step t is
+ * rate / (1 + rate * t / (variance * N)) where t is the amount of instances seen so far and N is the instance count.</li>
+ * <li>PERCEPTRON: Averaged structured perceptron. Weights move towards the features of the correct path and away from
+ * the features of the Viterbi path when they differ. Final weights are the average of weights after every batch.</li>
+ * </ul>
+ * Path features are counted with Mallet lattices constrained to a label sequence. Models trained with
+ * {@link CrfTrainer} have a single start state, so a label sequence has only one path and the counts are exact.
+ * Initial and final weights are not regularized.
+ */
+public class CrfOnlineTrainer extends TransducerTrainer {
+    private static Logger logger =
+            MalletLogger.getLogger(CrfOnlineTrainer.class.getName());
+
+    public enum Method {
+        SGD, PERCEPTRON
+    }
+
+    final CRF crf;
+    final Method method;
+    final int batchSize;
+    final double learningRate;
+    final double variance;
+    final Random random;
+
+    final CRF.Factors constraints;
+    final CRF.Factors expectations;
+    // sum of updates multiplied with their step number, for averaging perceptron weights.
+    CRF.Factors updateSum;
+    long step;
+    long instancesSeen;
+    int iteration;
+
+    /**
+     * @param crf          model. Its weight dimensions must already be set, e.g. with
+     *                     {@link CRF#setWeightsDimensionAsIn(InstanceList, boolean)}
+     * @param method       training method.
+     * @param batchSize    amount of instances in a mini batch.
+     * @param learningRate initial learning rate of SGD, not used by perceptron.
+     * @param variance     gaussian prior variance of SGD, not used by perceptron.
+     * @param seed         random seed for visiting order of the instances.
+     */
+    public CrfOnlineTrainer(CRF crf, Method method, int batchSize, double learningRate, double variance, long seed) {
+        if (batchSize < 1)
+            throw new IllegalArgumentException("Batch size must be positive. But it is " + batchSize);
+        if (!(learningRate > 0))
+            throw new IllegalArgumentException("Learning rate must be positive. But it is " + learningRate);
+        this.crf = crf;
+        this.method = method;
+        this.batchSize = batchSize;
+        this.learningRate = learningRate;
+        this.variance = variance;
+        this.random = new Random(seed);
+        this.constraints = new CRF.Factors(crf.getParameters());
+        this.expectations = new CRF.Factors(crf.getParameters());
+    }
+
+    @Override
+    public Transducer getTransducer() {
+        return crf;
+    }
+
+    @Override
+    public int getIteration() {
+        return iteration;
+    }
+
+    @Override
+    public boolean isFinishedTraining() {
+        return false;
+    }
+
+    /**
+     * Makes passes over the training instances. Evaluators run after every pass. For perceptron, weights are
+     * averaged after the last pass; calling train again continues from the averaged weights.
+     *
+     * @param trainingSet   training instances.
+     * @param numIterations amount of passes.
+     * @return false, online training does not detect convergence.
+     */
+    @Override
+    public boolean train(InstanceList trainingSet, int numIterations) {
+        List<Instance> instances = new ArrayList<>(trainingSet);
+        if (method == Method.PERCEPTRON) {
+            updateSum = new CRF.Factors(crf.getParameters());
+            step = 1;
+        }
+        for (int i = 0; i < numIterations; i++) {
+            Collections.shuffle(instances, random);
+            int mistakes = 0;
+            for (int start = 0; start < instances.size(); start += batchSize) {
+                List<Instance> batch = instances.subList(start, Math.min(instances.size(), start + batchSize));
+                mistakes += method == Method.SGD ? sgdStep(batch, instances.size()) : perceptronStep(batch);
+            }
+            iteration++;
+            if (method == Method.PERCEPTRON)
+                logger.info("Iteration " + iteration + " perceptron mistakes: " + mistakes);
+            else
+                logger.info("Iteration " + iteration + " skipped instances: " + mistakes);
+            runEvaluators();
+        }
+        if (method == Method.PERCEPTRON)
+            average();
+        return false;
+    }
+
+    // returns amount of instances skipped because their labels are not possible.
+    private int sgdStep(List<Instance> batch, int instanceCount) {
+        constraints.zero();
+        expectations.zero();
+        int skipped = 0;
+        for (Instance instance : batch) {
+            Sequence input = (Sequence) instance.getData();
+            Sequence output = (Sequence) instance.getTarget();
+            SumLatticeDefault labeled = new SumLatticeDefault(crf, input, output, constraints.new Incrementor());
+            if (labeled.getTotalWeight() == Transducer.IMPOSSIBLE_WEIGHT) {
+                skipped++;
+                continue;
+            }
+            new SumLatticeDefault(crf, input, null, expectations.new Incrementor());
+        }
+        double rate = learningRate / (1 + learningRate * instancesSeen / (variance * instanceCount));
+        // gradient of the prior for the share of this batch.
+        addScaled(constraints, crf.getParameters(), -(double) batch.size() / (variance * instanceCount));
+        update(rate);
+        instancesSeen += batch.size();
+        return skipped;
+    }
+
+    // returns amount of instances with a wrong Viterbi path.
+    private int perceptronStep(List<Instance> batch) {
+        constraints.zero();
+        expectations.zero();
+        int mistakes = 0;
+        for (Instance instance : batch) {
+            Sequence input = (Sequence) instance.getData();
+            Sequence output = (Sequence) instance.getTarget();
+            Sequence predicted = crf.transduce(input);
+            if (sameLabels(output, predicted))
+                continue;
+            SumLatticeDefault labeled = new SumLatticeDefault(crf, input, output, constraints.new Incrementor());
+            if (labeled.getTotalWeight() == Transducer.IMPOSSIBLE_WEIGHT)
+                continue;
+            new SumLatticeDefault(crf, input, predicted, expectations.new Incrementor());
+            mistakes++;
+        }
+        if (mistakes > 0) {
+            update(1);
+            updateSum.plusEquals(constraints, step);
+            updateSum.plusEquals(expectations, -step);
+        }
+        step++;
+        return mistakes;
+    }
+
+    private void update(double rate) {
+        CRF.Factors parameters = crf.getParameters();
+        parameters.plusEquals(constraints, rate);
+        parameters.plusEquals(expectations, -rate);
+        crf.weightsValueChanged();
+    }
+
+    // averaged weights are w - sum(step * update) / step, without keeping a sum of weights.
+    private void average() {
+        crf.getParameters().plusEquals(updateSum, -1.0 / step);
+        crf.weightsValueChanged();
+        updateSum = null;
+    }
+
+    static boolean sameLabels(Sequence a, Sequence b) {
+        if (a.size() != b.size())
+            return false;
+        for (int i = 0; i < a.size(); i++) {
+            if (!a.get(i).toString().equals(b.get(i).toString()))
+                return false;
+        }
+        return true;
+    }
+
+    // adds only feature and default weights, initial and final weights can be impossible.
+    private static void addScaled(CRF.Factors target, CRF.Factors source, double factor) {
+        for (int i = 0; i < target.weights.length; i++) {
+            SparseVector weights = target.weights[i];
+            weights.plusEqualsSparse(source.weights[i], factor);
+            target.defaultWeights[i] += factor * source.defaultWeights[i];
+        }
+    }
+}
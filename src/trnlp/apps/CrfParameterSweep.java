@@ -0,0 +1,427 @@
+package trnlp.apps;
+
+import cc.mallet.fst.CRF;
+import cc.mallet.pipe.iterator.LineGroupIterator;
+import cc.mallet.types.Instance;
+import cc.mallet.types.InstanceList;
+import cc.mallet.types.Sequence;
+import cc.mallet.util.CommandOption;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.Pattern;
+
+/**
+ * Chooses CRF training parameters with k-fold cross validation over a grid of gaussian prior variances, label Markov
+ * orders and iteration counts. Every fold and configuration pair is a job, jobs run on a fixed size thread pool.
+ * Training data is piped once and fold lists are built once, all jobs share them. Instances are only read during
+ * training, so sharing them is safe.
+ * <p/>
+ * Configurations are ranked by their mean token accuracy on the held out folds. Report also contains the mean
+ * training time and the size of the model in {@link BinaryCrfModel} format. Trainers are a dimension of the grid
+ * too, so online trainers can be compared with the L-BFGS baseline on the same folds.
+ */
+public class CrfParameterSweep {
+
+    private static final CommandOption.Integer foldsOption = new CommandOption.Integer
+            (CrfParameterSweep.class, "folds", "INTEGER", true, 5,
+                    "Number of cross validation folds.", null);
+
+    private static final CommandOption.Integer threadsOption = new CommandOption.Integer
+            (CrfParameterSweep.class, "threads", "INTEGER", true, Runtime.getRuntime().availableProcessors(),
+                    "Number of jobs trained at the same time.", null);
+
+    private static final CommandOption.DoubleArray variancesOption = new CommandOption.DoubleArray
+            (CrfParameterSweep.class, "gaussian-variances", "COMMA-SEP-DECIMALS", true, new double[]{1, 10, 100},
+                    "Gaussian prior variances to try.", null);
+
+    private static final CommandOption.String ordersOption = new CommandOption.String
+            (CrfParameterSweep.class, "orders", "SEMICOLON-SEP-ORDER-LISTS", true, "1",
+                    "Label Markov order lists to try, e.g. 1;0,1", null);
+
+    private static final CommandOption.IntegerArray iterationsOption = new CommandOption.IntegerArray
+            (CrfParameterSweep.class, "iterations", "COMMA-SEP-INTEGERS", true, new int[]{500},
+                    "Training iteration counts to try.", null);
+
+    private static final CommandOption.String trainersOption = new CommandOption.String
+            (CrfParameterSweep.class, "trainers", "COMMA-SEP-TRAINERS", true, "lbfgs",
+                    "Trainers to try, any of lbfgs, sgd and perceptron. See CrfTrainer --trainer.", null);
+
+    private static final CommandOption.Integer batchSizeOption = new CommandOption.Integer
+            (CrfParameterSweep.class, "batch-size", "INTEGER", true, 1,
+                    "Mini batch size of online trainers.", null);
+
+    private static final CommandOption.Double learningRateOption = new CommandOption.Double
+            (CrfParameterSweep.class, "learning-rate", "DECIMAL", true, 0.1,
+                    "Initial learning rate of the stochastic gradient trainer.", null);
+
+    private static final CommandOption.Integer randomSeedOption = new CommandOption.Integer
+            (CrfParameterSweep.class, "random-seed", "INTEGER", true, 0,
+                    "Random seed for assigning instances to folds.", null);
+
+    private static final CommandOption.Integer hashBitsOption = new CommandOption.Integer
+            (CrfParameterSweep.class, "hash-bits", "INTEGER", true, 0,
+                    "Hash features to 2^hash-bits buckets instead of keeping a feature dictionary. 0 disables hashing.", null);
+
+    private static final CommandOption.Integer pipeThreadsOption = new CommandOption.Integer
+            (CrfParameterSweep.class, "pipe-threads", "INTEGER", true, 1,
+                    "Number of threads to use for converting input data to instances.", null);
+
+    private static final CommandOption.File reportOption = new CommandOption.File
+            (CrfParameterSweep.class, "report", "FILENAME", true, null,
+                    "Report is written to this file as well as standard output.", null);
+
+    private static final CommandOption.List commandOptions =
+            new CommandOption.List(
+                    "Cross validates CRF training parameters. Remaining argument is the training data file.",
+                    new CommandOption[]{
+                            foldsOption,
+                            threadsOption,
+                            variancesOption,
+                            ordersOption,
+                            iterationsOption,
+                            trainersOption,
+                            batchSizeOption,
+                            learningRateOption,
+                            randomSeedOption,
+                            hashBitsOption,
+                            pipeThreadsOption,
+                            reportOption
+                    });
+
+    static final String DEFAULT_LABEL = "O";
+
+    /**
+     * Training parameters of a job.
+     */
+    public static class Config {
+        final double variance;
+        final int[] orders;
+        final int iterations;
+        final String trainer;
+        final int batchSize;
+        final double learningRate;
+
+        public Config(double variance, int[] orders, int iterations) {
+            this(variance, orders, iterations, "lbfgs", 1, 0.1);
+        }
+
+        /**
+         * @param trainer      lbfgs, sgd or perceptron.
+         * @param batchSize    mini batch size of online trainers.
+         * @param learningRate initial learning rate of sgd.
+         */
+        public Config(double variance, int[] orders, int iterations, String trainer, int batchSize,
+                      double learningRate) {
+            this.variance = variance;
+            this.orders = orders;
+            this.iterations = iterations;
+            this.trainer = trainer;
+            this.batchSize = batchSize;
+            this.learningRate = learningRate;
+        }
+
+        /**
+         * @return all combinations of the given values.
+         */
+        public static List<Config> grid(double[] variances, List<int[]> orderLists, int[] iterations) {
+            return grid(new String[]{"lbfgs"}, variances, orderLists, iterations, 1, 0.1);
+        }
+
+        /**
+         * @return all combinations of the given trainers and values. Online trainers use the batch size and the
+         *         learning rate.
+         */
+        public static List<Config> grid(String[] trainers, double[] variances, List<int[]> orderLists,
+                                        int[] iterations, int batchSize, double learningRate) {
+            List<Config> result = new ArrayList<>();
+            for (String name : trainers) {
+                String trainer = name.trim();
+                for (double variance : variances) {
+                    // perceptron does not use the prior.
+                    if (trainer.equals("perceptron") && variance != variances[0])
+                        continue;
+                    for (int[] orders : orderLists) {
+                        for (int iteration : iterations) {
+                            result.add(new Config(variance, orders, iteration, trainer, batchSize,
+                                    learningRate));
+                        }
+                    }
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < orders.length; i++) {
+                if (i > 0)
+                    sb.append(',');
+                sb.append(orders[i]);
+            }
+            if (trainer.equals("perceptron"))
+                return String.format("%s orders=%s iterations=%d batch=%d", trainer, sb, iterations, batchSize);
+            if (trainer.equals("sgd"))
+                return String.format("%s var=%s orders=%s iterations=%d batch=%d rate=%s", trainer, variance, sb,
+                        iterations, batchSize, learningRate);
+            return String.format("%s var=%s orders=%s iterations=%d", trainer, variance, sb, iterations);
+        }
+    }
+
+    /**
+     * Result of one fold of a configuration.
+     */
+    static class FoldResult {
+        final double accuracy;
+        final long trainMillis;
+        final long modelBytes;
+
+        FoldResult(double accuracy, long trainMillis, long modelBytes) {
+            this.accuracy = accuracy;
+            this.trainMillis = trainMillis;
+            this.modelBytes = modelBytes;
+        }
+    }
+
+    /**
+     * Cross validation results of a configuration.
+     */
+    public static class ConfigResult {
+        final Config config;
+        final FoldResult[] folds;
+
+        ConfigResult(Config config, FoldResult[] folds) {
+            this.config = config;
+            this.folds = folds;
+        }
+
+        public Config getConfig() {
+            return config;
+        }
+
+        public double getMeanAccuracy() {
+            double sum = 0;
+            for (FoldResult fold : folds) {
+                sum += fold.accuracy;
+            }
+            return sum / folds.length;
+        }
+
+        public double getAccuracyDeviation() {
+            double mean = getMeanAccuracy();
+            double sum = 0;
+            for (FoldResult fold : folds) {
+                sum += (fold.accuracy - mean) * (fold.accuracy - mean);
+            }
+            return Math.sqrt(sum / folds.length);
+        }
+
+        public double getMeanTrainSeconds() {
+            double sum = 0;
+            for (FoldResult fold : folds) {
+                sum += fold.trainMillis;
+            }
+            return sum / folds.length / 1000;
+        }
+
+        public double getMeanModelBytes() {
+            double sum = 0;
+            for (FoldResult fold : folds) {
+                sum += fold.modelBytes;
+            }
+            return sum / folds.length;
+        }
+    }
+
+    final InstanceList[] trainingFolds;
+    final InstanceList[] testFolds;
+    final int threadCount;
+
+    /**
+     * Splits instances to folds. Instances are shuffled with the seed and every k-th instance goes to the same test
+     * fold, so folds are the same for the same seed.
+     *
+     * @param instances   piped instances.
+     * @param folds       amount of folds, at least 2.
+     * @param seed        random seed for shuffling.
+     * @param threadCount amount of jobs run at the same time.
+     */
+    public CrfParameterSweep(InstanceList instances, int folds, long seed, int threadCount) {
+        if (folds < 2 || folds > instances.size())
+            throw new IllegalArgumentException("Fold count must be between 2 and instance count " + instances.size()
+                    + ". But it is " + folds);
+        if (threadCount < 1)
+            throw new IllegalArgumentException("Thread count must be positive. But it is " + threadCount);
+        this.threadCount = threadCount;
+        InstanceList shuffled = instances.shallowClone();
+        shuffled.shuffle(new Random(seed));
+        trainingFolds = new InstanceList[folds];
+        testFolds = new InstanceList[folds];
+        for (int f = 0; f < folds; f++) {
+            trainingFolds[f] = instances.cloneEmpty();
+            testFolds[f] = instances.cloneEmpty();
+        }
+        for (int i = 0; i < shuffled.size(); i++) {
+            Instance instance = shuffled.get(i);
+            testFolds[i % folds].add(instance);
+            for (int f = 0; f < folds; f++) {
+                if (f != i % folds)
+                    trainingFolds[f].add(instance);
+            }
+        }
+    }
+
+    /**
+     * Cross validates all configurations.
+     *
+     * @param configs configurations.
+     * @return results in decreasing order of mean accuracy.
+     * @throws IOException if a job fails or thread is interrupted.
+     */
+    public List<ConfigResult> run(List<Config> configs) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        List<Future<FoldResult>> futures = new ArrayList<>();
+        try {
+            for (Config config : configs) {
+                for (int f = 0; f < trainingFolds.length; f++) {
+                    futures.add(executor.submit(new Job(config, f)));
+                }
+            }
+            List<ConfigResult> results = new ArrayList<>();
+            int k = 0;
+            for (Config config : configs) {
+                FoldResult[] folds = new FoldResult[trainingFolds.length];
+                for (int f = 0; f < folds.length; f++) {
+                    folds[f] = get(futures.get(k++));
+                }
+                results.add(new ConfigResult(config, folds));
+            }
+            Collections.sort(results, new Comparator<ConfigResult>() {
+                @Override
+                public int compare(ConfigResult a, ConfigResult b) {
+                    return Double.compare(b.getMeanAccuracy(), a.getMeanAccuracy());
+                }
+            });
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static FoldResult get(Future<FoldResult> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted during parameter sweep.");
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    class Job implements Callable<FoldResult> {
+        final Config config;
+        final int fold;
+
+        Job(Config config, int fold) {
+            this.config = config;
+            this.fold = fold;
+        }
+
+        @Override
+        public FoldResult call() throws IOException {
+            long start = System.currentTimeMillis();
+            CRF crf = CrfTrainer.train(trainingFolds[fold], null, null, config.orders, DEFAULT_LABEL, "\\s", ".*",
+                    true, config.iterations, config.variance, null, config.trainer, config.batchSize,
+                    config.learningRate);
+            long trainMillis = System.currentTimeMillis() - start;
+            return new FoldResult(tokenAccuracy(crf, testFolds[fold]), trainMillis, modelBytes(crf));
+        }
+    }
+
+    static double tokenAccuracy(CRF crf, InstanceList instances) {
+        long total = 0, correct = 0;
+        for (Instance instance : instances) {
+            Sequence input = (Sequence) instance.getData();
+            Sequence target = (Sequence) instance.getTarget();
+            Sequence output = crf.transduce(input);
+            for (int j = 0; j < target.size(); j++) {
+                if (target.get(j).toString().equals(output.get(j).toString()))
+                    correct++;
+            }
+            total += target.size();
+        }
+        return total == 0 ? 0 : (double) correct / total;
+    }
+
+    // size of the model in the binary format the chunker loads.
+    static long modelBytes(CRF crf) throws IOException {
+        File file = File.createTempFile("sweep", ".bin");
+        try {
+            BinaryCrfModel.fromCrf(crf).save(file);
+            return file.length();
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Writes results as a table in ranking order.
+     */
+    public static void writeReport(List<ConfigResult> results, PrintStream out) {
+        out.format("%-4s %-60s %10s %10s %10s %12s%n", "Rank", "Config", "Accuracy", "Deviation", "Train(s)",
+                "Model(KB)");
+        int rank = 1;
+        for (ConfigResult result : results) {
+            out.format("%-4d %-60s %10.4f %10.4f %10.1f %12.1f%n", rank++, result.config, result.getMeanAccuracy(),
+                    result.getAccuracyDeviation(), result.getMeanTrainSeconds(), result.getMeanModelBytes() / 1024);
+        }
+    }
+
+    static List<int[]> parseOrderLists(String s) {
+        List<int[]> result = new ArrayList<>();
+        for (String orderList : s.split(";")) {
+            String[] orders = orderList.trim().split(",");
+            int[] values = new int[orders.length];
+            for (int i = 0; i < orders.length; i++) {
+                values[i] = Integer.parseInt(orders[i].trim());
+            }
+            result.add(values);
+        }
+        return result;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int restArgs = commandOptions.processOptions(args);
+        if (restArgs == args.length) {
+            commandOptions.printUsage(true);
+            throw new IllegalArgumentException("Missing training data file.");
+        }
+        FeatureIndexPipe pipe = hashBitsOption.value > 0 ?
+                new FeatureIndexPipe(new FeatureHashing(hashBitsOption.value)) : new FeatureIndexPipe();
+        pipe.getTargetAlphabet().lookupIndex(DEFAULT_LABEL);
+        pipe.setTargetProcessing(true);
+        InstanceList instances = new InstanceList(pipe);
+        try (Reader reader = new InputStreamReader(new FileInputStream(args[restArgs]), "utf-8")) {
+            new ParallelInstancePiping(pipe, pipeThreadsOption.value, ParallelInstancePiping.DEFAULT_BLOCK_SIZE)
+                    .addThruPipe(new LineGroupIterator(reader, Pattern.compile("^\\s*$"), true),
+                            instances);
+        }
+        System.out.println("Instances: " + instances.size() + " Features: " + pipe.getDataAlphabet().size());
+
+        List<Config> configs = Config.grid(trainersOption.value.split(","), variancesOption.value,
+                parseOrderLists(ordersOption.value), iterationsOption.value, batchSizeOption.value,
+                learningRateOption.value);
+        CrfParameterSweep sweep = new CrfParameterSweep(instances, foldsOption.value, randomSeedOption.value,
+                threadsOption.value);
+        List<ConfigResult> results = sweep.run(configs);
+        writeReport(results, System.out);
+        if (reportOption.value != null) {
+            try (PrintStream out = new PrintStream(reportOption.value, "utf-8")) {
+                writeReport(results, out);
+            }
+        }
+    }
+}
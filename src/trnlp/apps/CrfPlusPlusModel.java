@@ -0,0 +1,269 @@
+package trnlp.apps;
+
+import com.google.common.base.Charsets;
+import org.jcaki.Strings;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A pure Java decoder for CRF++ models. It reads text models in the format of "crf_learn -t" and labels sentences
+ * with Viterbi algorithm, scoring label sequences with the cost formulas of CRF++. It is tested against exhaustive
+ * scoring of all label sequences, not against "crf_test" output. Because model contains the feature templates, only
+ * single word feature columns are required for labeling.
+ * <p/>
+ * Instances are immutable after loading so they can be used from multiple threads.
+ */
+public class CrfPlusPlusModel {
+
+    final String[] labels;
+    final List<Template> unigramTemplates;
+    final List<Template> bigramTemplates;
+    final Map<String, Integer> featureIds;
+    final double[] weights;
+    final double costFactor;
+    final int columnCount;
+
+    CrfPlusPlusModel(String[] labels,
+                     List<Template> unigramTemplates,
+                     List<Template> bigramTemplates,
+                     Map<String, Integer> featureIds,
+                     double[] weights,
+                     double costFactor,
+                     int columnCount) {
+        this.labels = labels;
+        this.unigramTemplates = unigramTemplates;
+        this.bigramTemplates = bigramTemplates;
+        this.featureIds = featureIds;
+        this.weights = weights;
+        this.costFactor = costFactor;
+        this.columnCount = columnCount;
+    }
+
+    /**
+     * Loads a CRF++ text model.
+     *
+     * @param textModelFile model file generated by "crf_learn -t". It is usually named as [model].txt
+     * @return loaded model.
+     * @throws IOException if file cannot be read or it is not a proper CRF++ text model.
+     */
+    public static CrfPlusPlusModel loadTextModel(File textModelFile) throws IOException {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(textModelFile), Charsets.UTF_8))) {
+            return loadTextModel(reader);
+        }
+    }
+
+    static CrfPlusPlusModel loadTextModel(BufferedReader reader) throws IOException {
+        // header. version, cost-factor, maxid, xsize
+        Map<String, String> header = new HashMap<>();
+        for (String line : readBlock(reader)) {
+            header.put(Strings.subStringUntilFirst(line, ":").trim(), Strings.subStringAfterFirst(line, ":").trim());
+        }
+        if (!header.containsKey("maxid") || !header.containsKey("xsize"))
+            throw new IOException("Not a CRF++ text model. Header is missing maxid or xsize.");
+        int maxId = Integer.parseInt(header.get("maxid"));
+        int columnCount = Integer.parseInt(header.get("xsize"));
+        double costFactor = header.containsKey("cost-factor") ? Double.parseDouble(header.get("cost-factor")) : 1d;
+
+        List<String> labelList = readBlock(reader);
+        String[] labels = labelList.toArray(new String[labelList.size()]);
+
+        List<Template> unigramTemplates = new ArrayList<>();
+        List<Template> bigramTemplates = new ArrayList<>();
+        for (String line : readBlock(reader)) {
+            if (line.startsWith("U"))
+                unigramTemplates.add(new Template(line));
+            else if (line.startsWith("B"))
+                bigramTemplates.add(new Template(line));
+            else
+                throw new IOException("Unexpected template line: " + line);
+        }
+
+        Map<String, Integer> featureIds = new HashMap<>();
+        for (String line : readBlock(reader)) {
+            int index = line.indexOf(' ');
+            if (index < 0)
+                throw new IOException("Unexpected feature line: " + line);
+            featureIds.put(line.substring(index + 1), Integer.parseInt(line.substring(0, index)));
+        }
+
+        double[] weights = new double[maxId];
+        int i = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.length() == 0)
+                continue;
+            if (i == maxId)
+                throw new IOException("More weights than maxid " + maxId);
+            weights[i++] = Double.parseDouble(line);
+        }
+        if (i != maxId)
+            throw new IOException("Expected " + maxId + " weights but found " + i);
+
+        return new CrfPlusPlusModel(labels, unigramTemplates, bigramTemplates, featureIds, weights, costFactor, columnCount);
+    }
+
+    private static List<String> readBlock(BufferedReader reader) throws IOException {
+        List<String> lines = new ArrayList<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.length() == 0) {
+                if (lines.isEmpty())
+                    continue;
+                break;
+            }
+            lines.add(line);
+        }
+        return lines;
+    }
+
+    /**
+     * Finds the best label sequence for a sentence.
+     *
+     * @param rows single word feature columns for each word of the sentence. Label column should not be included.
+     * @return labels for each row.
+     */
+    public List<String> findLabels(List<List<String>> rows) {
+        int[] best = findBestLabelIndexes(rows);
+        List<String> result = new ArrayList<>(best.length);
+        for (int index : best) {
+            result.add(labels[index]);
+        }
+        return result;
+    }
+
+    int[] findBestLabelIndexes(List<List<String>> rows) {
+        final int size = rows.size();
+        final int labelCount = labels.length;
+        if (size == 0)
+            return new int[0];
+        for (List<String> row : rows) {
+            if (row.size() < columnCount)
+                throw new IllegalArgumentException("Expected at least " + columnCount + " columns but got " + row);
+        }
+
+        double[][] bestCosts = new double[size][labelCount];
+        int[][] backPointers = new int[size][labelCount];
+        double[] nodeCosts = new double[labelCount];
+        double[] pathCosts = new double[labelCount * labelCount];
+
+        for (int pos = 0; pos < size; pos++) {
+            // node costs from unigram features.
+            Arrays.fill(nodeCosts, 0);
+            for (Template template : unigramTemplates) {
+                Integer id = featureIds.get(template.apply(rows, pos));
+                if (id == null)
+                    continue;
+                for (int y = 0; y < labelCount; y++) {
+                    nodeCosts[y] += weights[id + y];
+                }
+            }
+            for (int y = 0; y < labelCount; y++) {
+                nodeCosts[y] *= costFactor;
+            }
+            if (pos == 0) {
+                System.arraycopy(nodeCosts, 0, bestCosts[0], 0, labelCount);
+                continue;
+            }
+            // path costs from bigram features.
+            Arrays.fill(pathCosts, 0);
+            for (Template template : bigramTemplates) {
+                Integer id = featureIds.get(template.apply(rows, pos));
+                if (id == null)
+                    continue;
+                for (int k = 0; k < pathCosts.length; k++) {
+                    pathCosts[k] += weights[id + k];
+                }
+            }
+            for (int y = 0; y < labelCount; y++) {
+                double bestCost = -1e37;
+                int bestPrevious = 0;
+                for (int previous = 0; previous < labelCount; previous++) {
+                    double cost = bestCosts[pos - 1][previous] + costFactor * pathCosts[previous * labelCount + y] + nodeCosts[y];
+                    // strict comparison keeps the first best on ties.
+                    if (cost > bestCost) {
+                        bestCost = cost;
+                        bestPrevious = previous;
+                    }
+                }
+                bestCosts[pos][y] = bestCost;
+                backPointers[pos][y] = bestPrevious;
+            }
+        }
+
+        int[] result = new int[size];
+        double bestCost = -1e37;
+        for (int y = 0; y < labelCount; y++) {
+            if (bestCost < bestCosts[size - 1][y]) {
+                bestCost = bestCosts[size - 1][y];
+                result[size - 1] = y;
+            }
+        }
+        for (int pos = size - 1; pos > 0; pos--) {
+            result[pos - 1] = backPointers[pos][result[pos]];
+        }
+        return result;
+    }
+
+    public String[] getLabels() {
+        return labels.clone();
+    }
+
+    /**
+     * A CRF++ template line such as "U05:%x[-1,0]/%x[0,0]". Literal parts are kept as they are and %x[row,column]
+     * macros are replaced with the feature of the word in relative row position.
+     */
+    static class Template {
+        static final Pattern MACRO = Pattern.compile("%x\\[\\s*(-?\\d+)\\s*,\\s*(\\d+)\\s*\\]");
+
+        final String[] literals;
+        final int[] rows;
+        final int[] columns;
+
+        Template(String line) {
+            List<String> literalList = new ArrayList<>();
+            List<Integer> rowList = new ArrayList<>();
+            List<Integer> columnList = new ArrayList<>();
+            Matcher matcher = MACRO.matcher(line);
+            int last = 0;
+            while (matcher.find()) {
+                literalList.add(line.substring(last, matcher.start()));
+                rowList.add(Integer.parseInt(matcher.group(1)));
+                columnList.add(Integer.parseInt(matcher.group(2)));
+                last = matcher.end();
+            }
+            literalList.add(line.substring(last));
+            literals = literalList.toArray(new String[literalList.size()]);
+            rows = new int[rowList.size()];
+            columns = new int[columnList.size()];
+            for (int i = 0; i < rows.length; i++) {
+                rows[i] = rowList.get(i);
+                columns[i] = columnList.get(i);
+            }
+        }
+
+        String apply(List<List<String>> sentence, int position) {
+            StringBuilder sb = new StringBuilder(literals[0]);
+            for (int i = 0; i < rows.length; i++) {
+                int index = position + rows[i];
+                if (index < 0)
+                    sb.append("_B-").append(-index);
+                else if (index >= sentence.size())
+                    sb.append("_B+").append(index - sentence.size() + 1);
+                else
+                    sb.append(sentence.get(index).get(columns[i]));
+                sb.append(literals[i + 1]);
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package trnlp.apps;
+
+import cc.mallet.util.MalletLogger;
+import com.google.common.base.Joiner;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * A pool of long lived crf_test processes. Each process loads the model once and labels sentences that are
+ * written to its standard input. Sentences are sent as feature lines followed by an empty line, and crf_test
+ * answers with the same lines with labels appended, again followed by an empty line. Therefore no temporary
+ * files or process creation is necessary per sentence.
+ * <p/>
+ * Workers that die, produce broken output or do not answer in time are destroyed and restarted transparently.
+ * crf_test buffers its output when it is not written to a terminal, so if "stdbuf" is available processes are
+ * started with line buffered output.
+ */
+public class CrfPlusPlusProcessPool implements Closeable {
+    private static Logger logger =
+            MalletLogger.getLogger(CrfPlusPlusProcessPool.class.getName());
+
+    static final Charset UTF8 = Charset.forName("utf-8");
+
+    public static final long DEFAULT_TIMEOUT_MILLIS = 30000;
+
+    // marks the end of process output in the line queue of a worker. Compared by identity.
+    static final String END_OF_OUTPUT = new String();
+
+    final List<String> command;
+    final BlockingQueue<Worker> idleWorkers;
+    final int poolSize;
+    final long timeoutMillis;
+    volatile boolean closed = false;
+
+    /**
+     * Creates a pool with given size that runs "crf_test" found in the path.
+     *
+     * @param modelFile CRF++ model file.
+     * @param poolSize  amount of crf_test processes.
+     * @throws IOException if a process cannot be started.
+     */
+    public CrfPlusPlusProcessPool(File modelFile, int poolSize) throws IOException {
+        this("crf_test", modelFile, poolSize);
+    }
+
+    /**
+     * Creates a pool with given size.
+     *
+     * @param executable crf_test executable path.
+     * @param modelFile  CRF++ model file.
+     * @param poolSize   amount of crf_test processes.
+     * @throws IOException if a process cannot be started.
+     */
+    public CrfPlusPlusProcessPool(String executable, File modelFile, int poolSize) throws IOException {
+        this(executable, modelFile, poolSize, DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Creates a pool with given size.
+     *
+     * @param executable    crf_test executable path.
+     * @param modelFile     CRF++ model file.
+     * @param poolSize      amount of crf_test processes.
+     * @param timeoutMillis maximum time to wait for the output of a sentence. Worker is restarted if it takes longer.
+     * @throws IOException if a process cannot be started.
+     */
+    public CrfPlusPlusProcessPool(String executable, File modelFile, int poolSize, long timeoutMillis)
+            throws IOException {
+        if (poolSize < 1)
+            throw new IllegalArgumentException("Pool size must be positive. But it is " + poolSize);
+        if (timeoutMillis < 1)
+            throw new IllegalArgumentException("Timeout must be positive. But it is " + timeoutMillis);
+        this.command = new ArrayList<>();
+        if (isOnPath("stdbuf")) {
+            command.add("stdbuf");
+            command.add("-oL");
+        }
+        command.add(executable);
+        command.add("-m");
+        command.add(modelFile.getAbsolutePath());
+        this.poolSize = poolSize;
+        this.timeoutMillis = timeoutMillis;
+        this.idleWorkers = new ArrayBlockingQueue<>(poolSize);
+        logger.info(Joiner.on(" ").join(command) + " x " + poolSize);
+        for (int i = 0; i < poolSize; i++) {
+            idleWorkers.add(new Worker());
+        }
+    }
+
+    /**
+     * Labels a single sentence. Blocks until a worker becomes available. If the worker fails, it is restarted and
+     * the sentence is tried once more with the new worker. If labeling does not complete for any reason, including
+     * interruption, the worker is destroyed.
+     *
+     * @param featureLines tab separated single word feature lines of a sentence. Lines must not be empty.
+     * @return output lines of crf_test for the sentence. Each line contains the features and the label.
+     * @throws IOException          if labeling fails or times out after restart.
+     * @throws InterruptedException if interrupted while waiting for a worker or its output.
+     */
+    public List<String> findLabels(List<String> featureLines) throws IOException, InterruptedException {
+        if (closed)
+            throw new IllegalStateException("Process pool is closed.");
+        if (featureLines.isEmpty())
+            return new ArrayList<>();
+        Worker worker = idleWorkers.take();
+        boolean labeled = false;
+        try {
+            if (!worker.isAlive())
+                worker = restart(worker);
+            List<String> result;
+            try {
+                result = worker.label(featureLines);
+            } catch (IOException e) {
+                logger.warning("crf_test worker failed with " + e.getMessage() + ". Restarting.");
+                worker = restart(worker);
+                result = worker.label(featureLines);
+            }
+            labeled = true;
+            return result;
+        } finally {
+            // unread output of an abandoned sentence must not be read for the next one, so the worker is
+            // destroyed and restarted by its next user.
+            if (!labeled)
+                worker.destroy();
+            release(worker);
+        }
+    }
+
+    /**
+     * Checks idle workers and restarts the ones whose process has terminated.
+     *
+     * @return amount of restarted workers.
+     * @throws IOException if a process cannot be started.
+     */
+    public int checkHealth() throws IOException {
+        int restarted = 0;
+        List<Worker> drained = new ArrayList<>();
+        idleWorkers.drainTo(drained);
+        try {
+            for (int i = 0; i < drained.size(); i++) {
+                Worker worker = drained.get(i);
+                if (!worker.isAlive()) {
+                    drained.set(i, restart(worker));
+                    restarted++;
+                }
+            }
+        } finally {
+            for (Worker worker : drained) {
+                release(worker);
+            }
+        }
+        return restarted;
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    static boolean isOnPath(String executable) {
+        String path = System.getenv("PATH");
+        if (path == null)
+            return false;
+        for (String dir : path.split(File.pathSeparator)) {
+            if (new File(dir, executable).canExecute())
+                return true;
+        }
+        return false;
+    }
+
+    private Worker restart(Worker worker) throws IOException {
+        worker.destroy();
+        return new Worker();
+    }
+
+    private void release(Worker worker) {
+        if (closed)
+            worker.destroy();
+        else
+            idleWorkers.add(worker);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        List<Worker> drained = new ArrayList<>();
+        idleWorkers.drainTo(drained);
+        for (Worker worker : drained) {
+            worker.destroy();
+        }
+    }
+
+    class Worker {
+        Process process;
+        BufferedWriter writer;
+        volatile boolean destroyed = false;
+        // output lines are read by a separate thread, so waiting for them can time out.
+        BlockingQueue<String> lines = new LinkedBlockingQueue<>();
+
+        Worker() throws IOException {
+            process = new ProcessBuilder(command).start();
+            writer = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), UTF8));
+            Thread outputReader = new OutputReader(process.getInputStream(), lines);
+            outputReader.setDaemon(true);
+            outputReader.start();
+            Thread errorDrain = new ErrorDrain(process.getErrorStream());
+            errorDrain.setDaemon(true);
+            errorDrain.start();
+        }
+
+        String readLine(long deadline) throws IOException, InterruptedException {
+            long remaining = deadline - System.currentTimeMillis();
+            String s = remaining > 0 ? lines.poll(remaining, TimeUnit.MILLISECONDS) : lines.poll();
+            if (s == null)
+                throw new IOException("No output in " + timeoutMillis + " ms");
+            if (s == END_OF_OUTPUT) {
+                // keeps the end mark for following reads.
+                lines.add(END_OF_OUTPUT);
+                return null;
+            }
+            return s;
+        }
+
+        List<String> label(List<String> featureLines) throws IOException, InterruptedException {
+            for (String featureLine : featureLines) {
+                writer.write(featureLine);
+                writer.write('\n');
+            }
+            writer.write('\n');
+            writer.flush();
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            List<String> result = new ArrayList<>(featureLines.size());
+            String s;
+            while ((s = readLine(deadline)) != null) {
+                String line = s.trim();
+                if (line.length() == 0) {
+                    if (result.isEmpty())
+                        continue;
+                    break;
+                }
+                result.add(line);
+            }
+            if (result.size() != featureLines.size()) {
+                throw new IOException("Expected " + featureLines.size() + " labeled lines but got " + result.size());
+            }
+            return result;
+        }
+
+        boolean isAlive() {
+            if (destroyed)
+                return false;
+            try {
+                process.exitValue();
+                return false;
+            } catch (IllegalThreadStateException e) {
+                return true;
+            }
+        }
+
+        void destroy() {
+            destroyed = true;
+            try {
+                writer.close();
+            } catch (IOException e) {
+                // process may already be dead.
+            }
+            process.destroy();
+        }
+    }
+
+    /**
+     * Moves output lines of a process to a queue. End of the output is marked with {@link #END_OF_OUTPUT}.
+     */
+    static class OutputReader extends Thread {
+        InputStream is;
+        BlockingQueue<String> lines;
+
+        OutputReader(InputStream is, BlockingQueue<String> lines) {
+            this.is = is;
+            this.lines = lines;
+        }
+
+        @Override
+        public void run() {
+            try (BufferedReader br = new BufferedReader(new InputStreamReader(is, UTF8))) {
+                String s;
+                while ((s = br.readLine()) != null) {
+                    lines.add(s);
+                }
+            } catch (IOException e) {
+                // stream is closed when process is destroyed.
+            } finally {
+                lines.add(END_OF_OUTPUT);
+            }
+        }
+    }
+
+    /**
+     * Consumes error output of a process so that it does not block when its buffer is full.
+     */
+    static class ErrorDrain extends Thread {
+        InputStream is;
+
+        ErrorDrain(InputStream is) {
+            this.is = is;
+        }
+
+        @Override
+        public void run() {
+            try (BufferedReader br = new BufferedReader(new InputStreamReader(is, UTF8))) {
+                String s;
+                while ((s = br.readLine()) != null) {
+                    logger.warning(s);
+                }
+            } catch (IOException e) {
+                // stream is closed when process is destroyed.
+            }
+        }
+    }
+}
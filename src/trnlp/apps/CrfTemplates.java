@@ -1,15 +1,20 @@
 package trnlp.apps;
 
+import cc.mallet.types.Alphabet;
 import com.google.common.base.Joiner;
 import com.google.common.base.Splitter;
 import com.google.common.collect.Lists;
+import org.jcaki.IterableLineReader;
 import org.jcaki.SimpleTextReader;
 import org.jcaki.SimpleTextWriter;
 import org.jcaki.Strings;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.*;
+import java.util.concurrent.*;
 
 public class CrfTemplates {
 
@@ -67,32 +72,67 @@ public class CrfTemplates {
         return new CrfTemplates(result, compoundFeatureDelimiter);
     }
 
+    /**
+     * Compiles templates against the feature alphabet of a trained model.
+     *
+     * @param alphabet feature alphabet of the model.
+     * @return compiled templates.
+     */
+    public CompiledTemplates compile(Alphabet alphabet) {
+        return CompiledTemplates.compile(this, alphabet);
+    }
+
     // This
     public List<List<SingleWordFeature>> getSingleFeatures(File singleWordFeatureFile, String featureDelimiter) throws IOException {
-        List<String> all = new SimpleTextReader(singleWordFeatureFile, "utf-8").asStringList();
         List<List<SingleWordFeature>> result = new ArrayList<>();
+        try (SingleFeatureReader reader = new SingleFeatureReader(singleWordFeatureFile, featureDelimiter)) {
+            List<SingleWordFeature> sentence;
+            while ((sentence = reader.next()) != null) {
+                result.add(sentence);
+            }
+        }
+        return result;
+    }
 
-        List<SingleWordFeature> sentenceLines = new ArrayList<>();
+    /**
+     * Reads single word features of a file one sentence at a time. Sentences are separated with empty lines.
+     */
+    public static class SingleFeatureReader implements Closeable {
+        final IterableLineReader lineReader;
+        final Iterator<String> lines;
+        final Splitter splitter;
 
-        for (String s : all) {
-            if (s.trim().length() == 0) {
-                if (sentenceLines.size() > 0) {
-                    result.add(sentenceLines);
-                    sentenceLines = new ArrayList<>();
+        public SingleFeatureReader(File singleWordFeatureFile, String featureDelimiter) throws IOException {
+            this.lineReader = new SimpleTextReader(singleWordFeatureFile, "utf-8").getIterableReader();
+            this.lines = lineReader.iterator();
+            this.splitter = Splitter.on(featureDelimiter);
+        }
+
+        /**
+         * @return single word features of next sentence, or null if there is no more sentence.
+         */
+        public List<SingleWordFeature> next() {
+            List<SingleWordFeature> sentenceLines = new ArrayList<>();
+            while (lines.hasNext()) {
+                String s = lines.next();
+                if (s.trim().length() == 0) {
+                    if (sentenceLines.size() > 0)
+                        return sentenceLines;
+                    continue;
                 }
-                continue;
-            }
-            List<String> tokens = Lists.newArrayList(Splitter.on(featureDelimiter).split(s));
-            if (tokens.size() < 3) {
-                throw new RuntimeException("Error in line:" + s + ". At least 3 tokens expected.");
+                List<String> tokens = Lists.newArrayList(splitter.split(s));
+                if (tokens.size() < 3) {
+                    throw new RuntimeException("Error in line:" + s + ". At least 3 tokens expected.");
+                }
+                sentenceLines.add(new SingleWordFeature(tokens));
             }
-            sentenceLines.add(new SingleWordFeature(tokens));
-        }
-        if (sentenceLines.size() > 0) {
-            result.add(sentenceLines);
+            return sentenceLines.size() > 0 ? sentenceLines : null;
         }
 
-        return result;
+        @Override
+        public void close() throws IOException {
+            lineReader.close();
+        }
     }
 
     public static class SingleWordFeature {
@@ -118,6 +158,13 @@ public class CrfTemplates {
         }
     }
 
+    /**
+     * Generates compound feature strings of a sentence. Decoding uses {@link CompiledTemplates} instead, this is
+     * kept for debugging and exporting features.
+     *
+     * @param singleFeatures single word features of a sentence.
+     * @return compound features of each word, with a placeholder label at the end.
+     */
     public List<List<String>> getFeatureLinesForTest(List<List<String>> singleFeatures) {
         List<List<String>> result = new ArrayList<>();
         int k = 0;
@@ -144,48 +191,153 @@ public class CrfTemplates {
 
     List<SingleWordFeature> getFullFeatures(List<SingleWordFeature> sentenceSingleFeatures) {
         List<SingleWordFeature> result = new ArrayList<>();
-        int k = 0;
-        for (SingleWordFeature sentenceSingleFeature : sentenceSingleFeatures) {
-            List<String> features = new ArrayList<>();
+        StringBuilder sb = new StringBuilder();
+        for (int k = 0; k < sentenceSingleFeatures.size(); k++) {
+            List<String> features = new ArrayList<>(templateLists.size() + 1);
             for (List<TemplateItem> templateList : templateLists) {
-                List<String> feature = new ArrayList<>();
-                for (TemplateItem templateItem : templateList) {
-                    int pos = templateItem.position + k;
-                    if (pos < 0 || pos >= sentenceSingleFeatures.size()) {
-                        feature.add("_");
-                        continue;
-                    }
-                    feature.add(sentenceSingleFeatures.get(pos).features.get(templateItem.featureIndex));
-                }
-                features.add(Joiner.on(compoundFeatureDelimiter).join(feature));
+                features.add(compoundFeature(sentenceSingleFeatures, k, templateList, sb));
             }
-            k++;
-            features.add(sentenceSingleFeature.label);
+            features.add(sentenceSingleFeatures.get(k).label);
             result.add(new SingleWordFeature(features));
         }
         return result;
     }
 
+    /**
+     * Expands single word features of a sentence to the rows that {@link CrfTrainer.SimpleTaggerSentence2FeatureVectorSequence}
+     * accepts as input. Rows contain the same compound features with the lines of a full feature file, so a sentence
+     * can be piped without writing and parsing the file.
+     *
+     * @param sentenceSingleFeatures single word features of a sentence.
+     * @return compound features of each word, with the label at the end.
+     */
+    public String[][] getFullFeatureTokens(List<SingleWordFeature> sentenceSingleFeatures) {
+        String[][] result = new String[sentenceSingleFeatures.size()][];
+        StringBuilder sb = new StringBuilder();
+        for (int k = 0; k < result.length; k++) {
+            String[] row = new String[templateLists.size() + 1];
+            for (int t = 0; t < templateLists.size(); t++) {
+                row[t] = compoundFeature(sentenceSingleFeatures, k, templateLists.get(t), sb);
+            }
+            row[row.length - 1] = sentenceSingleFeatures.get(k).label;
+            result[k] = row;
+        }
+        return result;
+    }
+
+    private String compoundFeature(List<SingleWordFeature> sentenceSingleFeatures, int k,
+                                   List<TemplateItem> templateList, StringBuilder sb) {
+        sb.setLength(0);
+        for (int i = 0; i < templateList.size(); i++) {
+            if (i > 0)
+                sb.append(compoundFeatureDelimiter);
+            TemplateItem templateItem = templateList.get(i);
+            int pos = templateItem.position + k;
+            if (pos < 0 || pos >= sentenceSingleFeatures.size())
+                sb.append('_');
+            else
+                sb.append(sentenceSingleFeatures.get(pos).features.get(templateItem.featureIndex));
+        }
+        return sb.toString();
+    }
+
     public void generateFullFeatures(File inputFile, File outputFile, String featureDelimiter) throws IOException {
-        SimpleTextWriter writer = SimpleTextWriter.keepOpenUTF8Writer(outputFile);
-        List<List<SingleWordFeature>> allSingleFeatures = getSingleFeatures(inputFile, featureDelimiter);
-        int i = 0;
-        for (List<SingleWordFeature> singleFeatures : allSingleFeatures) {
-            List<SingleWordFeature> fullFeature = new ArrayList<>();
+        generateFullFeatures(inputFile, outputFile, featureDelimiter, 1);
+    }
+
+    /**
+     * Generates full feature file from single word feature file. Input is processed as a stream, only a limited
+     * amount of sentences are kept in memory. If more than one thread is used, sentences are expanded in parallel
+     * and written in input order, so output is always the same.
+     *
+     * @param inputFile        single word feature file.
+     * @param outputFile       full feature file.
+     * @param featureDelimiter delimiter of features in a line.
+     * @param threadCount      amount of threads for expanding sentences.
+     * @throws IOException if files cannot be read or written.
+     */
+    public void generateFullFeatures(File inputFile, File outputFile, String featureDelimiter, int threadCount)
+            throws IOException {
+        if (threadCount < 1)
+            throw new IllegalArgumentException("Thread count must be positive. But it is " + threadCount);
+        ExecutorService executor = threadCount > 1 ? Executors.newFixedThreadPool(threadCount) : null;
+        Deque<Future<List<SingleWordFeature>>> pending = new ArrayDeque<>();
+        int window = threadCount * 64;
+        try (SingleFeatureReader reader = new SingleFeatureReader(inputFile, featureDelimiter);
+             SimpleTextWriter writer = SimpleTextWriter.keepOpenUTF8Writer(outputFile)) {
+            FullFeatureWriter fullFeatureWriter = new FullFeatureWriter(writer, featureDelimiter);
+            List<SingleWordFeature> singleFeatures;
+            while ((singleFeatures = reader.next()) != null) {
+                if (executor == null) {
+                    fullFeatureWriter.write(expand(singleFeatures));
+                    continue;
+                }
+                pending.add(executor.submit(new ExpandTask(singleFeatures)));
+                if (pending.size() >= window)
+                    fullFeatureWriter.write(pending.poll());
+            }
+            while (!pending.isEmpty()) {
+                fullFeatureWriter.write(pending.poll());
+            }
+        } finally {
+            if (executor != null)
+                executor.shutdownNow();
+        }
+    }
+
+    private List<SingleWordFeature> expand(List<SingleWordFeature> singleFeatures) {
+        try {
+            return getFullFeatures(singleFeatures);
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.out.println("Cannot generate full features for : " + singleFeatures);
+            return new ArrayList<>();
+        }
+    }
+
+    class ExpandTask implements Callable<List<SingleWordFeature>> {
+        final List<SingleWordFeature> singleFeatures;
+
+        ExpandTask(List<SingleWordFeature> singleFeatures) {
+            this.singleFeatures = singleFeatures;
+        }
+
+        @Override
+        public List<SingleWordFeature> call() {
+            return expand(singleFeatures);
+        }
+    }
+
+    // Writes sentences separated with an empty line.
+    static class FullFeatureWriter {
+        final SimpleTextWriter writer;
+        final String featureDelimiter;
+        boolean first = true;
+
+        FullFeatureWriter(SimpleTextWriter writer, String featureDelimiter) {
+            this.writer = writer;
+            this.featureDelimiter = featureDelimiter;
+        }
+
+        void write(Future<List<SingleWordFeature>> future) throws IOException {
             try {
-                fullFeature = getFullFeatures(singleFeatures);
-            } catch (Exception e) {
-                e.printStackTrace();
-                System.out.println("Cannot generate full features for : " + singleFeatures);
+                write(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while generating full features.");
+            } catch (ExecutionException e) {
+                throw new IOException(e.getCause());
             }
+        }
+
+        void write(List<SingleWordFeature> fullFeature) throws IOException {
+            if (!first)
+                writer.writeLine();
+            first = false;
             for (SingleWordFeature singleWordFeature : fullFeature) {
                 writer.writeLine(singleWordFeature.asFeatureLine(featureDelimiter));
             }
-            if (i < allSingleFeatures.size() - 1)
-                writer.writeLine();
-            i++;
         }
-        writer.close();
     }
 
 
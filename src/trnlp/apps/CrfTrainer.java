@@ -59,6 +59,8 @@ public class CrfTrainer {
      * this row. All other tokens in the row, or all tokens in the row if
      * not target processing, are the names of features that are on for
      * the sequence element described by the row.
+     * <p/>
+     * If a {@link FeatureHashing} is given, feature names are hashed to buckets and the data alphabet does not grow.
      */
     public static class SimpleTaggerSentence2FeatureVectorSequence extends Pipe {
         // gdruck
@@ -67,6 +69,9 @@ public class CrfTrainer {
         // other changes should not break serialization.
         private static final long serialVersionUID = -2059308802200728625L;
 
+        FeatureHashing hashing;
+        transient FeatureHashing.CollisionStats collisions;
+
         /**
          * Creates a new
          * <code>SimpleTaggerSentence2FeatureVectorSequence</code> instance.
@@ -75,6 +80,25 @@ public class CrfTrainer {
             super(new Alphabet(), new LabelAlphabet());
         }
 
+        /**
+         * Creates a pipe that hashes feature names.
+         *
+         * @param hashing feature hashing.
+         */
+        public SimpleTaggerSentence2FeatureVectorSequence(FeatureHashing hashing) {
+            super(hashing.newAlphabet(), new LabelAlphabet());
+            this.hashing = hashing;
+        }
+
+        /**
+         * @return collision statistics of the features piped so far, or null if features are not hashed.
+         */
+        public synchronized FeatureHashing.CollisionStats getCollisionStats() {
+            if (hashing != null && collisions == null)
+                collisions = new FeatureHashing.CollisionStats(hashing);
+            return collisions;
+        }
+
         /**
          * Parses a string representing a sequence of rows of tokens into an
          * array of arrays of tokens.
@@ -116,8 +140,15 @@ public class CrfTrainer {
                     target.add(tokens[l][nFeatures]);
                 } else nFeatures = tokens[l].length;
                 ArrayList<Integer> featureIndices = new ArrayList<Integer>();
+                FeatureHashing.CollisionStats collisions = getCollisionStats();
                 for (int f = 0; f < nFeatures; f++) {
-                    int featureIndex = features.lookupIndex(tokens[l][f]);
+                    int featureIndex;
+                    if (hashing != null) {
+                        long hash = FeatureHashing.hash(tokens[l][f]);
+                        collisions.add(hash);
+                        featureIndex = hashing.bucket(hash);
+                    } else
+                        featureIndex = features.lookupIndex(tokens[l][f]);
                     // gdruck
                     // If the data alphabet's growth is stopped, featureIndex
                     // will be -1.  Ignore these features.
@@ -222,6 +253,27 @@ public class CrfTrainer {
             CrfTrainer.class, "threads", "INTEGER", true, 1,
             "Number of threads to use for CRF training.", null);
 
+    private static final CommandOption.Integer hashBitsOption = new CommandOption.Integer(
+            CrfTrainer.class, "hash-bits", "INTEGER", true, 0,
+            "Hash features to 2^hash-bits buckets instead of keeping a feature dictionary. 0 disables hashing.", null);
+
+    private static final CommandOption.Integer pipeThreadsOption = new CommandOption.Integer(
+            CrfTrainer.class, "pipe-threads", "INTEGER", true, 1,
+            "Number of threads to use for converting input data to instances.", null);
+
+    private static final CommandOption.String trainerOption = new CommandOption.String(
+            CrfTrainer.class, "trainer", "lbfgs|sgd|perceptron", true, "lbfgs",
+            "Batch label likelihood with L-BFGS, or an online trainer: stochastic gradient or averaged perceptron. " +
+                    "For online trainers, iterations are passes over the training data.", null);
+
+    private static final CommandOption.Integer batchSizeOption = new CommandOption.Integer(
+            CrfTrainer.class, "batch-size", "INTEGER", true, 1,
+            "Number of instances in a mini batch of online trainers.", null);
+
+    private static final CommandOption.Double learningRateOption = new CommandOption.Double(
+            CrfTrainer.class, "learning-rate", "DECIMAL", true, 0.1,
+            "Initial learning rate of the stochastic gradient trainer.", null);
+
     private static final CommandOption.List commandOptions =
             new CommandOption.List(
                     "Training, testing and running a generic tagger.",
@@ -245,9 +297,37 @@ public class CrfTrainer {
                             cacheSizeOption,
                             includeInputOption,
                             featureInductionOption,
-                            numThreads
+                            numThreads,
+                            hashBitsOption,
+                            pipeThreadsOption,
+                            trainerOption,
+                            batchSizeOption,
+                            learningRateOption
                     });
 
+    private static void logHashCollisions(Pipe p) {
+        FeatureHashing.CollisionStats stats = null;
+        if (p instanceof SimpleTaggerSentence2FeatureVectorSequence)
+            stats = ((SimpleTaggerSentence2FeatureVectorSequence) p).getCollisionStats();
+        else if (p instanceof FeatureIndexPipe)
+            stats = ((FeatureIndexPipe) p).getCollisionStats();
+        if (stats != null)
+            logger.info("Feature hashing: " + stats);
+    }
+
+    /**
+     * Pipes blocks of lines separated with empty lines to the instance list. If more than one pipe thread is given
+     * and the pipe is a {@link FeatureIndexPipe}, blocks are piped in parallel with the same result.
+     */
+    private static void addThruPipe(InstanceList instances, Reader reader) throws IOException {
+        LineGroupIterator lines = new LineGroupIterator(reader, Pattern.compile("^\\s*$"), true);
+        if (pipeThreadsOption.value > 1 && instances.getPipe() instanceof FeatureIndexPipe) {
+            new ParallelInstancePiping((FeatureIndexPipe) instances.getPipe(), pipeThreadsOption.value,
+                    ParallelInstancePiping.DEFAULT_BLOCK_SIZE).addThruPipe(lines, instances);
+        } else
+            instances.addThruPipe(lines);
+    }
+
     /**
      * Create and train a CRF model from the given training data,
      * optionally testing it on the given test data.
@@ -273,8 +353,27 @@ public class CrfTrainer {
                             String defaultLabel,
                             String forbidden, String allowed,
                             boolean connected, int iterations, double var, CRF crf) {
+        return train(training, testing, eval, orders, defaultLabel, forbidden, allowed, connected, iterations, var,
+                crf, trainerOption.value, batchSizeOption.value, learningRateOption.value);
+    }
+
+    /**
+     * Same with {@link #train(InstanceList, InstanceList, TransducerEvaluator, int[], String, String, String, boolean, int, double, CRF)}
+     * with a selectable trainer.
+     *
+     * @param trainer      lbfgs, sgd or perceptron. For sgd and perceptron, iterations are passes over the data.
+     * @param batchSize    mini batch size of online trainers.
+     * @param learningRate initial learning rate of sgd.
+     */
+    public static CRF train(InstanceList training, InstanceList testing,
+                            TransducerEvaluator eval, int[] orders,
+                            String defaultLabel,
+                            String forbidden, String allowed,
+                            boolean connected, int iterations, double var, CRF crf,
+                            String trainer, int batchSize, double learningRate) {
         Pattern forbiddenPat = Pattern.compile(forbidden);
         Pattern allowedPat = Pattern.compile(allowed);
+        boolean newCrf = crf == null;
         if (crf == null) {
             crf = new CRF(training.getPipe(), (Pipe) null);
             crf.addFullyConnectedStatesForBiLabels();
@@ -290,6 +389,30 @@ public class CrfTrainer {
         if (testing != null)
             logger.info("Testing on " + testing.size() + " instances");
 
+        if (!trainer.equals("lbfgs")) {
+            CrfOnlineTrainer.Method method;
+            if (trainer.equals("sgd"))
+                method = CrfOnlineTrainer.Method.SGD;
+            else if (trainer.equals("perceptron"))
+                method = CrfOnlineTrainer.Method.PERCEPTRON;
+            else
+                throw new IllegalArgumentException("Unknown trainer: " + trainer);
+            if (featureInductionOption.value)
+                throw new IllegalArgumentException("Feature induction is not supported by online trainers.");
+            if (newCrf) {
+                if (weightsOption.value.equals("dense"))
+                    crf.setWeightsDimensionDensely();
+                else
+                    crf.setWeightsDimensionAsIn(training, false);
+            }
+            CrfOnlineTrainer crft = new CrfOnlineTrainer(crf, method, batchSize, learningRate, var,
+                    randomSeedOption.value);
+            if (eval != null)
+                crft.addEvaluator(eval);
+            crft.train(training, iterations);
+            return crf;
+        }
+
         assert (numThreads.value > 0);
         if (numThreads.value > 1) {
             CRFTrainerByThreadedLabelLikelihood crft = new CRFTrainerByThreadedLabelLikelihood(crf, numThreads.value);
@@ -439,6 +562,16 @@ public class CrfTrainer {
      *             <dd>Whether to include input features when printing decoding output. Default is <code>false</code>.</dd>
      *             <dt><code>--threads</code> <em>positive-integer</em></dt>
      *             <dd>Number of threads for CRF training. Default is 1.</dd>
+     *             <dt><code>--hash-bits</code> <em>integer</em></dt>
+     *             <dd>Hash features to 2^hash-bits buckets instead of a feature dictionary. Default is 0 (no hashing).</dd>
+     *             <dt><code>--pipe-threads</code> <em>positive-integer</em></dt>
+     *             <dd>Number of threads for converting input data to instances. Default is 1.</dd>
+     *             <dt><code>--trainer</code> <em>lbfgs|sgd|perceptron</em></dt>
+     *             <dd>Batch label likelihood with L-BFGS, stochastic gradient or averaged perceptron. Default is <code>lbfgs</code>.</dd>
+     *             <dt><code>--batch-size</code> <em>positive-integer</em></dt>
+     *             <dd>Mini batch size of online trainers. Default is 1.</dd>
+     *             <dt><code>--learning-rate</code> <em>positive-number</em></dt>
+     *             <dd>Initial learning rate of the stochastic gradient trainer. Default is 0.1.</dd>
      *             </dl>
      *             Remaining arguments:
      *             <ul>
@@ -481,7 +614,9 @@ public class CrfTrainer {
             s.close();
             p = crf.getInputPipe();
         } else {
-            p = new SimpleTaggerSentence2FeatureVectorSequence();
+            p = hashBitsOption.value > 0 ?
+                    new FeatureIndexPipe(new FeatureHashing(hashBitsOption.value)) :
+                    new FeatureIndexPipe(featureInductionOption.value);
             p.getTargetAlphabet().lookupIndex(defaultOption.value);
         }
 
@@ -489,15 +624,14 @@ public class CrfTrainer {
         if (trainOption.value) {
             p.setTargetProcessing(true);
             trainingData = new InstanceList(p);
-            trainingData.addThruPipe(
-                    new LineGroupIterator(trainingFile, Pattern.compile("^\\s*$"), true));
+            addThruPipe(trainingData, trainingFile);
             logger.info
                     ("Number of features in training data: " + p.getDataAlphabet().size());
+            logHashCollisions(p);
             if (testOption.value != null) {
                 if (testFile != null) {
                     testData = new InstanceList(p);
-                    testData.addThruPipe(
-                            new LineGroupIterator(testFile, Pattern.compile("^\\s*$"), true));
+                    addThruPipe(testData, testFile);
                 } else {
                     Random r = new Random(randomSeedOption.value);
                     InstanceList[] trainingLists =
@@ -510,15 +644,11 @@ public class CrfTrainer {
         } else if (testOption.value != null) {
             p.setTargetProcessing(true);
             testData = new InstanceList(p);
-            testData.addThruPipe(
-                    new LineGroupIterator(testFile,
-                            Pattern.compile("^\\s*$"), true));
+            addThruPipe(testData, testFile);
         } else {
             p.setTargetProcessing(false);
             testData = new InstanceList(p);
-            testData.addThruPipe(
-                    new LineGroupIterator(testFile,
-                            Pattern.compile("^\\s*$"), true));
+            addThruPipe(testData, testFile);
         }
         logger.info("Number of predicates: " + p.getDataAlphabet().size());
 
@@ -0,0 +1,300 @@
+package trnlp.apps;
+
+import cc.mallet.fst.CRF;
+
+import java.nio.CharBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Viterbi decoder for chunking CRF models that works directly on flat primitive arrays. Weights of the model are
+ * read from the feature major layout of {@link BinaryCrfModel}, so that scores of all weight sets for a word are
+ * accumulated by visiting only the features of that word. Weights of a loaded model are not copied, they are read
+ * from the memory mapped file. Labels are returned as byte codes, which are indexes of {@link #getLabelNames()}.
+ * <p/>
+ * Decoding follows Mallet's MaxLatticeDefault step by step, including summation order of the weights and strict
+ * comparison of path scores, so results are the same with {@link CRF#transduce}. Only exactly tied paths may be
+ * resolved differently. Note that Mallet does not simply take the end state with the highest score. It extracts
+ * the path with an A* search that orders end states by their scores with final weights, but ranks completed paths
+ * without them. Selection of the end state here reproduces that search.
+ * <p/>
+ * Decoder is immutable and can be shared. All working memory is kept in {@link Lattice} objects that grow to the
+ * longest sentence seen and are reused afterwards, so nothing is allocated per word.
+ */
+public class CrfViterbiDecoder {
+
+    final String[] labelNames;
+
+    final double[] initialWeights;
+    final double[] finalWeights;
+
+    final int[] transitionOffsets;
+    final int[] transitionDestinations;
+    final byte[] transitionLabels;
+    final int[] transitionWeightOffsets;
+    final int[] transitionWeights;
+
+    final double[] defaultWeights;
+
+    // weight set indexes and values of each feature. Only absolute reads are done, so buffers can be shared.
+    final int featureCount;
+    final IntBuffer featureOffsets;
+    final CharBuffer featureWeightSets;
+    final DoubleBuffer featureValues;
+
+    final ThreadLocal<Lattice> lattices = new ThreadLocal<Lattice>() {
+        @Override
+        protected Lattice initialValue() {
+            return newLattice();
+        }
+    };
+
+    CrfViterbiDecoder(BinaryCrfModel model) {
+        if (model.labelNames.length > Byte.MAX_VALUE)
+            throw new IllegalArgumentException("Too many labels for byte codes: " + model.labelNames.length);
+        this.labelNames = model.labelNames;
+        this.initialWeights = model.initialWeights;
+        this.finalWeights = model.finalWeights;
+        this.transitionOffsets = model.transitionOffsets;
+        this.transitionDestinations = model.transitionDestinations;
+        this.transitionLabels = new byte[model.transitionLabels.length];
+        for (int i = 0; i < transitionLabels.length; i++) {
+            transitionLabels[i] = (byte) model.transitionLabels[i];
+        }
+        this.transitionWeightOffsets = model.transitionWeightOffsets;
+        this.transitionWeights = model.transitionWeights;
+        this.defaultWeights = model.defaultWeights;
+        this.featureCount = model.featureCount;
+        this.featureOffsets = model.featureOffsets;
+        this.featureWeightSets = model.featureWeightSets;
+        this.featureValues = model.featureValues;
+    }
+
+    /**
+     * @param model binary CRF model.
+     * @return decoder for the model.
+     */
+    public static CrfViterbiDecoder fromModel(BinaryCrfModel model) {
+        return new CrfViterbiDecoder(model);
+    }
+
+    /**
+     * @param crf trained CRF.
+     * @return decoder for the CRF.
+     */
+    public static CrfViterbiDecoder fromCrf(CRF crf) {
+        return new CrfViterbiDecoder(BinaryCrfModel.fromCrf(crf));
+    }
+
+    /**
+     * @return a new lattice to be used with {@link #decode(int[][], Lattice, byte[])}. Lattices must not be shared
+     *         between threads.
+     */
+    public Lattice newLattice() {
+        return new Lattice(initialWeights.length, defaultWeights.length);
+    }
+
+    /**
+     * Finds the best label codes of a sentence using a lattice of the calling thread.
+     *
+     * @param featureIndexes feature alphabet indexes of each word. Such as from
+     *                       {@link CompiledTemplates#getFeatureIndexes(java.util.List)}
+     * @return label codes of each word.
+     * @throws IllegalStateException if the model allows no label sequence for the sentence.
+     */
+    public byte[] decode(int[][] featureIndexes) {
+        byte[] labels = new byte[featureIndexes.length];
+        if (decode(featureIndexes, lattices.get(), labels) < 0)
+            throw new IllegalStateException("No label sequence is possible for the sentence of "
+                    + featureIndexes.length + " words.");
+        return labels;
+    }
+
+    /**
+     * Finds the best label codes of a sentence.
+     *
+     * @param featureIndexes feature alphabet indexes of each word. Indexes may be unordered or repeated.
+     * @param lattice        working memory.
+     * @param labels         label codes are written to this array. It must be at least as long as the sentence.
+     * @return amount of labels written, or -1 if no path exists.
+     */
+    public int decode(int[][] featureIndexes, Lattice lattice, byte[] labels) {
+        final int length = featureIndexes.length;
+        if (length == 0)
+            return 0;
+        if (labels.length < length)
+            throw new IllegalArgumentException("Label array is shorter than the sentence: " + labels.length);
+        final int stateCount = initialWeights.length;
+        lattice.ensureCapacity(length);
+
+        double[] delta = lattice.delta;
+        double[] nextDelta = lattice.nextDelta;
+        final double[] weightScores = lattice.weightScores;
+        final double[] pathScores = lattice.pathScores;
+        final int[] backPointers = lattice.backPointers;
+        final byte[] nodeLabels = lattice.nodeLabels;
+
+        boolean reachable = false;
+        for (int s = 0; s < stateCount; s++) {
+            delta[s] = initialWeights[s];
+            reachable |= delta[s] > Double.NEGATIVE_INFINITY;
+        }
+        if (!reachable)
+            return -1;
+
+        for (int ip = 0; ip < length; ip++) {
+            scoreWeightSets(featureIndexes[ip], lattice);
+            Arrays.fill(nextDelta, Double.NEGATIVE_INFINITY);
+            final boolean last = ip == length - 1;
+            final int nodeBase = ip * stateCount;
+            for (int s = 0; s < stateCount; s++) {
+                final double sourceDelta = delta[s];
+                if (sourceDelta == Double.NEGATIVE_INFINITY)
+                    continue;
+                for (int t = transitionOffsets[s]; t < transitionOffsets[s + 1]; t++) {
+                    double transitionWeight = 0;
+                    for (int w = transitionWeightOffsets[t]; w < transitionWeightOffsets[t + 1]; w++) {
+                        int weightSet = transitionWeights[w];
+                        transitionWeight += weightScores[weightSet] + defaultWeights[weightSet];
+                    }
+                    if (transitionWeight == Double.NEGATIVE_INFINITY)
+                        continue;
+                    final int destination = transitionDestinations[t];
+                    // like Mallet, output of a node comes from the last transition that reaches it.
+                    nodeLabels[nodeBase + destination] = transitionLabels[t];
+                    double pathScore = sourceDelta + transitionWeight;
+                    double weight = last ? pathScore + finalWeights[destination] : pathScore;
+                    if (weight > nextDelta[destination]) {
+                        nextDelta[destination] = weight;
+                        pathScores[destination] = pathScore;
+                        backPointers[nodeBase + destination] = s;
+                    }
+                }
+            }
+            double[] tmp = delta;
+            delta = nextDelta;
+            nextDelta = tmp;
+        }
+
+        int best = selectEndState(delta, pathScores, lattice.expanded);
+        if (best < 0)
+            return -1;
+        for (int ip = length - 1; ip >= 0; ip--) {
+            labels[ip] = nodeLabels[ip * stateCount + best];
+            best = backPointers[ip * stateCount + best];
+        }
+        return length;
+    }
+
+    // End states are visited in decreasing order of their scores with final weights, like the A* search of
+    // Mallet expands them. Search stops when next end state can not beat the best path score without final weight.
+    private int selectEndState(double[] delta, double[] pathScores, boolean[] expanded) {
+        Arrays.fill(expanded, false);
+        int best = -1;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        while (true) {
+            int next = -1;
+            for (int s = 0; s < delta.length; s++) {
+                if (!expanded[s] && delta[s] > Double.NEGATIVE_INFINITY && (next < 0 || delta[s] > delta[next]))
+                    next = s;
+            }
+            if (next < 0 || (best >= 0 && !(delta[next] > bestScore)))
+                return best;
+            expanded[next] = true;
+            if (best < 0 || pathScores[next] > bestScore) {
+                best = next;
+                bestScore = pathScores[next];
+            }
+        }
+    }
+
+    // calculates dot products of all weight sets with the features of a word.
+    void scoreWeightSets(int[] features, Lattice lattice) {
+        final double[] weightScores = lattice.weightScores;
+        Arrays.fill(weightScores, 0);
+        // features are visited in increasing order without duplicates, same as a binary FeatureVector.
+        int count = features.length;
+        int[] sorted = lattice.ensureFeatureCapacity(count);
+        System.arraycopy(features, 0, sorted, 0, count);
+        Arrays.sort(sorted, 0, count);
+        int previous = -1;
+        for (int i = 0; i < count; i++) {
+            int f = sorted[i];
+            if (f == previous || f < 0 || f >= featureCount)
+                continue;
+            previous = f;
+            for (int l = featureOffsets.get(f), end = featureOffsets.get(f + 1); l < end; l++) {
+                weightScores[featureWeightSets.get(l)] += featureValues.get(l);
+            }
+        }
+    }
+
+    // sums weight scores of every transition, in the same order with decode.
+    void scoreTransitions(double[] weightScores, double[] transitionScores) {
+        for (int t = 0; t < transitionScores.length; t++) {
+            double transitionWeight = 0;
+            for (int w = transitionWeightOffsets[t]; w < transitionWeightOffsets[t + 1]; w++) {
+                int weightSet = transitionWeights[w];
+                transitionWeight += weightScores[weightSet] + defaultWeights[weightSet];
+            }
+            transitionScores[t] = transitionWeight;
+        }
+    }
+
+    /**
+     * @param code label code.
+     * @return label name.
+     */
+    public String getLabel(byte code) {
+        return labelNames[code];
+    }
+
+    /**
+     * @return label names. Label codes are the indexes of this array.
+     */
+    public String[] getLabelNames() {
+        return labelNames.clone();
+    }
+
+    /**
+     * Reusable working memory of the decoder. Arrays grow only when a longer sentence or a word with more
+     * features than before is decoded.
+     */
+    public static class Lattice {
+        final int stateCount;
+        double[] delta;
+        double[] nextDelta;
+        double[] weightScores;
+        double[] pathScores;
+        boolean[] expanded;
+        int[] features = new int[64];
+        int[] backPointers;
+        byte[] nodeLabels;
+        int capacity;
+
+        Lattice(int stateCount, int weightCount) {
+            this.stateCount = stateCount;
+            delta = new double[stateCount];
+            nextDelta = new double[stateCount];
+            weightScores = new double[weightCount];
+            pathScores = new double[stateCount];
+            expanded = new boolean[stateCount];
+            ensureCapacity(32);
+        }
+
+        void ensureCapacity(int length) {
+            if (length <= capacity)
+                return;
+            capacity = Math.max(length, capacity * 2);
+            backPointers = new int[capacity * stateCount];
+            nodeLabels = new byte[capacity * stateCount];
+        }
+
+        int[] ensureFeatureCapacity(int count) {
+            if (features.length < count)
+                features = new int[Math.max(count, features.length * 2)];
+            return features;
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package trnlp.apps;
+
+import cc.mallet.types.Alphabet;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Iterator;
+
+/**
+ * Maps feature strings to a fixed space of 2^bits buckets instead of a growing feature dictionary. Bucket of a
+ * feature is used directly as its alphabet index, so a hashed model carries no feature strings and the size of its
+ * weight vectors is known before training.
+ * <p/>
+ * Hash is a polynomial hash of the UTF-16 chars, followed by a 64 bit finalizer. Polynomial hashes can be combined,
+ * hash of a compound feature is calculated from the hashes of its parts without building the compound string. So
+ * {@link CompiledTemplates} finds the same buckets with the training pipe, which hashes the feature strings.
+ * <p/>
+ * Mallet CRFs need an input alphabet, so hashed models use a {@link HashedAlphabet}. It has no entries, buckets are
+ * generated when they are looked up.
+ */
+public class FeatureHashing implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // weights and collision stats of every bucket are kept in arrays, so 2^22 buckets are the practical limit.
+    public static final int MAX_BITS = 22;
+
+    static final long MULTIPLIER = 0x100000001b3L;
+
+    final int bits;
+    final int mask;
+
+    /**
+     * @param bits feature space has 2^bits buckets.
+     */
+    public FeatureHashing(int bits) {
+        if (bits < 1 || bits > MAX_BITS)
+            throw new IllegalArgumentException("Hash bits must be between 1 and " + MAX_BITS + ". But it is " + bits);
+        this.bits = bits;
+        this.mask = (1 << bits) - 1;
+    }
+
+    public int getBits() {
+        return bits;
+    }
+
+    public int getSize() {
+        return mask + 1;
+    }
+
+    /**
+     * @param s input.
+     * @return polynomial hash of the chars of the input.
+     */
+    public static long hash(CharSequence s) {
+        long h = 0;
+        for (int i = 0; i < s.length(); i++) {
+            h = h * MULTIPLIER + s.charAt(i);
+        }
+        return h;
+    }
+
+    /**
+     * @param length char count.
+     * @return factor that shifts a hash by the given amount of chars.
+     */
+    public static long shift(int length) {
+        long result = 1;
+        long base = MULTIPLIER;
+        for (int n = length; n > 0; n >>>= 1) {
+            if ((n & 1) != 0)
+                result *= base;
+            base *= base;
+        }
+        return result;
+    }
+
+    /**
+     * Hash of concatenation of a and b, where hash of b is bHash and its shift factor is bShift.
+     */
+    public static long combine(long aHash, long bHash, long bShift) {
+        return aHash * bShift + bHash;
+    }
+
+    /**
+     * @param hash polynomial hash of a feature.
+     * @return bucket of the feature.
+     */
+    public int bucket(long hash) {
+        return (int) mix(hash) & mask;
+    }
+
+    /**
+     * @param feature feature string.
+     * @return bucket of the feature.
+     */
+    public int bucket(CharSequence feature) {
+        return bucket(hash(feature));
+    }
+
+    // finalizer of MurmurHash3, so that lower bits depend on all chars.
+    static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * @return an alphabet of buckets 0 to 2^bits-1 as Integer objects, so alphabet index of a bucket is the bucket
+     *         itself. Alphabet does not store the buckets.
+     */
+    public Alphabet newAlphabet() {
+        return new HashedAlphabet(this);
+    }
+
+    /**
+     * @param alphabet feature alphabet of a model.
+     * @return hashing of the alphabet, or null if it is not a hashed alphabet. Alphabets of older models that store
+     *         all buckets as Integer objects are recognized too.
+     */
+    public static FeatureHashing fromAlphabet(Alphabet alphabet) {
+        if (alphabet instanceof HashedAlphabet)
+            return ((HashedAlphabet) alphabet).hashing;
+        int size = alphabet.size();
+        if (size < 2 || Integer.bitCount(size) != 1 || Integer.numberOfTrailingZeros(size) > MAX_BITS)
+            return null;
+        if (!Integer.valueOf(0).equals(alphabet.lookupObject(0)) ||
+                !Integer.valueOf(size - 1).equals(alphabet.lookupObject(size - 1)))
+            return null;
+        return new FeatureHashing(Integer.numberOfTrailingZeros(size));
+    }
+
+    /**
+     * Alphabet of a hashed feature space. Index of bucket i is i, and nothing is kept per bucket. Growth is always
+     * stopped.
+     */
+    public static class HashedAlphabet extends Alphabet {
+
+        private static final long serialVersionUID = 1L;
+
+        final FeatureHashing hashing;
+
+        HashedAlphabet(FeatureHashing hashing) {
+            super(0, Integer.class);
+            this.hashing = hashing;
+            stopGrowth();
+        }
+
+        public FeatureHashing getHashing() {
+            return hashing;
+        }
+
+        @Override
+        public int size() {
+            return hashing.getSize();
+        }
+
+        @Override
+        public Object lookupObject(int index) {
+            if (index < 0 || index > hashing.mask)
+                throw new IndexOutOfBoundsException("Bucket " + index + " is out of " + size() + " buckets.");
+            return index;
+        }
+
+        @Override
+        public Object[] lookupObjects(int[] indices) {
+            return lookupObjects(indices, new Object[indices.length]);
+        }
+
+        @Override
+        public Object[] lookupObjects(int[] indices, Object[] buf) {
+            for (int i = 0; i < indices.length; i++) {
+                buf[i] = lookupObject(indices[i]);
+            }
+            return buf;
+        }
+
+        @Override
+        public int lookupIndex(Object entry, boolean addIfNotPresent) {
+            return contains(entry) ? (Integer) entry : -1;
+        }
+
+        @Override
+        public int lookupIndex(Object entry) {
+            return lookupIndex(entry, false);
+        }
+
+        @Override
+        public int[] lookupIndices(Object[] objects, boolean addIfNotPresent) {
+            int[] indices = new int[objects.length];
+            for (int i = 0; i < objects.length; i++) {
+                indices[i] = lookupIndex(objects[i]);
+            }
+            return indices;
+        }
+
+        @Override
+        public boolean contains(Object entry) {
+            return entry instanceof Integer && (Integer) entry >= 0 && (Integer) entry <= hashing.mask;
+        }
+
+        @Override
+        public Object[] toArray() {
+            return toArray(new Object[size()]);
+        }
+
+        @Override
+        public Object[] toArray(Object[] in) {
+            for (int i = 0; i < size(); i++) {
+                in[i] = i;
+            }
+            return in;
+        }
+
+        @Override
+        public Iterator iterator() {
+            return new AbstractList<Integer>() {
+                @Override
+                public Integer get(int index) {
+                    return (Integer) lookupObject(index);
+                }
+
+                @Override
+                public int size() {
+                    return hashing.getSize();
+                }
+            }.iterator();
+        }
+
+        @Override
+        public void startGrowth() {
+            throw new UnsupportedOperationException("Hashed alphabets can not grow.");
+        }
+
+        @Override
+        public Object clone() {
+            return new HashedAlphabet(hashing);
+        }
+
+        @Override
+        public String toString() {
+            return "HashedAlphabet of " + size() + " buckets";
+        }
+    }
+
+    /**
+     * Counts feature occurrences that fall into a bucket already used by another feature. Features are told apart
+     * with their 64 bit hashes, so only one long is kept per bucket.
+     */
+    public static class CollisionStats {
+        final FeatureHashing hashing;
+        final long[] owners;
+        final boolean[] used;
+        long occurrences;
+        long collisions;
+        int usedBuckets;
+
+        public CollisionStats(FeatureHashing hashing) {
+            this.hashing = hashing;
+            this.owners = new long[hashing.getSize()];
+            this.used = new boolean[hashing.getSize()];
+        }
+
+        public synchronized void add(long hash) {
+            add(hash, 1);
+        }
+
+        /**
+         * Adds occurrences of a feature at once. Result is the same with adding them one by one.
+         */
+        public synchronized void add(long hash, int count) {
+            int bucket = hashing.bucket(hash);
+            occurrences += count;
+            if (!used[bucket]) {
+                used[bucket] = true;
+                owners[bucket] = hash;
+                usedBuckets++;
+            } else if (owners[bucket] != hash) {
+                collisions += count;
+            }
+        }
+
+        public synchronized long getOccurrenceCount() {
+            return occurrences;
+        }
+
+        public synchronized long getCollisionCount() {
+            return collisions;
+        }
+
+        public synchronized int getUsedBucketCount() {
+            return usedBuckets;
+        }
+
+        /**
+         * @return ratio of feature occurrences that share their bucket with the first feature seen in it.
+         */
+        public synchronized double getCollisionRate() {
+            return occurrences == 0 ? 0 : (double) collisions / occurrences;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format("buckets=%d used=%d (%.2f%%) occurrences=%d collisions=%d (%.4f%%)",
+                    hashing.getSize(), usedBuckets, 100.0 * usedBuckets / hashing.getSize(),
+                    occurrences, collisions, 100 * getCollisionRate());
+        }
+    }
+}
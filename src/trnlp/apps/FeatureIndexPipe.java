@@ -0,0 +1,141 @@
+package trnlp.apps;
+
+import cc.mallet.pipe.Pipe;
+import cc.mallet.types.*;
+import gnu.trove.TObjectIntHashMap;
+
+import java.util.Arrays;
+
+/**
+ * Converts sentences to feature vector sequences, same with {@link CrfTrainer.SimpleTaggerSentence2FeatureVectorSequence}
+ * and with the same input formats. Features get the same indexes in the same order, so models trained with either
+ * pipe are the same.
+ * <p/>
+ * Feature indexes of a word are collected in a reused int buffer instead of a list of boxed integers, and feature
+ * strings are looked up in a trove String to int map that is not synchronized. Alphabet is used only for features
+ * seen the first time.
+ * <p/>
+ * Like other Mallet pipes, an instance of this class must be used by one thread at a time. Large inputs can be
+ * piped with multiple threads using {@link ParallelInstancePiping}.
+ */
+public class FeatureIndexPipe extends Pipe {
+
+    private static final long serialVersionUID = 1L;
+
+    final FeatureHashing hashing;
+    final boolean augmentable;
+
+    // feature string -> alphabet index + 1, so that 0 means missing.
+    transient TObjectIntHashMap<String> indexes;
+    transient int[] buffer;
+    transient FeatureHashing.CollisionStats collisions;
+
+    /**
+     * @param augmentable if true, words get {@link AugmentableFeatureVector}s, as required by feature induction.
+     */
+    public FeatureIndexPipe(boolean augmentable) {
+        super(new Alphabet(), new LabelAlphabet());
+        this.hashing = null;
+        this.augmentable = augmentable;
+    }
+
+    public FeatureIndexPipe() {
+        this(false);
+    }
+
+    /**
+     * Creates a pipe that hashes feature names.
+     *
+     * @param hashing feature hashing.
+     */
+    public FeatureIndexPipe(FeatureHashing hashing) {
+        super(hashing.newAlphabet(), new LabelAlphabet());
+        this.hashing = hashing;
+        this.augmentable = false;
+    }
+
+    /**
+     * @return collision statistics of the features piped so far, or null if features are not hashed.
+     */
+    public synchronized FeatureHashing.CollisionStats getCollisionStats() {
+        if (hashing != null && collisions == null)
+            collisions = new FeatureHashing.CollisionStats(hashing);
+        return collisions;
+    }
+
+    public Instance pipe(Instance carrier) {
+        String[][] tokens = getTokens(carrier.getData());
+        Alphabet features = getDataAlphabet();
+        boolean targetProcessing = isTargetProcessing();
+        LabelSequence target = targetProcessing ?
+                new LabelSequence((LabelAlphabet) getTargetAlphabet(), tokens.length) : null;
+        FeatureHashing.CollisionStats collisions = getCollisionStats();
+        FeatureVector[] fvs = new FeatureVector[tokens.length];
+        for (int l = 0; l < tokens.length; l++) {
+            String[] row = tokens[l];
+            int nFeatures = row.length;
+            if (targetProcessing) {
+                if (row.length < 1)
+                    throw new IllegalStateException("Missing label at line " + l + " instance " + carrier.getName());
+                nFeatures = row.length - 1;
+                target.add(row[nFeatures]);
+            }
+            int[] buffer = buffer(nFeatures);
+            int size = 0;
+            for (int f = 0; f < nFeatures; f++) {
+                int featureIndex;
+                if (hashing != null) {
+                    long hash = FeatureHashing.hash(row[f]);
+                    collisions.add(hash);
+                    featureIndex = hashing.bucket(hash);
+                } else
+                    featureIndex = lookup(features, row[f]);
+                // features that are not in a stopped alphabet are ignored.
+                if (featureIndex >= 0)
+                    buffer[size++] = featureIndex;
+            }
+            int[] indexes = Arrays.copyOf(buffer, size);
+            fvs[l] = augmentable ? new AugmentableFeatureVector(features, indexes, null, size) :
+                    new FeatureVector(features, indexes);
+        }
+        carrier.setData(new FeatureVectorSequence(fvs));
+        carrier.setTarget(targetProcessing ? target : new LabelSequence(getTargetAlphabet()));
+        return carrier;
+    }
+
+    private int lookup(Alphabet features, String feature) {
+        if (indexes == null)
+            indexes = new TObjectIntHashMap<>(Math.max(1024, features.size() * 2));
+        int index = indexes.get(feature) - 1;
+        if (index >= 0)
+            return index;
+        index = features.lookupIndex(feature, !features.growthStopped());
+        if (index >= 0)
+            indexes.put(feature, index + 1);
+        return index;
+    }
+
+    private int[] buffer(int size) {
+        if (buffer == null || buffer.length < size)
+            buffer = new int[Math.max(size, 64)];
+        return buffer;
+    }
+
+    static String[][] getTokens(Object inputData) {
+        if (inputData instanceof String)
+            return parseSentence((String) inputData);
+        else if (inputData instanceof String[][])
+            return (String[][]) inputData;
+        else
+            throw new IllegalArgumentException("Not a String or String[][]; got " + inputData);
+    }
+
+    // String.split does not use regular expressions for a single char delimiter.
+    static String[][] parseSentence(String sentence) {
+        String[] lines = sentence.split("\n");
+        String[][] tokens = new String[lines.length][];
+        for (int i = 0; i < lines.length; i++)
+            tokens[i] = lines[i].split(" ");
+        return tokens;
+    }
+}
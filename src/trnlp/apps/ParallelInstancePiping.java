@@ -0,0 +1,248 @@
+package trnlp.apps;
+
+import cc.mallet.types.*;
+import gnu.trove.TObjectIntHashMap;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Pipes instances with a {@link FeatureIndexPipe} using multiple threads. Result is the same with piping the
+ * instances one by one: instances are in input order, and features and labels get the same alphabet indexes.
+ * <p/>
+ * Input is split to blocks of sentences. Worker threads parse the sentences of a block and give ids to its features
+ * with a dictionary local to the block, in the order features are first seen. Blocks are merged in input order by
+ * the calling thread: distinct features of each block are added to the alphabet in local id order, which is the
+ * order a sequential pipe would add them. So merging takes one alphabet lookup per distinct feature of a block.
+ * Then workers convert local ids of the block to feature vectors.
+ */
+public class ParallelInstancePiping {
+
+    public static final int DEFAULT_BLOCK_SIZE = 256;
+
+    final FeatureIndexPipe pipe;
+    final int threadCount;
+    final int blockSize;
+
+    /**
+     * @param pipe        pipe of the instances. It must not be used by other threads during piping.
+     * @param threadCount amount of threads.
+     * @param blockSize   amount of sentences in a block.
+     */
+    public ParallelInstancePiping(FeatureIndexPipe pipe, int threadCount, int blockSize) {
+        if (threadCount < 1)
+            throw new IllegalArgumentException("Thread count must be positive. But it is " + threadCount);
+        if (blockSize < 1)
+            throw new IllegalArgumentException("Block size must be positive. But it is " + blockSize);
+        this.pipe = pipe;
+        this.threadCount = threadCount;
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Pipes instances and adds them to the list.
+     *
+     * @param source    instances with String or String[][] data, as accepted by {@link FeatureIndexPipe}.
+     * @param instances list to add the piped instances. Its pipe must be the pipe of this object.
+     * @throws IOException if interrupted or piping of a sentence fails.
+     */
+    public void addThruPipe(Iterator<Instance> source, InstanceList instances) throws IOException {
+        if (instances.getPipe() != pipe)
+            throw new IllegalArgumentException("Instance list does not use the pipe of this object.");
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        // parsed blocks are merged in input order. Amount of waiting blocks is limited.
+        Deque<Future<Block>> parsed = new ArrayDeque<>();
+        List<Future<Block>> converted = new ArrayList<>();
+        int window = threadCount * 4;
+        try {
+            while (source.hasNext()) {
+                List<Instance> blockInstances = new ArrayList<>(blockSize);
+                while (source.hasNext() && blockInstances.size() < blockSize) {
+                    blockInstances.add(source.next());
+                }
+                parsed.add(executor.submit(new ParseTask(new Block(blockInstances))));
+                if (parsed.size() >= window)
+                    converted.add(executor.submit(new ConvertTask(merge(get(parsed.poll())))));
+            }
+            while (!parsed.isEmpty()) {
+                converted.add(executor.submit(new ConvertTask(merge(get(parsed.poll())))));
+            }
+            for (Future<Block> future : converted) {
+                for (Instance instance : get(future).instances) {
+                    instances.add(instance);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Block get(Future<Block> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while piping instances.");
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Sentences of a block, their feature ids local to the block and their labels.
+     */
+    static class Block {
+        final List<Instance> instances;
+        // distinct features in the order they are first seen, their hashes and occurrence counts.
+        String[] features;
+        long[] hashes;
+        int[] counts;
+        // local feature ids of every word of every sentence.
+        int[][][] ids;
+        String[][] labels;
+        // local id -> alphabet index, -1 if feature is ignored.
+        int[] indexes;
+        LabelSequence[] targets;
+
+        Block(List<Instance> instances) {
+            this.instances = instances;
+        }
+    }
+
+    class ParseTask implements Callable<Block> {
+        final Block block;
+
+        ParseTask(Block block) {
+            this.block = block;
+        }
+
+        @Override
+        public Block call() {
+            boolean targetProcessing = pipe.isTargetProcessing();
+            int sentenceCount = block.instances.size();
+            TObjectIntHashMap<String> localIds = new TObjectIntHashMap<>();
+            List<String> features = new ArrayList<>();
+            int[] counts = new int[256];
+            block.ids = new int[sentenceCount][][];
+            block.labels = targetProcessing ? new String[sentenceCount][] : null;
+            for (int s = 0; s < sentenceCount; s++) {
+                Instance carrier = block.instances.get(s);
+                String[][] tokens = FeatureIndexPipe.getTokens(carrier.getData());
+                int[][] sentenceIds = new int[tokens.length][];
+                if (targetProcessing)
+                    block.labels[s] = new String[tokens.length];
+                for (int l = 0; l < tokens.length; l++) {
+                    String[] row = tokens[l];
+                    int nFeatures = row.length;
+                    if (targetProcessing) {
+                        if (row.length < 1)
+                            throw new IllegalStateException("Missing label at line " + l + " instance " + carrier.getName());
+                        nFeatures = row.length - 1;
+                        block.labels[s][l] = row[nFeatures];
+                    }
+                    int[] wordIds = new int[nFeatures];
+                    for (int f = 0; f < nFeatures; f++) {
+                        // ids are kept as id + 1, so that 0 means missing.
+                        int id = localIds.get(row[f]) - 1;
+                        if (id < 0) {
+                            id = features.size();
+                            features.add(row[f]);
+                            localIds.put(row[f], id + 1);
+                            if (id == counts.length)
+                                counts = Arrays.copyOf(counts, id * 2);
+                        }
+                        counts[id]++;
+                        wordIds[f] = id;
+                    }
+                    sentenceIds[l] = wordIds;
+                }
+                block.ids[s] = sentenceIds;
+            }
+            block.features = features.toArray(new String[features.size()]);
+            block.counts = counts;
+            if (pipe.hashing != null) {
+                block.hashes = new long[block.features.length];
+                for (int i = 0; i < block.hashes.length; i++) {
+                    block.hashes[i] = FeatureHashing.hash(block.features[i]);
+                }
+            }
+            return block;
+        }
+    }
+
+    // runs in the calling thread, blocks are merged in input order.
+    private Block merge(Block block) {
+        Alphabet alphabet = pipe.getDataAlphabet();
+        FeatureHashing hashing = pipe.hashing;
+        int[] indexes = new int[block.features.length];
+        if (hashing != null) {
+            FeatureHashing.CollisionStats collisions = pipe.getCollisionStats();
+            for (int i = 0; i < indexes.length; i++) {
+                collisions.add(block.hashes[i], block.counts[i]);
+                indexes[i] = hashing.bucket(block.hashes[i]);
+            }
+        } else {
+            boolean growth = !alphabet.growthStopped();
+            for (int i = 0; i < indexes.length; i++) {
+                indexes[i] = alphabet.lookupIndex(block.features[i], growth);
+            }
+        }
+        block.indexes = indexes;
+        block.features = null;
+        block.hashes = null;
+        block.counts = null;
+
+        if (block.labels != null) {
+            LabelAlphabet labelAlphabet = (LabelAlphabet) pipe.getTargetAlphabet();
+            block.targets = new LabelSequence[block.labels.length];
+            for (int s = 0; s < block.labels.length; s++) {
+                LabelSequence target = new LabelSequence(labelAlphabet, block.labels[s].length);
+                for (String label : block.labels[s]) {
+                    target.add(label);
+                }
+                block.targets[s] = target;
+            }
+            block.labels = null;
+        }
+        return block;
+    }
+
+    class ConvertTask implements Callable<Block> {
+        final Block block;
+
+        ConvertTask(Block block) {
+            this.block = block;
+        }
+
+        @Override
+        public Block call() {
+            Alphabet alphabet = pipe.getDataAlphabet();
+            int[] indexes = block.indexes;
+            for (int s = 0; s < block.ids.length; s++) {
+                int[][] sentenceIds = block.ids[s];
+                FeatureVector[] fvs = new FeatureVector[sentenceIds.length];
+                for (int l = 0; l < sentenceIds.length; l++) {
+                    int[] ids = sentenceIds[l];
+                    int size = 0;
+                    for (int id : ids) {
+                        int index = indexes[id];
+                        // features that are not in a stopped alphabet are ignored.
+                        if (index >= 0)
+                            ids[size++] = index;
+                    }
+                    int[] featureIndexes = size == ids.length ? ids : Arrays.copyOf(ids, size);
+                    fvs[l] = pipe.augmentable ? new AugmentableFeatureVector(alphabet, featureIndexes, null, size) :
+                            new FeatureVector(alphabet, featureIndexes);
+                }
+                Instance carrier = block.instances.get(s);
+                carrier.setData(new FeatureVectorSequence(fvs));
+                carrier.setTarget(block.targets != null ? block.targets[s] : new LabelSequence(pipe.getTargetAlphabet()));
+            }
+            block.ids = null;
+            block.targets = null;
+            return block;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package trnlp.apps;
+
+import gnu.trove.TObjectIntHashMap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Assigns consecutive integer ids to strings. Ids start from 0.
+ * <p/>
+ * Adding symbols is not thread safe. Once all symbols are added, lookups can be done from multiple threads.
+ */
+public class SymbolTable {
+
+    TObjectIntHashMap<String> ids = new TObjectIntHashMap<>();
+    List<String> symbols = new ArrayList<>();
+
+    /**
+     * Adds the symbol if it does not exist.
+     *
+     * @param symbol symbol to add.
+     * @return id of the symbol.
+     */
+    public int add(String symbol) {
+        if (ids.containsKey(symbol))
+            return ids.get(symbol);
+        int id = symbols.size();
+        ids.put(symbol, id);
+        symbols.add(symbol);
+        return id;
+    }
+
+    /**
+     * @param symbol symbol to look up.
+     * @return id of the symbol or -1 if symbol does not exist.
+     */
+    public int getId(String symbol) {
+        if (!ids.containsKey(symbol))
+            return -1;
+        return ids.get(symbol);
+    }
+
+    public String getSymbol(int id) {
+        return symbols.get(id);
+    }
+
+    public int size() {
+        return symbols.size();
+    }
+}
@@ -1,43 +1,234 @@
 package trnlp.apps;
 
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Splitter;
+import org.jcaki.IterableLineReader;
+import org.jcaki.SimpleTextReader;
+import trnlp.metrics.ChunkingMetrics;
+import trnlp.metrics.MetricsRegistry;
+import trnlp.metrics.Stage;
 import zemberek3.ambiguity.Z3MarkovModelDisambiguator;
 import zemberek3.apps.TurkishMorphParser;
 import zemberek3.apps.TurkishSentenceParser;
-import zemberek3.apps.UnidentifiedTokenParser;
 import zemberek3.parser.morphology.MorphParse;
 import zemberek3.parser.morphology.SentenceMorphParse;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * Morphological analysis and disambiguation of sentences. One instance can be used by many threads.
+ * <p/>
+ * By default every thread loads its own word parser and disambiguator when it first uses the instance, at the cost
+ * of memory and loading time per thread, and the creating thread uses the models loaded by the constructor. Word
+ * analysis cache is thread safe and shared by all threads. Sharing one word parser and disambiguator between threads
+ * can be asked with {@link #TurkishMorphology(int, boolean)}. It assumes that Zemberek only reads its lexicon,
+ * morphotactics and language model after loading, which is not verified yet, so it is not the default.
+ * <p/>
+ * Words missing in the cache are parsed with the sentence parser one by one, so unknown words, numbers and
+ * punctuation get the same analyses with an uncached sentence parse. A word is cached only if the sentence parser
+ * keeps it as a single token. Words that it splits, such as a word with trailing punctuation, are parsed again every
+ * time so that the entries of a sentence parse do not depend on the cache.
+ */
 public class TurkishMorphology {
-    TurkishMorphParser wordParser;
-    TurkishSentenceParser sentenceParser;
-    UnidentifiedTokenParser unidentifiedTokenParser;
+    public static final int DEFAULT_CACHE_SIZE = 50000;
+
+    final TurkishMorphParser wordParser;
+    final Z3MarkovModelDisambiguator disambiguator;
+    final boolean perThreadModels;
+    // models loaded by the constructor are used by the creating thread.
+    final Thread owner = Thread.currentThread();
+    final ThreadLocal<TurkishSentenceParser> sentenceParsers = new ThreadLocal<TurkishSentenceParser>() {
+        @Override
+        protected TurkishSentenceParser initialValue() {
+            if (!perThreadModels || Thread.currentThread() == owner)
+                return new TurkishSentenceParser(wordParser, disambiguator);
+            try {
+                return new TurkishSentenceParser(TurkishMorphParser.createWithDefaults(),
+                        new Z3MarkovModelDisambiguator());
+            } catch (IOException e) {
+                throw new IllegalStateException("Morphology cannot be loaded for thread "
+                        + Thread.currentThread().getName(), e);
+            }
+        }
+    };
+    WordAnalysisCache cache;
 
     File dataDir;
 
     public TurkishMorphology() throws IOException {
+        this(DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * @param cacheSize maximum amount of word analyses to cache. If it is 0, analyses are not cached.
+     * @throws IOException if morphology data cannot be loaded.
+     */
+    public TurkishMorphology(int cacheSize) throws IOException {
+        this(cacheSize, true);
+    }
+
+    /**
+     * @param cacheSize       maximum amount of word analyses to cache. If it is 0, analyses are not cached.
+     * @param perThreadModels if true, every thread that uses this instance loads its own word parser and
+     *                        disambiguator when it is first used. Threads should be long lived, e.g. pool threads.
+     *                        If false, all threads share the models loaded by the constructor, see class comment.
+     * @throws IOException if morphology data cannot be loaded.
+     */
+    public TurkishMorphology(int cacheSize, boolean perThreadModels) throws IOException {
         wordParser = TurkishMorphParser.createWithDefaults();
-        Z3MarkovModelDisambiguator disambiguator = new Z3MarkovModelDisambiguator();
-        sentenceParser = new TurkishSentenceParser(wordParser, disambiguator);
+        disambiguator = new Z3MarkovModelDisambiguator();
+        this.perThreadModels = perThreadModels;
+        if (cacheSize > 0)
+            cache = new WordAnalysisCache(cacheSize);
     }
 
+    /**
+     * @param input a single token.
+     * @return analyses of the token. If the sentence parser splits the token, analyses of all parts are returned
+     *         together and they are not cached.
+     */
     public List<MorphParse> parseWord(String input) {
-        List<MorphParse> parses = wordParser.parse(input);
-        if (parses.size() == 0)
-            return unidentifiedTokenParser.parse(input);
+        if (cache != null) {
+            List<MorphParse> parses = cache.get(input);
+            if (parses != null)
+                return parses;
+        }
+        // analyses of a token do not depend on other tokens, only disambiguation does.
+        SentenceMorphParse tokenParse = sentenceParsers.get().parse(input);
+        if (isSingleToken(tokenParse, input)) {
+            if (cache != null)
+                cache.put(input, tokenParse.getEntry(0).parses);
+            return tokenParse.getEntry(0).parses;
+        }
+        List<MorphParse> parses = new ArrayList<>();
+        for (SentenceMorphParse.Entry entry : tokenParse) {
+            parses.addAll(entry.parses);
+        }
         return parses;
     }
 
+    // only such parses can be cached, a cache hit in a sentence parse adds exactly one entry.
+    private static boolean isSingleToken(SentenceMorphParse tokenParse, String token) {
+        return tokenParse.size() == 1 && tokenParse.getEntry(0).input.equals(token);
+    }
+
     public SentenceMorphParse parseSentence(String input) {
-        return sentenceParser.parse(input);
+        ChunkingMetrics metrics = MetricsRegistry.get();
+        long start = metrics.start();
+        SentenceMorphParse sentenceParse;
+        if (cache == null)
+            sentenceParse = sentenceParsers.get().parse(input);
+        else {
+            // sentence parser is called for each token that is not in the cache, so the entries are the same
+            // with parsing the whole sentence at once.
+            sentenceParse = new SentenceMorphParse();
+            for (String token : Splitter.on(CharMatcher.WHITESPACE).omitEmptyStrings().split(input)) {
+                List<MorphParse> parses = cache.get(token);
+                if (parses != null) {
+                    sentenceParse.addParse(token, parses);
+                    continue;
+                }
+                SentenceMorphParse tokenParse = sentenceParsers.get().parse(token);
+                for (SentenceMorphParse.Entry entry : tokenParse) {
+                    sentenceParse.addParse(entry.input, entry.parses);
+                }
+                if (isSingleToken(tokenParse, token))
+                    cache.put(token, tokenParse.getEntry(0).parses);
+            }
+        }
+        metrics.stop(Stage.PARSE, start);
+        return sentenceParse;
+    }
+
+    /**
+     * Parses an already tokenized sentence. Result contains exactly one entry for each token, in the same order.
+     *
+     * @param tokens tokens of the sentence.
+     * @return sentence parse.
+     */
+    public SentenceMorphParse parseSentence(List<String> tokens) {
+        ChunkingMetrics metrics = MetricsRegistry.get();
+        long start = metrics.start();
+        SentenceMorphParse sentenceParse = new SentenceMorphParse();
+        for (String token : tokens) {
+            sentenceParse.addParse(token, parseWord(token));
+        }
+        metrics.stop(Stage.PARSE, start);
+        return sentenceParse;
     }
 
     public SentenceMorphParse parseAndDisambiguateSentence(String input) {
         SentenceMorphParse sentenceParse = parseSentence(input);
-        sentenceParser.disambiguate(sentenceParse);
+        disambiguate(sentenceParse);
+        return sentenceParse;
+    }
+
+    /**
+     * Disambiguates a sentence parse in place. After this, first parse of each entry is the selected one.
+     *
+     * @param sentenceParse sentence parse.
+     */
+    public void disambiguate(SentenceMorphParse sentenceParse) {
+        ChunkingMetrics metrics = MetricsRegistry.get();
+        long start = metrics.start();
+        sentenceParsers.get().disambiguate(sentenceParse);
+        metrics.stop(Stage.DISAMBIGUATE, start);
+    }
+
+    /**
+     * Parses and disambiguates an already tokenized sentence.
+     *
+     * @param tokens tokens of the sentence.
+     * @return disambiguated sentence parse with one entry for each token.
+     */
+    public SentenceMorphParse parseAndDisambiguateSentence(List<String> tokens) {
+        SentenceMorphParse sentenceParse = parseSentence(tokens);
+        disambiguate(sentenceParse);
         return sentenceParse;
     }
+
+    /**
+     * Fills the cache with analyses of the most frequent words. Each line of the frequency list should start with
+     * a word, optionally followed by a space and its count. Lines must be sorted by decreasing frequency. Words that
+     * the sentence parser splits into several tokens are skipped.
+     *
+     * @param frequencyList word frequency file.
+     * @param maxWords      maximum amount of words to analyse. It is limited with the cache size.
+     * @return amount of words added to the cache.
+     * @throws IOException if file cannot be read.
+     */
+    public int warmUpCache(File frequencyList, int maxWords) throws IOException {
+        if (cache == null)
+            return 0;
+        int limit = Math.min(maxWords, cache.getMaxSize());
+        int count = 0;
+        try (IterableLineReader reader = SimpleTextReader.trimmingUTF8IterableLineReader(frequencyList)) {
+            for (String line : reader) {
+                if (count >= limit)
+                    break;
+                if (line.length() == 0 || line.startsWith("#"))
+                    continue;
+                int index = line.indexOf(' ');
+                String word = index < 0 ? line : line.substring(0, index);
+                if (cache.contains(word))
+                    continue;
+                SentenceMorphParse tokenParse = sentenceParsers.get().parse(word);
+                if (!isSingleToken(tokenParse, word))
+                    continue;
+                cache.put(word, tokenParse.getEntry(0).parses);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return word analysis cache, or null if caching is disabled.
+     */
+    public WordAnalysisCache getCache() {
+        return cache;
+    }
 }
@@ -2,12 +2,18 @@ package trnlp.apps;
 
 import com.google.common.base.Joiner;
 import org.antlr.v4.runtime.Token;
+import trnlp.metrics.ChunkingMetrics;
+import trnlp.metrics.MetricsRegistry;
+import trnlp.metrics.Stage;
 import zemberek3.shared.tokenizer.antlr.TurkishLexer;
 import zemberek3.shared.tokenizer.antlr.ZemberekLexer;
 
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * Splits sentences to tokens. Instances are thread safe, lexer creates a new ANTLR lexer for every input.
+ */
 public class TurkishSentenceTokenizer {
 
     ZemberekLexer lexer = new ZemberekLexer();
@@ -17,11 +23,14 @@ public class TurkishSentenceTokenizer {
     }
 
     public List<String> tokenizeAsStrings(String sentence) {
+        ChunkingMetrics metrics = MetricsRegistry.get();
+        long start = metrics.start();
         List<Token> tokens = tokenList(sentence);
         List<String> strings = new ArrayList<>(tokens.size());
         for (Token token : tokens) {
             strings.add(token.getText());
         }
+        metrics.stop(Stage.TOKENIZE, start);
         return strings;
     }
 
@@ -0,0 +1,88 @@
+package trnlp.apps;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import zemberek3.parser.morphology.MorphParse;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A size bounded, thread safe cache of word analyses. When cache is full, least recently used words are evicted.
+ * Eviction order is approximate because cache is split to segments for concurrency.
+ * <p/>
+ * Analysis lists are stored as unmodifiable copies and every lookup returns a new list, because disambiguation
+ * reorders the parse list of a sentence entry in place.
+ */
+public class WordAnalysisCache {
+
+    final Cache<String, List<MorphParse>> cache;
+    final int maxSize;
+
+    /**
+     * @param maxSize maximum amount of words kept in the cache.
+     */
+    public WordAnalysisCache(int maxSize) {
+        if (maxSize < 1)
+            throw new IllegalArgumentException("Cache size must be positive. But it is " + maxSize);
+        this.maxSize = maxSize;
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * @param word input word.
+     * @return a copy of the cached analyses of the word, or null if word is not in the cache.
+     */
+    public List<MorphParse> get(String word) {
+        List<MorphParse> parses = cache.getIfPresent(word);
+        return parses == null ? null : new ArrayList<>(parses);
+    }
+
+    /**
+     * @param word   input word.
+     * @param parses analyses of the word. A copy is stored.
+     */
+    public void put(String word, List<MorphParse> parses) {
+        cache.put(word, Collections.unmodifiableList(new ArrayList<>(parses)));
+    }
+
+    public boolean contains(String word) {
+        return cache.asMap().containsKey(word);
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getHitCount() {
+        return cache.stats().hitCount();
+    }
+
+    public long getMissCount() {
+        return cache.stats().missCount();
+    }
+
+    public long getEvictionCount() {
+        return cache.stats().evictionCount();
+    }
+
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    @Override
+    public String toString() {
+        CacheStats stats = cache.stats();
+        return String.format("size=%d/%d hits=%d misses=%d evictions=%d hitRate=%.4f",
+                cache.size(), maxSize, stats.hitCount(), stats.missCount(), stats.evictionCount(), stats.hitRate());
+    }
+}
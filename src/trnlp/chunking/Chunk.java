@@ -2,44 +2,150 @@ package trnlp.chunking;
 
 import com.google.common.base.Joiner;
 import zemberek3.parser.morphology.MorphParse;
+import zemberek3.parser.morphology.SentenceMorphParse;
 
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Locale;
 
+/**
+ * A chunk is a span of tokens [start, end) of a sentence. Chunks of a sentence share the token list and the parse
+ * of the sentence, nothing is copied when a chunk is created. Words, parses and string forms are generated only
+ * when they are asked for.
+ */
 public class Chunk {
-    int index;
-    ChunkerAnnotationFeatureExtractor.ChunkType type;
-    List<MorphParse> parses;
-    List<String> words;
+    final int start;
+    final int end;
+    final ChunkerAnnotationFeatureExtractor.ChunkType type;
+    final List<String> tokens;
+    final SentenceMorphParse parse;
+    // parses of the chunk words, only for chunks created with the deprecated constructor.
+    final List<MorphParse> chunkParses;
+    // start and end character offsets of all tokens of the sentence as [start0, end0, start1, end1 ...]. Shared.
+    int[] tokenOffsets;
 
-    public Chunk(int index, ChunkerAnnotationFeatureExtractor.ChunkType type, List<MorphParse> parses, List<String> words) {
-        this.index = index;
+    /**
+     * @param start  index of the first token of the chunk.
+     * @param end    index after the last token of the chunk.
+     * @param type   chunk type.
+     * @param tokens all tokens of the sentence.
+     * @param parse  disambiguated parse of the sentence.
+     */
+    public Chunk(int start, int end, ChunkerAnnotationFeatureExtractor.ChunkType type, List<String> tokens,
+                 SentenceMorphParse parse) {
+        this.start = start;
+        this.end = end;
         this.type = type;
-        this.parses = parses;
-        this.words = words;
+        this.tokens = tokens;
+        this.parse = parse;
+        this.chunkParses = null;
+    }
+
+    /**
+     * Creates a chunk from its own words and parses. Words are kept as a span that starts at index.
+     *
+     * @param index  index of the first word of the chunk in the sentence.
+     * @param type   chunk type.
+     * @param parses selected parse of each word.
+     * @param words  words of the chunk.
+     * @deprecated use {@link #Chunk(int, int, ChunkerAnnotationFeatureExtractor.ChunkType, List, SentenceMorphParse)}
+     */
+    @Deprecated
+    public Chunk(final int index, ChunkerAnnotationFeatureExtractor.ChunkType type, List<MorphParse> parses,
+                 final List<String> words) {
+        this.start = index;
+        this.end = index + words.size();
+        this.type = type;
+        // tokens before the chunk are not known.
+        this.tokens = new AbstractList<String>() {
+            @Override
+            public String get(int i) {
+                return i < index ? null : words.get(i - index);
+            }
+
+            @Override
+            public int size() {
+                return index + words.size();
+            }
+        };
+        this.parse = null;
+        this.chunkParses = parses;
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    public int getEnd() {
+        return end;
+    }
+
+    public int size() {
+        return end - start;
+    }
+
+    public ChunkerAnnotationFeatureExtractor.ChunkType getType() {
+        return type;
+    }
+
+    /**
+     * @return words of the chunk. This is a read only view of the sentence tokens.
+     */
+    public List<String> getWords() {
+        return Collections.unmodifiableList(tokens.subList(start, end));
+    }
+
+    /**
+     * @return selected parse of each word of the chunk. For chunks created with the deprecated constructor, the
+     *         given parses.
+     */
+    public List<MorphParse> getParses() {
+        if (chunkParses != null)
+            return chunkParses;
+        List<MorphParse> parses = new ArrayList<>(end - start);
+        for (int i = start; i < end; i++) {
+            parses.add(parse.getEntry(i).parses.get(0));
+        }
+        return parses;
+    }
+
+    /**
+     * @return offset of the first character of the chunk in the sentence, or -1 if it is not known.
+     */
+    public int getCharStart() {
+        return tokenOffsets == null ? -1 : tokenOffsets[start * 2];
+    }
+
+    /**
+     * @return offset after the last character of the chunk in the sentence, or -1 if it is not known.
+     */
+    public int getCharEnd() {
+        return tokenOffsets == null ? -1 : tokenOffsets[end * 2 - 1];
+    }
+
+    void setTokenOffsets(int[] tokenOffsets) {
+        this.tokenOffsets = tokenOffsets;
     }
 
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder("[");
-        sb.append(Joiner.on(" ").join(words));
+        Joiner.on(" ").appendTo(sb, tokens.subList(start, end));
         sb.append(":").append(type.name()).append("]");
         return sb.toString();
     }
 
     public String explain() {
         StringBuilder sb = new StringBuilder("[");
-        int k = 0;
-        for (MorphParse parse : parses) {
-            sb.append(parse.dictionaryItem.lemma);
-            if (k < parses.size() - 1)
+        List<MorphParse> parses = getParses();
+        for (int i = 0; i < parses.size(); i++) {
+            sb.append(parses.get(i).dictionaryItem.lemma);
+            if (i < parses.size() - 1)
                 sb.append(" ");
-            k++;
         }
-        sb.append(":").append(type.name()).append("-").append(index).append("]");
-        "".toLowerCase(new Locale("tr"));
+        sb.append(":").append(type.name()).append("-").append(start).append("]");
         return sb.toString();
     }
 
-
 }
@@ -0,0 +1,123 @@
+package trnlp.chunking;
+
+import zemberek3.parser.morphology.SentenceMorphParse;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps byte coded CRF labels to chunk types and chunk boundaries. A label is a chunk type abbreviation followed by
+ * B (first word of a chunk) or I (other words of a chunk), such as "SB" or "VI". Codes are indexes of label names,
+ * so labels decoded by a model can be used without converting them to strings.
+ */
+public class ChunkLabels {
+
+    static final ChunkerAnnotationFeatureExtractor.ChunkType[] TYPES = ChunkerAnnotationFeatureExtractor.ChunkType.values();
+
+    /**
+     * All possible labels.
+     */
+    public static final ChunkLabels ALL = new ChunkLabels(allLabelNames());
+
+    final String[] names;
+    // for each code, (type ordinal << 1) | (1 if label begins a chunk). -1 for labels that are not valid.
+    final byte[] info;
+    final Map<String, Byte> codes = new HashMap<>();
+
+    /**
+     * @param names label names. Code of a label is its index.
+     */
+    public ChunkLabels(String[] names) {
+        if (names.length > Byte.MAX_VALUE)
+            throw new IllegalArgumentException("Too many labels: " + names.length);
+        this.names = names.clone();
+        this.info = new byte[names.length];
+        for (int i = 0; i < names.length; i++) {
+            info[i] = labelInfo(names[i]);
+            codes.put(names[i], (byte) i);
+        }
+    }
+
+    private static String[] allLabelNames() {
+        List<String> names = new ArrayList<>();
+        for (ChunkerAnnotationFeatureExtractor.ChunkType type : TYPES) {
+            names.add(type.label + "B");
+            names.add(type.label + "I");
+        }
+        return names.toArray(new String[names.size()]);
+    }
+
+    private static byte labelInfo(String label) {
+        if (label.length() != 2)
+            return -1;
+        ChunkerAnnotationFeatureExtractor.ChunkType type =
+                ChunkerAnnotationFeatureExtractor.ChunkType.getByAbbrv(label.substring(0, 1));
+        if (type == null)
+            return -1;
+        char boundary = label.charAt(1);
+        if (boundary != 'B' && boundary != 'I')
+            return -1;
+        return (byte) ((type.ordinal() << 1) | (boundary == 'B' ? 1 : 0));
+    }
+
+    /**
+     * @param labels label names.
+     * @return codes of the labels. Unknown labels get -1.
+     */
+    public byte[] encode(List<String> labels) {
+        byte[] result = new byte[labels.size()];
+        for (int i = 0; i < result.length; i++) {
+            Byte code = codes.get(labels.get(i));
+            result[i] = code == null ? -1 : code;
+        }
+        return result;
+    }
+
+    /**
+     * Generates chunks from labels with a small state machine. A new chunk starts when the type changes or when a
+     * label marks the beginning of a chunk. A word with an invalid label ends the current chunk and does not
+     * belong to any chunk.
+     *
+     * @param labels label codes of the words.
+     * @param tokens tokens of the sentence.
+     * @param parse  disambiguated parse of the sentence.
+     * @return chunks.
+     */
+    public List<Chunk> toChunks(byte[] labels, List<String> tokens, SentenceMorphParse parse) {
+        List<Chunk> chunks = new ArrayList<>();
+        int start = -1;
+        int type = -1;
+        for (int i = 0; i < labels.length; i++) {
+            int code = labels[i];
+            int labelInfo = code < 0 || code >= info.length ? -1 : info[code];
+            if (labelInfo < 0) {
+                if (start >= 0)
+                    chunks.add(new Chunk(start, i, TYPES[type], tokens, parse));
+                start = -1;
+                continue;
+            }
+            int labelType = labelInfo >> 1;
+            if (start >= 0 && (labelType != type || (labelInfo & 1) != 0)) {
+                chunks.add(new Chunk(start, i, TYPES[type], tokens, parse));
+                start = -1;
+            }
+            if (start < 0) {
+                start = i;
+                type = labelType;
+            }
+        }
+        if (start >= 0)
+            chunks.add(new Chunk(start, labels.length, TYPES[type], tokens, parse));
+        return chunks;
+    }
+
+    public String getName(byte code) {
+        return names[code];
+    }
+
+    public int size() {
+        return names.length;
+    }
+}
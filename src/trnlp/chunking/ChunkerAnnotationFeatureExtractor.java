@@ -7,6 +7,7 @@ import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import org.jcaki.SimpleTextReader;
 import org.jcaki.Strings;
+import trnlp.apps.CompiledTemplates;
 import trnlp.apps.ContentPreprocessor;
 import trnlp.apps.CrfTemplates;
 import trnlp.apps.TurkishMorphology;
@@ -15,10 +16,13 @@ import zemberek3.parser.morphology.MorphParse;
 import zemberek3.parser.morphology.SentenceMorphParse;
 import zemberek3.shared.lexicon.SecondaryPos;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.PrintWriter;
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * This class is used for extracting feature data and files necessary for generating CRF models.
@@ -42,46 +46,217 @@ public class ChunkerAnnotationFeatureExtractor {
         this.eliminatePunctuations = eliminatePunctuations;
     }
 
+    /**
+     * @param morphology            morphology to use. It can be shared with other extractors.
+     * @param delimiter             delimiter of the feature columns.
+     * @param eliminatePunctuations if true, punctuations are removed from the annotated chunks.
+     */
+    public ChunkerAnnotationFeatureExtractor(TurkishMorphology morphology, String delimiter,
+                                             boolean eliminatePunctuations) {
+        this.morphology = morphology;
+        this.delimiter = delimiter;
+        this.eliminatePunctuations = eliminatePunctuations;
+    }
+
     public void generateFromAnnotationFile(File in, File out) throws IOException {
-        PrintWriter pw = new PrintWriter(out, "utf-8");
-        Set<List<ChunkData>> accepted = getProperLines(in);
-
-        for (List<ChunkData> chunkDataList : accepted) {
-
-            List<WordFeature> wordFeatures = new ArrayList<>();
-            List<String> chunks = new ArrayList<>();
-
-            for (ChunkData chunkData : chunkDataList) {
-                String processed = preprocessor.process(chunkData.wordsBlock);
-                List<String> words = tokenizer.tokenizeAsStrings(processed);
-                for (int i = 0; i < words.size(); i++) {
-                    String word = words.get(i);
-                    String label;
-                    if (i == 0)
-                        label = chunkData.tag.label + "B";
-                    else
-                        label = chunkData.tag.label + "I";
-                    wordFeatures.add(new WordFeature(word, label));
-                }
-                chunks.addAll(words);
-            }
-            String allSentence = Joiner.on(" ").join(chunks);
+        generateFromAnnotationFile(in, out, 1);
+    }
 
-            List<String> featureLines = getFeatureLines(wordFeatures, allSentence);
+    /**
+     * Generates single word feature file from annotated sentences using multiple threads. All threads share the
+     * tokenizer and morphology of this extractor, see {@link TurkishMorphology} for loading morphology models per
+     * thread. Output is the same with single threaded extraction, sentences are written in input order.
+     *
+     * @param in          annotated sentence file.
+     * @param out         single word feature file.
+     * @param threadCount amount of threads.
+     * @return extraction report containing the failed sentences.
+     * @throws IOException if files cannot be read or written.
+     */
+    public ExtractionReport generateFromAnnotationFile(File in, File out, int threadCount) throws IOException {
+        try (SingleFeatureWriter writer = new SingleFeatureWriter(out, delimiter)) {
+            return extract(in, threadCount, writer);
+        }
+    }
+
+    /**
+     * Receives single word features of the annotated sentences in input order.
+     */
+    public interface SentenceHandler {
+        void handle(List<CrfTemplates.SingleWordFeature> features) throws IOException;
+    }
 
-            if (featureLines == null) {
-                System.out.println("Problem extracting features: " + allSentence);
-                continue;
+    /**
+     * Extracts single word features of annotated sentences using multiple threads and passes them to the handler in
+     * input order. Sentences that cannot be processed are reported and skipped. Only a limited amount of results wait
+     * for the handler, so features of the whole corpus are not kept in memory.
+     *
+     * @param in          annotated sentence file.
+     * @param threadCount amount of threads.
+     * @param handler     handler of the extracted sentences. It is called from the calling thread only.
+     * @return extraction report containing the failed sentences.
+     * @throws IOException if file cannot be read or handler fails.
+     */
+    public ExtractionReport extract(File in, int threadCount, SentenceHandler handler) throws IOException {
+        if (threadCount < 1)
+            throw new IllegalArgumentException("Thread count must be positive. But it is " + threadCount);
+        List<List<ChunkData>> accepted = new ArrayList<>(getProperLines(in));
+
+        ExtractionReport report = new ExtractionReport();
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        // results are handled in submission order. Amount of waiting results is limited.
+        Deque<Future<SentenceResult>> pending = new ArrayDeque<>();
+        int window = threadCount * 16;
+        try {
+            for (int i = 0; i < accepted.size(); i++) {
+                pending.add(executor.submit(new ExtractionTask(i, accepted.get(i))));
+                if (pending.size() >= window)
+                    handle(pending.poll(), handler, report);
+            }
+            while (!pending.isEmpty()) {
+                handle(pending.poll(), handler, report);
             }
-            for (String fl : featureLines) {
-                // stw.writeLine(labeledWord.word + " " + labeledWord.label);
-                pw.print(fl);
+        } finally {
+            executor.shutdownNow();
+        }
+        System.out.println(report);
+        return report;
+    }
+
+    private void handle(Future<SentenceResult> future, SentenceHandler handler, ExtractionReport report)
+            throws IOException {
+        SentenceResult result;
+        try {
+            result = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted during feature extraction.");
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+        if (result.error != null) {
+            System.out.println("Problem extracting features of sentence " + result.index + ": " + result.sentence
+                    + " Reason: " + result.error);
+            report.failures.add(result);
+            return;
+        }
+        handler.handle(result.features);
+        report.sentenceCount++;
+    }
+
+    /**
+     * Writes single word features in the format {@link CrfTemplates.SingleFeatureReader} reads. Every sentence is
+     * followed by an empty line.
+     */
+    public static class SingleFeatureWriter implements SentenceHandler, Closeable {
+        final PrintWriter pw;
+        final String delimiter;
+
+        public SingleFeatureWriter(File out, String delimiter) throws IOException {
+            this.pw = new PrintWriter(out, "utf-8");
+            this.delimiter = delimiter;
+        }
+
+        @Override
+        public void handle(List<CrfTemplates.SingleWordFeature> features) {
+            for (CrfTemplates.SingleWordFeature feature : features) {
+                pw.print(feature.asFeatureLine(delimiter));
                 pw.print('\n');
             }
             pw.print('\n');
+        }
+
+        @Override
+        public void close() {
+            pw.close();
+        }
+    }
+
+    class ExtractionTask implements Callable<SentenceResult> {
+        final int index;
+        final List<ChunkData> chunkDataList;
+
+        ExtractionTask(int index, List<ChunkData> chunkDataList) {
+            this.index = index;
+            this.chunkDataList = chunkDataList;
+        }
+
+        @Override
+        public SentenceResult call() {
+            return extract(index, chunkDataList);
+        }
+    }
+
+    SentenceResult extract(int index, List<ChunkData> chunkDataList) {
+        List<WordFeature> wordFeatures = new ArrayList<>();
+        List<String> tokens = new ArrayList<>();
+
+        for (ChunkData chunkData : chunkDataList) {
+            String processed = preprocessor.process(chunkData.wordsBlock);
+            List<String> words = tokenizer.tokenizeAsStrings(processed);
+            for (int i = 0; i < words.size(); i++) {
+                String word = words.get(i);
+                String label;
+                if (i == 0)
+                    label = chunkData.tag.label + "B";
+                else
+                    label = chunkData.tag.label + "I";
+                wordFeatures.add(new WordFeature(word, label));
+            }
+            tokens.addAll(words);
+        }
+        String allSentence = Joiner.on(" ").join(tokens);
+
+        SentenceMorphParse parse;
+        try {
+            // sentence is parsed as a whole, as in single threaded extraction.
+            parse = morphology.parseAndDisambiguateSentence(allSentence);
+        } catch (Exception e) {
+            return new SentenceResult(index, allSentence, null, "Morphological parse error: " + e);
+        }
+        try {
+            return new SentenceResult(index, allSentence, getSingleWordFeatures(wordFeatures, parse), null);
+        } catch (Exception e) {
+            return new SentenceResult(index, allSentence, null, "Feature extraction error: " + e);
+        }
+    }
+
+    public static class SentenceResult {
+        public final int index;
+        public final String sentence;
+        public final List<CrfTemplates.SingleWordFeature> features;
+        public final String error;
+
+        SentenceResult(int index, String sentence, List<CrfTemplates.SingleWordFeature> features, String error) {
+            this.index = index;
+            this.sentence = sentence;
+            this.features = features;
+            this.error = error;
+        }
+    }
+
+    public static class ExtractionReport {
+        int sentenceCount;
+        final List<SentenceResult> failures = new ArrayList<>();
 
+        /**
+         * @return amount of sentences written to the output.
+         */
+        public int getSentenceCount() {
+            return sentenceCount;
+        }
+
+        /**
+         * @return sentences that could not be processed, in input order. Their features are null.
+         */
+        public List<SentenceResult> getFailures() {
+            return failures;
+        }
+
+        @Override
+        public String toString() {
+            return "Extracted sentence count:" + sentenceCount + " Failed sentence count:" + failures.size();
         }
-        pw.close();
     }
 
     public Set<List<ChunkData>> getProperLines(File in) throws IOException {
@@ -148,27 +323,32 @@ public class ChunkerAnnotationFeatureExtractor {
             return null;
         }
 
-        for (int i = 0; i < wordFeatures.size(); i++) {
-            WordFeature wordFeature = wordFeatures.get(i);
-            try {
-                wordFeature.features = new TurkishChunkFeatures(wordFeature.token, parse.getEntry(i).parses.get(0));
-            } catch (Exception e) {
-                System.out.println("Error during feature extraction of sentence:" + allSentence + " with exception:" + e.getMessage());
-            }
+        try {
+            return getFeatureLines(wordFeatures, parse);
+        } catch (Exception e) {
+            System.out.println("Error during feature extraction of sentence:" + allSentence + " with exception:" + e.getMessage());
+            return null;
         }
+    }
 
+    List<String> getFeatureLines(List<WordFeature> wordFeatures, SentenceMorphParse parse) {
         List<String> featureLines = new ArrayList<>();
-
-        for (WordFeature wordFeature : wordFeatures) {
-            TurkishChunkFeatures current = wordFeature.features;
-            List<String> features = current.getFeatureList();
-            String label = wordFeature.label;
-            features.add(label);
-            featureLines.add(Joiner.on(delimiter).join(features));
+        for (CrfTemplates.SingleWordFeature feature : getSingleWordFeatures(wordFeatures, parse)) {
+            featureLines.add(feature.asFeatureLine(delimiter));
         }
         return featureLines;
     }
 
+    List<CrfTemplates.SingleWordFeature> getSingleWordFeatures(List<WordFeature> wordFeatures, SentenceMorphParse parse) {
+        List<CrfTemplates.SingleWordFeature> result = new ArrayList<>(wordFeatures.size());
+        for (int i = 0; i < wordFeatures.size(); i++) {
+            WordFeature wordFeature = wordFeatures.get(i);
+            wordFeature.features = new TurkishChunkFeatures(wordFeature.token, parse.getEntry(i).parses.get(0));
+            result.add(new CrfTemplates.SingleWordFeature(wordFeature.features.getFeatureList(), wordFeature.label));
+        }
+        return result;
+    }
+
     static Set<String> puncts = Sets.newHashSet(".", ",", "?", ":", ";", "!");
 
     public static String eliminatePunctuations(String s) {
@@ -272,75 +452,149 @@ public class ChunkerAnnotationFeatureExtractor {
         }
     }
 
+    /**
+     * Single word features of a word. Columns are word, lemma, pos, secondary pos, last inflectional group, noun
+     * case, last three letters, first letter capital and contains quote.
+     * <p/>
+     * Features keep the word, its parse and its last inflectional group node of {@link LastIgCache}, where case and
+     * plurality are already found from the suffix ids. Boolean features are kept as bits. When features are built for
+     * a model, all column values are resolved to symbol ids of the model once, and decoders use the ids directly, see
+     * {@link CompiledTemplates#getFeatureIndexes(int[][], List)}. Values that the model does not know get the unknown
+     * id, so the ids do not grow with the processed text. Column strings are only generated for training and export.
+     */
     public static class TurkishChunkFeatures {
-        String word;
-        String lemma;
-        String pos;
-        String secPos;
-        String lastIg;
-        boolean firstLetterCapital = false;
-        boolean containsQuote = false;
-        String last3;
-        boolean plural;
-        String nounCase;
+
+        public static final int COLUMN_COUNT = 9;
+
+        static final String NONE = "_";
+        static final String FALSE = "false";
+        static final String TRUE = "true";
+        static final String NO_IG = "NO_IG";
+
+        static final byte FIRST_LETTER_CAPITAL = 1;
+        static final byte CONTAINS_QUOTE = 2;
+
+        static Set<String> cases = Sets.newHashSet("Dat", "Abl", "Acc", "Inst", "Loc", "Gen", "Nom");
+        static final LastIgCache lastIgCache = new LastIgCache(cases);
+
+        final String word;
+        // null for sentence boundary features.
+        final MorphParse parse;
+        final LastIgCache.Node ig;
+        final byte flags;
+        // symbol ids of the columns in the vocabulary of a model, null if features are not built for a model.
+        final int[] symbolIds;
 
         public static final TurkishChunkFeatures START = new TurkishChunkFeatures("<s>");
         public static final TurkishChunkFeatures END = new TurkishChunkFeatures("<s>");
 
         TurkishChunkFeatures(String word, MorphParse parse) {
+            this(word, parse, null);
+        }
+
+        /**
+         * @param word    word.
+         * @param parse   selected parse of the word.
+         * @param symbols compiled templates of a model whose symbol ids are resolved. If null or the model is
+         *                hashed, no ids are resolved.
+         */
+        public TurkishChunkFeatures(String word, MorphParse parse, CompiledTemplates symbols) {
             this.word = word;
-            this.lemma = parse.dictionaryItem.lemma;
-            this.pos = parse.getPos().shortForm;
-            this.secPos = parse.dictionaryItem.secondaryPos.shortForm;
-            if (this.secPos.equals("Unk"))
-                this.secPos = "_";
-            if (parse.dictionaryItem.secondaryPos == SecondaryPos.ProperNoun)
-                pos = "Prop";
-            if (parse.getSuffixDataList().size() == 0) {
-                this.lastIg = "_";
+            this.parse = parse;
+            this.ig = lastIgCache.get(parse);
+            byte flags = 0;
+            if (Character.isUpperCase(word.charAt(0)))
+                flags |= FIRST_LETTER_CAPITAL;
+            if (word.indexOf('\'') >= 0)
+                flags |= CONTAINS_QUOTE;
+            this.flags = flags;
+            if (symbols == null || symbols.isHashed()) {
+                this.symbolIds = null;
             } else {
-                StringBuilder sb = new StringBuilder();
-                List<MorphParse.SuffixData> suffixList = parse.getLastIg().suffixList;
-                for (int j = 0; j < suffixList.size(); j++) {
-                    sb.append(suffixList.get(j).suffix.id);
-                    if (j < suffixList.size() - 1)
-                        sb.append("+");
-                }
-                this.lastIg = sb.toString();
-                if (this.lastIg.length() == 0)
-                    this.lastIg = "_";
-            }
-            this.firstLetterCapital = Character.isUpperCase(word.charAt(0));
-            this.containsQuote = word.contains("'");
-            if (word.length() > 3)
-                last3 = word.substring(word.length() - 3);
-            else
-                last3 = word;
-
-            plural = lastIg.contains("A3pl");
-            nounCase = "_";
-            for (String aCase : cases) {
-                if (lastIg.contains(aCase)) {
-                    nounCase = aCase;
-                    break;
+                this.symbolIds = new int[COLUMN_COUNT];
+                for (int i = 0; i < COLUMN_COUNT; i++) {
+                    symbolIds[i] = symbols.getSymbolId(getColumn(i));
                 }
             }
         }
 
-        static Set<String> cases = Sets.newHashSet("Dat", "Abl", "Acc", "Inst", "Loc", "Gen", "Nom");
-
         public TurkishChunkFeatures(String word) {
             this.word = word;
-            this.lemma = word;
-            this.lastIg = "NO_IG";
-            this.pos = "_";
-            this.secPos = "_";
-            this.last3 = "_";
-            this.nounCase = "_";
+            this.parse = null;
+            this.ig = null;
+            this.flags = 0;
+            this.symbolIds = null;
+        }
+
+        /**
+         * @return symbol ids of the column values in the model the features are built for, or null if they are not
+         *         built for a model.
+         */
+        public int[] getSymbolIds() {
+            return symbolIds;
+        }
+
+        /**
+         * @param column column index.
+         * @return value of the column.
+         */
+        public String getColumn(int column) {
+            switch (column) {
+                case 0:
+                    return word;
+                case 1:
+                    return parse == null ? word : parse.dictionaryItem.lemma;
+                case 2:
+                    if (parse == null)
+                        return NONE;
+                    if (parse.dictionaryItem.secondaryPos == SecondaryPos.ProperNoun)
+                        return "Prop";
+                    return parse.getPos().shortForm;
+                case 3:
+                    if (parse == null)
+                        return NONE;
+                    String secPos = parse.dictionaryItem.secondaryPos.shortForm;
+                    return secPos.equals("Unk") ? NONE : secPos;
+                case 4:
+                    return ig == null ? NO_IG : ig.lastIg;
+                case 5:
+                    return ig == null ? NONE : ig.nounCase;
+                case 6:
+                    if (parse == null)
+                        return NONE;
+                    return word.length() > 3 ? word.substring(word.length() - 3) : word;
+                case 7:
+                    return (flags & FIRST_LETTER_CAPITAL) != 0 ? TRUE : FALSE;
+                case 8:
+                    return (flags & CONTAINS_QUOTE) != 0 ? TRUE : FALSE;
+                default:
+                    throw new IndexOutOfBoundsException("Column " + column + " does not exist.");
+            }
+        }
+
+        /**
+         * @return read only view of the column values. Unlike {@link #getFeatureList()} nothing is copied.
+         */
+        public List<String> getColumns() {
+            return new AbstractList<String>() {
+                @Override
+                public String get(int index) {
+                    return getColumn(index);
+                }
+
+                @Override
+                public int size() {
+                    return COLUMN_COUNT;
+                }
+            };
+        }
+
+        public boolean isPlural() {
+            return ig != null && ig.plural;
         }
 
         public String featureString(String delimiter) {
-            return Joiner.on(delimiter).join(getFeatureList());
+            return Joiner.on(delimiter).join(getColumns());
         }
 
         public String featureString(String delimiter, String label) {
@@ -350,17 +604,7 @@ public class ChunkerAnnotationFeatureExtractor {
         }
 
         public List<String> getFeatureList() {
-            return Lists.newArrayList(
-                    word,
-                    lemma,
-                    pos,
-                    secPos,
-                    lastIg,
-                    nounCase,
-                    last3,
-                    String.valueOf(firstLetterCapital),
-                    String.valueOf(containsQuote)
-            );
+            return new ArrayList<>(getColumns());
         }
     }
 
@@ -368,7 +612,8 @@ public class ChunkerAnnotationFeatureExtractor {
         ChunkerAnnotationFeatureExtractor chunkerAnnotationFeatureExtractor = new ChunkerAnnotationFeatureExtractor(" ", false);
         chunkerAnnotationFeatureExtractor.generateFromAnnotationFile(
                 new File("data/chunker-annotated.txt"),
-                new File("data/chunk-single-features.txt")
+                new File("data/chunk-single-features.txt"),
+                Runtime.getRuntime().availableProcessors()
         );
         CrfTemplates templates = CrfTemplates.loadFromCrfPlusPlusTemplate(new File("crfplusplus/template_cemil"), "/");
         templates.generateFullFeatures(
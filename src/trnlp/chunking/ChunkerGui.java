@@ -1,8 +1,6 @@
 package trnlp.chunking;
 
 import com.google.common.base.Joiner;
-import trnlp.apps.TurkishMorphology;
-import trnlp.apps.TurkishSentenceTokenizer;
 import zemberek3.parser.morphology.SentenceMorphParse;
 
 import java.io.File;
@@ -50,9 +48,7 @@ public class ChunkerGui {
 
 class NewJFrame extends javax.swing.JFrame {
 
-    Chunker chunker;
-    TurkishSentenceTokenizer tokenizer = new TurkishSentenceTokenizer();
-    TurkishMorphology morphology;
+    ChunkingPipeline pipeline;
     boolean eliminatePunctuations = false;
 
     /**
@@ -60,15 +56,13 @@ class NewJFrame extends javax.swing.JFrame {
      */
     public NewJFrame(MalletBasedChunker chunker) throws IOException {
         initComponents();
-        this.chunker = chunker;
-        this.morphology = new TurkishMorphology();
+        this.pipeline = new ChunkingPipeline(chunker);
     }
 
 
     public NewJFrame(Chunker chunker, boolean eliminatePunctuations) throws IOException {
         initComponents();
-        this.chunker = chunker;
-        this.morphology = new TurkishMorphology();
+        this.pipeline = new ChunkingPipeline(chunker);
         this.eliminatePunctuations = eliminatePunctuations;
     }
 
@@ -143,19 +137,13 @@ class NewJFrame extends javax.swing.JFrame {
         if (eliminatePunctuations)
             input = ChunkerAnnotationFeatureExtractor.eliminatePunctuations(input);
 
-        String tokenized = tokenizer.getTokensContentsAsString(input);
-        List<String> tokenList = tokenizer.tokenizeAsStrings(input);
-        SentenceMorphParse parse = morphology.parseSentence(tokenized);
-        for (SentenceMorphParse.Entry entry : parse) {
-            System.out.println(entry.parses);
-        }
-        SentenceMorphParse disambiguated = morphology.parseAndDisambiguateSentence(tokenized);
-        for (SentenceMorphParse.Entry entry : disambiguated) {
+        ChunkingPipeline.Result result = pipeline.process(input);
+        for (SentenceMorphParse.Entry entry : result.parse) {
             System.out.println(entry.parses);
         }
 
-        System.out.println(chunker.getChunks(tokenList, disambiguated));
-        jLabel2.setText(getTurkish(chunker.getChunks(tokenList, disambiguated)));
+        System.out.println(result.chunks);
+        jLabel2.setText(getTurkish(result.chunks));
     }
 
     String getTurkish(List<Chunk> chunks) {
@@ -163,7 +151,7 @@ class NewJFrame extends javax.swing.JFrame {
         int i = 0;
         for (Chunk chunk : chunks) {
             String trType = "";
-            switch (chunk.type) {
+            switch (chunk.getType()) {
                 case ADJUNCT:
                     trType = "TÜMLEÇ";
                     break;
@@ -177,7 +165,7 @@ class NewJFrame extends javax.swing.JFrame {
                     trType = "NESNE";
                     break;
             }
-            builder.append(Joiner.on(" ").join(chunk.words)).append(" [");
+            builder.append(Joiner.on(" ").join(chunk.getWords())).append(" [");
             builder.append(trType).append("]");
             if (i < chunks.size() - 1)
                 builder.append(" / ");
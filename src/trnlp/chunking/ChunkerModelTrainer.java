@@ -0,0 +1,218 @@
+package trnlp.chunking;
+
+import cc.mallet.fst.CRF;
+import cc.mallet.pipe.Pipe;
+import cc.mallet.types.Instance;
+import cc.mallet.types.InstanceList;
+import cc.mallet.util.CommandOption;
+import org.jcaki.SimpleTextWriter;
+import trnlp.apps.CrfTemplates;
+import trnlp.apps.CrfTrainer;
+import trnlp.apps.FeatureHashing;
+import trnlp.apps.FeatureIndexPipe;
+import trnlp.apps.TurkishMorphology;
+
+import java.io.*;
+import java.util.List;
+
+/**
+ * Trains a chunking CRF model directly from the annotated corpus. Single word features of every sentence are
+ * extracted with {@link ChunkerAnnotationFeatureExtractor}, expanded with the templates and piped to a Mallet
+ * InstanceList in memory. So single and full feature files are neither written nor parsed again.
+ * <p/>
+ * Feature files can still be exported for debugging. Their content is the same with the files generated by
+ * {@link ChunkerAnnotationFeatureExtractor#generateFromAnnotationFile} and {@link CrfTemplates#generateFullFeatures}.
+ */
+public class ChunkerModelTrainer {
+
+    private static final CommandOption.File annotatedOption = new CommandOption.File
+            (ChunkerModelTrainer.class, "annotated-file", "FILENAME", true, new File("data/chunker-annotated.txt"),
+                    "Annotated sentences.", null);
+
+    private static final CommandOption.File templateOption = new CommandOption.File
+            (ChunkerModelTrainer.class, "template-file", "FILENAME", true, new File("crfplusplus/template_cemil"),
+                    "CRF++ template file.", null);
+
+    private static final CommandOption.File modelOption = new CommandOption.File
+            (ChunkerModelTrainer.class, "model-file", "FILENAME", true, null,
+                    "Trained model is serialized to this file.", null);
+
+    private static final CommandOption.Integer threadsOption = new CommandOption.Integer
+            (ChunkerModelTrainer.class, "threads", "INTEGER", true, Runtime.getRuntime().availableProcessors(),
+                    "Amount of threads for feature extraction.", null);
+
+    private static final CommandOption.Integer iterationsOption = new CommandOption.Integer
+            (ChunkerModelTrainer.class, "iterations", "INTEGER", true, 500,
+                    "Number of training iterations.", null);
+
+    private static final CommandOption.Double gaussianVarianceOption = new CommandOption.Double
+            (ChunkerModelTrainer.class, "gaussian-variance", "DECIMAL", true, 10.0,
+                    "The gaussian prior variance used for training.", null);
+
+    private static final CommandOption.Integer hashBitsOption = new CommandOption.Integer
+            (ChunkerModelTrainer.class, "hash-bits", "INTEGER", true, 0,
+                    "Hash features to 2^hash-bits buckets instead of keeping a feature dictionary. 0 disables hashing.", null);
+
+    private static final CommandOption.File singleFeaturesOption = new CommandOption.File
+            (ChunkerModelTrainer.class, "export-single-features", "FILENAME", true, null,
+                    "If given, single word features are also written to this file.", null);
+
+    private static final CommandOption.File fullFeaturesOption = new CommandOption.File
+            (ChunkerModelTrainer.class, "export-full-features", "FILENAME", true, null,
+                    "If given, full features are also written to this file.", null);
+
+    private static final CommandOption.Boolean morphologyPerThreadOption = new CommandOption.Boolean
+            (ChunkerModelTrainer.class, "morphology-per-thread", "true|false", true, true,
+                    "Every extraction thread loads its own morphology models. If false, threads share one, "
+                    + "which is not verified to be safe with Zemberek.", null);
+
+    private static final CommandOption.List commandOptions =
+            new CommandOption.List(
+                    "Trains a chunking model from annotated sentences.",
+                    new CommandOption[]{
+                            annotatedOption,
+                            templateOption,
+                            modelOption,
+                            threadsOption,
+                            iterationsOption,
+                            gaussianVarianceOption,
+                            hashBitsOption,
+                            singleFeaturesOption,
+                            fullFeaturesOption,
+                            morphologyPerThreadOption
+                    });
+
+    static final String DEFAULT_LABEL = "O";
+
+    final ChunkerAnnotationFeatureExtractor extractor;
+    final CrfTemplates templates;
+
+    public ChunkerModelTrainer(ChunkerAnnotationFeatureExtractor extractor, CrfTemplates templates) {
+        this.extractor = extractor;
+        this.templates = templates;
+    }
+
+    /**
+     * @param hashBits if positive, features are hashed to 2^hashBits buckets.
+     * @return a pipe that converts expanded sentences to feature vector sequences.
+     */
+    public static FeatureIndexPipe newPipe(int hashBits) {
+        FeatureIndexPipe pipe = hashBits > 0 ?
+                new FeatureIndexPipe(new FeatureHashing(hashBits)) :
+                new FeatureIndexPipe();
+        pipe.getTargetAlphabet().lookupIndex(DEFAULT_LABEL);
+        pipe.setTargetProcessing(true);
+        return pipe;
+    }
+
+    /**
+     * Generates training instances from annotated sentences.
+     *
+     * @param annotated          annotated sentence file.
+     * @param pipe               pipe of the instances.
+     * @param threadCount        amount of threads for feature extraction.
+     * @param singleFeatureFile  if not null, single word features are also written to this file.
+     * @param fullFeatureFile    if not null, full features are also written to this file.
+     * @return instances in the order of the annotated sentences.
+     * @throws IOException
+     */
+    public InstanceList generateInstances(File annotated, Pipe pipe, int threadCount,
+                                          File singleFeatureFile, File fullFeatureFile) throws IOException {
+        InstanceList instances = new InstanceList(pipe);
+        try (InstanceBuilder builder = new InstanceBuilder(templates, instances, singleFeatureFile,
+                fullFeatureFile, extractor.delimiter)) {
+            extractor.extract(annotated, threadCount, builder);
+        }
+        return instances;
+    }
+
+    /**
+     * Expands single word features of sentences with the templates and pipes them to an instance list. Optionally
+     * writes the single and full features of every sentence too.
+     */
+    public static class InstanceBuilder implements ChunkerAnnotationFeatureExtractor.SentenceHandler, Closeable {
+        final CrfTemplates templates;
+        final InstanceList instances;
+        final ChunkerAnnotationFeatureExtractor.SingleFeatureWriter singleFeatureWriter;
+        final SimpleTextWriter fullFeatureWriter;
+        final String delimiter;
+
+        public InstanceBuilder(CrfTemplates templates, InstanceList instances) throws IOException {
+            this(templates, instances, null, null, " ");
+        }
+
+        public InstanceBuilder(CrfTemplates templates, InstanceList instances, File singleFeatureFile,
+                               File fullFeatureFile, String delimiter) throws IOException {
+            this.templates = templates;
+            this.instances = instances;
+            this.delimiter = delimiter;
+            this.singleFeatureWriter = singleFeatureFile == null ? null :
+                    new ChunkerAnnotationFeatureExtractor.SingleFeatureWriter(singleFeatureFile, delimiter);
+            this.fullFeatureWriter = fullFeatureFile == null ? null :
+                    SimpleTextWriter.keepOpenUTF8Writer(fullFeatureFile);
+        }
+
+        @Override
+        public void handle(List<CrfTemplates.SingleWordFeature> features) throws IOException {
+            if (singleFeatureWriter != null)
+                singleFeatureWriter.handle(features);
+            String[][] tokens = templates.getFullFeatureTokens(features);
+            if (fullFeatureWriter != null)
+                writeFullFeatures(tokens);
+            instances.addThruPipe(new Instance(tokens, null, "sentence:" + instances.size(), null));
+        }
+
+        // sentences are separated with an empty line, same with CrfTemplates#generateFullFeatures
+        private void writeFullFeatures(String[][] tokens) throws IOException {
+            if (instances.size() > 0)
+                fullFeatureWriter.writeLine();
+            StringBuilder sb = new StringBuilder();
+            for (String[] row : tokens) {
+                sb.setLength(0);
+                for (int i = 0; i < row.length; i++) {
+                    if (i > 0)
+                        sb.append(delimiter);
+                    sb.append(row[i]);
+                }
+                fullFeatureWriter.writeLine(sb.toString());
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (singleFeatureWriter != null)
+                singleFeatureWriter.close();
+            if (fullFeatureWriter != null)
+                fullFeatureWriter.close();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        commandOptions.processOptions(args);
+        if (modelOption.value == null) {
+            commandOptions.printUsage(true);
+            throw new IllegalArgumentException("Missing model file.");
+        }
+        ChunkerModelTrainer trainer = new ChunkerModelTrainer(
+                new ChunkerAnnotationFeatureExtractor(new TurkishMorphology(TurkishMorphology.DEFAULT_CACHE_SIZE,
+                        morphologyPerThreadOption.value), " ", false),
+                CrfTemplates.loadFromCrfPlusPlusTemplate(templateOption.value, "/"));
+
+        FeatureIndexPipe pipe = newPipe(hashBitsOption.value);
+        long start = System.currentTimeMillis();
+        InstanceList instances = trainer.generateInstances(annotatedOption.value, pipe, threadsOption.value,
+                singleFeaturesOption.value, fullFeaturesOption.value);
+        System.out.println("Instances: " + instances.size() + " Features: " + pipe.getDataAlphabet().size()
+                + " Elapsed: " + (System.currentTimeMillis() - start) + " ms.");
+        FeatureHashing.CollisionStats collisions = pipe.getCollisionStats();
+        if (collisions != null)
+            System.out.println("Feature hashing: " + collisions);
+
+        CRF crf = CrfTrainer.train(instances, null, null, new int[]{1}, DEFAULT_LABEL, "\\s", ".*", true,
+                iterationsOption.value, gaussianVarianceOption.value, null);
+        try (ObjectOutputStream oos = new ObjectOutputStream(
+                new BufferedOutputStream(new FileOutputStream(modelOption.value)))) {
+            oos.writeObject(crf);
+        }
+    }
+}
@@ -3,10 +3,10 @@ package trnlp.chunking;
 import com.google.common.base.Joiner;
 import com.google.common.base.Splitter;
 import com.google.common.collect.Lists;
+import trnlp.apps.CrfPlusPlusModel;
 import trnlp.apps.CrfTemplates;
 import trnlp.apps.TurkishMorphology;
 import trnlp.apps.TurkishSentenceTokenizer;
-import zemberek3.parser.morphology.SentenceMorphParse;
 
 import java.io.File;
 import java.io.IOException;
@@ -15,30 +15,35 @@ import java.util.List;
 
 public class ChunkerTest {
 
-    Chunker chunker;
-    TurkishSentenceTokenizer tokenizer = new TurkishSentenceTokenizer();
-    TurkishMorphology morphology;
+    ChunkingPipeline pipeline;
+    TurkishSentenceTokenizer tokenizer;
 
     public ChunkerTest(Chunker chunker) throws IOException {
-        this.chunker = chunker;
-        this.morphology = new TurkishMorphology();
+        this.pipeline = new ChunkingPipeline(chunker);
+        this.tokenizer = pipeline.getTokenizer();
     }
 
-    public void test(File annotatedTestFile, String featureDelimiter) throws IOException {
+    public ChunkerTest(Chunker chunker, TurkishMorphology morphology) {
+        this.pipeline = new ChunkingPipeline(chunker, morphology);
+        this.tokenizer = pipeline.getTokenizer();
+    }
+
+    /**
+     * Chunks sentences of an annotated file and compares labels of the words with the annotations.
+     *
+     * @param annotatedTestFile annotated sentences.
+     * @param featureDelimiter  feature delimiter of the extractor.
+     * @return ratio of the words with correct labels.
+     * @throws IOException
+     */
+    public double test(File annotatedTestFile, String featureDelimiter) throws IOException {
         // Extract the reference chunk information from the test.
         ChunkerAnnotationFeatureExtractor extractor = new ChunkerAnnotationFeatureExtractor(featureDelimiter, false);
         List<List<ChunkerAnnotationFeatureExtractor.ChunkData>> reference =
                 Lists.newArrayList(extractor.getProperLines(annotatedTestFile));
 
         // Extract bare sentences for test
-        List<String> cleanSentences = new ArrayList<>();
-        for (List<ChunkerAnnotationFeatureExtractor.ChunkData> chunks : reference) {
-            List<String> allWords = new ArrayList<>();
-            for (ChunkerAnnotationFeatureExtractor.ChunkData chunkData : chunks) {
-                allWords.add(chunkData.wordsBlock);
-            }
-            cleanSentences.add(Joiner.on(" ").join(allWords));
-        }
+        List<String> cleanSentences = cleanSentences(reference);
 
         System.out.println();
 
@@ -51,7 +56,7 @@ public class ChunkerTest {
             List<Chunk> chunks = findChunks(sentence);
             List<String> resultLabels = new ArrayList<>();
             for (Chunk chunk : chunks) {
-                for (String s : chunk.words) {
+                for (int j = 0; j < chunk.size(); j++) {
                     resultLabels.add(chunk.type.label);
                 }
             }
@@ -77,29 +82,64 @@ public class ChunkerTest {
 
         System.out.println("Total : " + total);
         System.out.println("Hit   : " + hit);
-        System.out.format("%.2f", (double) hit / (double) total);
+        System.out.format("%.2f%n", (double) hit / (double) total);
+        return (double) hit / (double) total;
+    }
+
+    /**
+     * @param annotatedFile    annotated sentences.
+     * @param featureDelimiter feature delimiter of the extractor.
+     * @return sentences without annotations.
+     * @throws IOException
+     */
+    static List<String> loadSentences(File annotatedFile, String featureDelimiter) throws IOException {
+        ChunkerAnnotationFeatureExtractor extractor = new ChunkerAnnotationFeatureExtractor(featureDelimiter, false);
+        return cleanSentences(Lists.newArrayList(extractor.getProperLines(annotatedFile)));
+    }
+
+    private static List<String> cleanSentences(List<List<ChunkerAnnotationFeatureExtractor.ChunkData>> reference) {
+        List<String> cleanSentences = new ArrayList<>();
+        for (List<ChunkerAnnotationFeatureExtractor.ChunkData> chunks : reference) {
+            List<String> allWords = new ArrayList<>();
+            for (ChunkerAnnotationFeatureExtractor.ChunkData chunkData : chunks) {
+                allWords.add(chunkData.wordsBlock);
+            }
+            cleanSentences.add(Joiner.on(" ").join(allWords));
+        }
+        return cleanSentences;
     }
 
     List<Chunk> findChunks(String input) {
-        // Run the test.
-        String tokenized = tokenizer.getTokensContentsAsString(input);
-        List<String> tokenList = tokenizer.tokenizeAsStrings(input);
-        SentenceMorphParse disambiguated = morphology.parseAndDisambiguateSentence(tokenized);
-        return chunker.getChunks(tokenList, disambiguated);
+        return pipeline.getChunks(input);
     }
 
 
+    /**
+     * Compares the Mallet model with CRF++ models on the test sentences. CRF++ models are not in the repository,
+     * they are generated with "crf_learn -t" from the same training data.
+     *
+     * @param args CRF++ model file for crf_test and its text model, optional.
+     */
     public static void main(String[] args) throws IOException {
         Chunker malletChunker = new MalletBasedChunker(
-                new File("src/tr/models/chunk.ser"),
+                new File("src/tr/models/chunk-model.ser"),
                 CrfTemplates.loadFromCrfPlusPlusTemplate(new File("crfplusplus/template_cemil"), "/"));
-
-        Chunker crfPlusPlusBasedChunker = new CrfPlusPlusBasedChunker(new File("data/chunk-model-crfpp.ser"));
-
         ChunkerTest chunkerTest = new ChunkerTest(malletChunker);
         chunkerTest.test(new File("data/chunker-test.txt"), " ");
-        ChunkerTest chunkerTest2 = new ChunkerTest(crfPlusPlusBasedChunker);
-        chunkerTest2.test(new File("data/chunker-test.txt"), " ");
+        if (args.length < 2) {
+            System.out.println("Usage: ChunkerTest [crf++ model] [crf++ text model]");
+            return;
+        }
+
+        try (CrfPlusPlusBasedChunker crfPlusPlusBasedChunker = new CrfPlusPlusBasedChunker(new File(args[0]))) {
+            ChunkerTest chunkerTest2 = new ChunkerTest(crfPlusPlusBasedChunker);
+            chunkerTest2.test(new File("data/chunker-test.txt"), " ");
+        }
+
+        // Same CRF++ model decoded in JVM.
+        Chunker javaCrfPlusPlusChunker = new CrfPlusPlusBasedChunker(CrfPlusPlusModel.loadTextModel(new File(args[1])));
+        ChunkerTest chunkerTest3 = new ChunkerTest(javaCrfPlusPlusChunker);
+        chunkerTest3.test(new File("data/chunker-test.txt"), " ");
     }
 
 }
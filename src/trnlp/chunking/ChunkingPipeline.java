@@ -0,0 +1,155 @@
+package trnlp.chunking;
+
+import trnlp.apps.TurkishMorphology;
+import trnlp.apps.TurkishSentenceTokenizer;
+import zemberek3.parser.morphology.SentenceMorphParse;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Entry point for chunking raw sentences. A sentence is tokenized once, and the same token list is used for
+ * morphological analysis and chunking. So the i'th entry of the parse always belongs to the i'th token.
+ * <pre>
+ * ChunkingPipeline pipeline = new ChunkingPipeline(chunker);
+ * List&lt;Chunk&gt; chunks = pipeline.getChunks("Ahmet öğleden sonra çay demledi.");
+ * </pre>
+ */
+public class ChunkingPipeline {
+
+    final TurkishSentenceTokenizer tokenizer;
+    final TurkishMorphology morphology;
+    final Chunker chunker;
+
+    /**
+     * Creates a pipeline with default tokenizer and morphology.
+     *
+     * @param chunker chunker to use.
+     * @throws IOException if morphology data cannot be loaded.
+     */
+    public ChunkingPipeline(Chunker chunker) throws IOException {
+        this(new TurkishSentenceTokenizer(), new TurkishMorphology(), chunker);
+    }
+
+    /**
+     * @param chunker    chunker to use.
+     * @param morphology morphology to use. It can be shared between pipelines.
+     */
+    public ChunkingPipeline(Chunker chunker, TurkishMorphology morphology) {
+        this(new TurkishSentenceTokenizer(), morphology, chunker);
+    }
+
+    public ChunkingPipeline(TurkishSentenceTokenizer tokenizer, TurkishMorphology morphology, Chunker chunker) {
+        this.tokenizer = tokenizer;
+        this.morphology = morphology;
+        this.chunker = chunker;
+    }
+
+    /**
+     * Tokenizes, parses, disambiguates and chunks a sentence.
+     *
+     * @param sentence input sentence.
+     * @return tokens, disambiguated parse and chunks of the sentence.
+     */
+    public Result process(String sentence) {
+        List<String> tokens = tokenizer.tokenizeAsStrings(sentence);
+        SentenceMorphParse parse = morphology.parseAndDisambiguateSentence(tokens);
+        List<Chunk> chunks = chunker.getChunks(tokens, parse);
+        int[] offsets = findTokenOffsets(sentence, tokens);
+        for (Chunk chunk : chunks) {
+            chunk.setTokenOffsets(offsets);
+        }
+        return new Result(tokens, parse, chunks);
+    }
+
+    /**
+     * Finds character offsets of tokens in the sentence. Tokens are searched in order. If a token cannot be found
+     * in the sentence, its offsets are both the end of the previous token.
+     *
+     * @param sentence input sentence.
+     * @param tokens   tokens of the sentence.
+     * @return start and end offsets of tokens as [start0, end0, start1, end1 ...]
+     */
+    static int[] findTokenOffsets(String sentence, List<String> tokens) {
+        int[] offsets = new int[tokens.size() * 2];
+        int position = 0;
+        for (int i = 0; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            int index = sentence.indexOf(token, position);
+            if (index >= 0) {
+                offsets[i * 2] = index;
+                position = index + token.length();
+            } else {
+                offsets[i * 2] = position;
+            }
+            offsets[i * 2 + 1] = position;
+        }
+        return offsets;
+    }
+
+    /**
+     * Processes sentences stage by stage. All sentences are tokenized first, then parsed, then chunked, so code and
+     * data of each stage stay warm for the whole batch.
+     *
+     * @param sentences input sentences.
+     * @return results in the same order with sentences.
+     */
+    public List<Result> process(List<String> sentences) {
+        List<List<String>> tokenLists = new ArrayList<>(sentences.size());
+        for (String sentence : sentences) {
+            tokenLists.add(tokenizer.tokenizeAsStrings(sentence));
+        }
+        List<SentenceMorphParse> parses = new ArrayList<>(sentences.size());
+        for (List<String> tokens : tokenLists) {
+            parses.add(morphology.parseAndDisambiguateSentence(tokens));
+        }
+        List<Result> results = new ArrayList<>(sentences.size());
+        for (int i = 0; i < sentences.size(); i++) {
+            List<Chunk> chunks = chunker.getChunks(tokenLists.get(i), parses.get(i));
+            int[] offsets = findTokenOffsets(sentences.get(i), tokenLists.get(i));
+            for (Chunk chunk : chunks) {
+                chunk.setTokenOffsets(offsets);
+            }
+            results.add(new Result(tokenLists.get(i), parses.get(i), chunks));
+        }
+        return results;
+    }
+
+    /**
+     * @param sentence input sentence.
+     * @return chunks of the sentence.
+     */
+    public List<Chunk> getChunks(String sentence) {
+        return process(sentence).chunks;
+    }
+
+    public TurkishSentenceTokenizer getTokenizer() {
+        return tokenizer;
+    }
+
+    public TurkishMorphology getMorphology() {
+        return morphology;
+    }
+
+    public Chunker getChunker() {
+        return chunker;
+    }
+
+    public static class Result {
+        public final List<String> tokens;
+        public final SentenceMorphParse parse;
+        public final List<Chunk> chunks;
+
+        public Result(List<String> tokens, SentenceMorphParse parse, List<Chunk> chunks) {
+            this.tokens = tokens;
+            this.parse = parse;
+            this.chunks = chunks;
+        }
+
+        @Override
+        public String toString() {
+            return chunks.toString();
+        }
+    }
+}
@@ -0,0 +1,429 @@
+package trnlp.chunking;
+
+import cc.mallet.util.CommandOption;
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import trnlp.apps.CrfPlusPlusModel;
+import trnlp.apps.CrfTemplates;
+import trnlp.apps.TurkishMorphology;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A chunking server on the loopback interface, so many local services can share one loaded model stack.
+ * <p/>
+ * Protocol is line based and UTF-8. Client sends one sentence per line and receives one line for each sentence,
+ * in the same order:
+ * <pre>
+ * OK [Ali:SUBJECT] [eve:ADJUNCT] [geldi.:VERB]
+ * BUSY
+ * ERROR reason
+ * </pre>
+ * Sentences are put to a bounded queue. If the queue is full, request is rejected immediately with BUSY instead of
+ * waiting, so callers can back off or go elsewhere. Worker threads take sentences from the queue in micro-batches:
+ * a worker waits for the first sentence, then collects more until the batch is full or maximum wait time passes
+ * after the first sentence. A batch is processed stage by stage with {@link ChunkingPipeline#process(List)}.
+ */
+public class ChunkingServer implements Closeable {
+
+    final ChunkingPipeline pipeline;
+    final int workerCount;
+    final int maxBatchSize;
+    final long maxWaitNanos;
+    final int maxConnections;
+    final BlockingQueue<Request> queue;
+
+    ServerSocket serverSocket;
+    ExecutorService workers;
+    ExecutorService connections;
+    Thread acceptor;
+    volatile boolean running;
+
+    final Stats stats = new Stats();
+
+    /**
+     * @param pipeline       chunking pipeline. It is used by all workers.
+     * @param workerCount    amount of worker threads.
+     * @param maxBatchSize   maximum amount of sentences in a batch.
+     * @param maxWaitMillis  maximum time a worker waits for filling a batch after its first sentence.
+     * @param queueSize      maximum amount of sentences waiting in the queue.
+     * @param maxConnections maximum amount of client connections. Extra connections get BUSY and are closed.
+     */
+    public ChunkingServer(ChunkingPipeline pipeline, int workerCount, int maxBatchSize, long maxWaitMillis,
+                          int queueSize, int maxConnections) {
+        if (workerCount < 1 || maxBatchSize < 1 || queueSize < 1 || maxConnections < 1)
+            throw new IllegalArgumentException("Worker count, batch size, queue size and connection count must be positive.");
+        if (maxWaitMillis < 0)
+            throw new IllegalArgumentException("Maximum wait time cannot be negative. But it is " + maxWaitMillis);
+        this.pipeline = pipeline;
+        this.workerCount = workerCount;
+        this.maxBatchSize = maxBatchSize;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        this.maxConnections = maxConnections;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+    }
+
+    /**
+     * Starts listening on the loopback interface.
+     *
+     * @param port port number. If 0, a free port is used.
+     * @throws IOException if port cannot be bound.
+     */
+    public synchronized void start(int port) throws IOException {
+        if (running)
+            throw new IllegalStateException("Server is already started.");
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        running = true;
+        workers = Executors.newFixedThreadPool(workerCount);
+        for (int i = 0; i < workerCount; i++) {
+            workers.submit(new BatchWorker());
+        }
+        connections = new ThreadPoolExecutor(maxConnections, maxConnections, 0, TimeUnit.MILLISECONDS,
+                new SynchronousQueue<Runnable>());
+        acceptor = new Thread(new Acceptor(), "chunking-server-acceptor");
+        acceptor.start();
+    }
+
+    /**
+     * @return port the server listens to.
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public Stats getStats() {
+        return stats;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!running)
+            return;
+        running = false;
+        serverSocket.close();
+        connections.shutdownNow();
+        workers.shutdownNow();
+        // waiting requests are answered so that connection threads do not wait forever.
+        List<Request> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        for (Request request : remaining) {
+            request.complete("ERROR server is closing");
+        }
+    }
+
+    /**
+     * Submits a sentence to the queue.
+     *
+     * @param sentence sentence.
+     * @return request, or null if the queue is full.
+     */
+    Request submit(String sentence) {
+        Request request = new Request(sentence);
+        if (!queue.offer(request)) {
+            stats.rejected.incrementAndGet();
+            return null;
+        }
+        stats.accepted.incrementAndGet();
+        return request;
+    }
+
+    /**
+     * Chunks a batch of sentences.
+     *
+     * @param sentences non empty sentences.
+     * @return response line for each sentence, without the OK prefix.
+     */
+    List<String> chunk(List<String> sentences) {
+        List<String> lines = new ArrayList<>(sentences.size());
+        for (ChunkingPipeline.Result result : pipeline.process(sentences)) {
+            lines.add(Joiner.on(" ").join(result.chunks));
+        }
+        return lines;
+    }
+
+    void process(List<Request> batch) {
+        stats.batches.incrementAndGet();
+        stats.batchedSentences.addAndGet(batch.size());
+        List<String> sentences = new ArrayList<>(batch.size());
+        for (Request request : batch) {
+            sentences.add(request.sentence);
+        }
+        try {
+            List<String> lines = chunk(sentences);
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).complete("OK " + lines.get(i));
+            }
+        } catch (Exception e) {
+            if (batch.size() == 1) {
+                stats.failed.incrementAndGet();
+                batch.get(0).complete("ERROR " + String.valueOf(e.getMessage()).replace('\n', ' '));
+                return;
+            }
+            // find the failing sentences by processing them one by one.
+            for (Request request : batch) {
+                process(Collections.singletonList(request));
+            }
+        }
+    }
+
+    static class Request {
+        final String sentence;
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile String response;
+
+        Request(String sentence) {
+            this.sentence = sentence;
+        }
+
+        void complete(String response) {
+            this.response = response;
+            done.countDown();
+        }
+
+        String await() throws InterruptedException {
+            done.await();
+            return response;
+        }
+    }
+
+    class BatchWorker implements Runnable {
+        @Override
+        public void run() {
+            List<Request> batch = new ArrayList<>(maxBatchSize);
+            try {
+                while (running) {
+                    batch.add(queue.take());
+                    long deadline = System.nanoTime() + maxWaitNanos;
+                    while (batch.size() < maxBatchSize) {
+                        // take what is already waiting without blocking, then wait until the deadline.
+                        if (queue.drainTo(batch, maxBatchSize - batch.size()) > 0)
+                            continue;
+                        long remaining = deadline - System.nanoTime();
+                        if (remaining <= 0)
+                            break;
+                        Request request = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                        if (request == null)
+                            break;
+                        batch.add(request);
+                    }
+                    process(batch);
+                    batch.clear();
+                }
+            } catch (InterruptedException e) {
+                for (Request request : batch) {
+                    request.complete("ERROR server is closing");
+                }
+            }
+        }
+    }
+
+    class Acceptor implements Runnable {
+        @Override
+        public void run() {
+            while (running) {
+                Socket socket;
+                try {
+                    socket = serverSocket.accept();
+                } catch (IOException e) {
+                    if (running)
+                        System.err.println("Cannot accept connection: " + e);
+                    continue;
+                }
+                try {
+                    connections.submit(new Connection(socket));
+                } catch (RejectedExecutionException e) {
+                    stats.rejectedConnections.incrementAndGet();
+                    try (Writer writer = new OutputStreamWriter(socket.getOutputStream(), Charsets.UTF_8)) {
+                        writer.write("BUSY\n");
+                    } catch (IOException ignored) {
+                    }
+                    closeQuietly(socket);
+                }
+            }
+        }
+    }
+
+    class Connection implements Runnable {
+        final Socket socket;
+
+        Connection(Socket socket) {
+            this.socket = socket;
+        }
+
+        @Override
+        public void run() {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), Charsets.UTF_8));
+                 Writer writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), Charsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String sentence = line.trim();
+                    String response;
+                    if (sentence.length() == 0) {
+                        response = "OK ";
+                    } else {
+                        Request request = submit(sentence);
+                        response = request == null ? "BUSY" : request.await();
+                    }
+                    writer.write(response);
+                    writer.write('\n');
+                    // more lines may be waiting, flush only when the client waits for responses.
+                    if (!reader.ready())
+                        writer.flush();
+                }
+            } catch (SocketException e) {
+                // client closed the connection or server is closing.
+            } catch (IOException e) {
+                System.err.println("Connection error: " + e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                closeQuietly(socket);
+            }
+        }
+    }
+
+    static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    public static class Stats {
+        final AtomicLong accepted = new AtomicLong();
+        final AtomicLong rejected = new AtomicLong();
+        final AtomicLong rejectedConnections = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+        final AtomicLong batches = new AtomicLong();
+        final AtomicLong batchedSentences = new AtomicLong();
+
+        public long getAcceptedCount() {
+            return accepted.get();
+        }
+
+        public long getRejectedCount() {
+            return rejected.get();
+        }
+
+        public long getRejectedConnectionCount() {
+            return rejectedConnections.get();
+        }
+
+        public long getFailedCount() {
+            return failed.get();
+        }
+
+        public long getBatchCount() {
+            return batches.get();
+        }
+
+        public double getAverageBatchSize() {
+            long b = batches.get();
+            return b == 0 ? 0 : (double) batchedSentences.get() / b;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("accepted=%d rejected=%d rejectedConnections=%d failed=%d batches=%d averageBatch=%.2f",
+                    getAcceptedCount(), getRejectedCount(), getRejectedConnectionCount(), getFailedCount(),
+                    getBatchCount(), getAverageBatchSize());
+        }
+    }
+
+    private static final CommandOption.File modelOption = new CommandOption.File
+            (ChunkingServer.class, "model-file", "FILENAME", true, null,
+                    "Chunker model. Mallet model, binary model or CRF++ text model.", null);
+
+    private static final CommandOption.String modelTypeOption = new CommandOption.String
+            (ChunkingServer.class, "model-type", "mallet|crfpp", true, "mallet",
+                    "Type of the model. crfpp is a text model generated with crf_learn -t", null);
+
+    private static final CommandOption.File templateOption = new CommandOption.File
+            (ChunkingServer.class, "template-file", "FILENAME", true, new File("crfplusplus/template_cemil"),
+                    "CRF++ template file used for training a Mallet model.", null);
+
+    private static final CommandOption.Integer portOption = new CommandOption.Integer
+            (ChunkingServer.class, "port", "INTEGER", true, 4444,
+                    "Port on the loopback interface.", null);
+
+    private static final CommandOption.Integer workersOption = new CommandOption.Integer
+            (ChunkingServer.class, "workers", "INTEGER", true, Runtime.getRuntime().availableProcessors(),
+                    "Number of worker threads.", null);
+
+    private static final CommandOption.Integer batchOption = new CommandOption.Integer
+            (ChunkingServer.class, "max-batch", "INTEGER", true, 16,
+                    "Maximum number of sentences in a batch.", null);
+
+    private static final CommandOption.Integer waitOption = new CommandOption.Integer
+            (ChunkingServer.class, "max-wait-ms", "INTEGER", true, 2,
+                    "Maximum milliseconds to wait for filling a batch.", null);
+
+    private static final CommandOption.Integer queueOption = new CommandOption.Integer
+            (ChunkingServer.class, "queue-size", "INTEGER", true, 1024,
+                    "Maximum number of waiting sentences. Requests are rejected with BUSY when it is full.", null);
+
+    private static final CommandOption.Integer connectionsOption = new CommandOption.Integer
+            (ChunkingServer.class, "max-connections", "INTEGER", true, 256,
+                    "Maximum number of client connections.", null);
+
+    private static final CommandOption.Boolean morphologyPerThreadOption = new CommandOption.Boolean
+            (ChunkingServer.class, "morphology-per-thread", "true|false", true, true,
+                    "Every worker thread loads its own morphology models. If false, threads share one, "
+                    + "which is not verified to be safe with Zemberek.", null);
+
+    private static final CommandOption.List commandOptions =
+            new CommandOption.List(
+                    "Serves chunking requests on the loopback interface.",
+                    new CommandOption[]{
+                            modelOption,
+                            modelTypeOption,
+                            templateOption,
+                            portOption,
+                            workersOption,
+                            batchOption,
+                            waitOption,
+                            queueOption,
+                            connectionsOption,
+                            morphologyPerThreadOption
+                    });
+
+    public static void main(String[] args) throws IOException {
+        commandOptions.processOptions(args);
+        if (modelOption.value == null) {
+            commandOptions.printUsage(true);
+            throw new IllegalArgumentException("Missing model file.");
+        }
+        Chunker chunker;
+        if (modelTypeOption.value.equals("crfpp"))
+            chunker = new CrfPlusPlusBasedChunker(CrfPlusPlusModel.loadTextModel(modelOption.value));
+        else
+            chunker = new MalletBasedChunker(modelOption.value,
+                    CrfTemplates.loadFromCrfPlusPlusTemplate(templateOption.value, "/"));
+
+        TurkishMorphology morphology = new TurkishMorphology(TurkishMorphology.DEFAULT_CACHE_SIZE,
+                morphologyPerThreadOption.value);
+        final ChunkingServer server = new ChunkingServer(new ChunkingPipeline(chunker, morphology),
+                workersOption.value, batchOption.value, waitOption.value, queueOption.value, connectionsOption.value);
+        server.start(portOption.value);
+        System.out.println("Chunking server is listening on port " + server.getPort());
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                try {
+                    server.close();
+                } catch (IOException ignored) {
+                }
+                System.out.println(server.getStats());
+            }
+        });
+    }
+}
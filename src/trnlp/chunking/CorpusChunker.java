@@ -0,0 +1,359 @@
+package trnlp.chunking;
+
+import cc.mallet.util.CommandOption;
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import trnlp.apps.CrfPlusPlusModel;
+import trnlp.apps.CrfTemplates;
+import trnlp.apps.TurkishMorphology;
+import trnlp.apps.TurkishSentenceTokenizer;
+import trnlp.metrics.DefaultChunkingMetrics;
+import trnlp.metrics.MetricsRegistry;
+
+import java.io.*;
+import java.text.BreakIterator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.*;
+
+/**
+ * Chunks large corpora with multiple threads. Input is read as a stream, one sentence per line or sentences found
+ * in each line, and chunks are written in input order. Only a fixed amount of sentences are in flight at any time,
+ * so memory use does not depend on the input size.
+ * <p/>
+ * Sentences are submitted to a thread pool and their futures are put to a bounded queue in reading order. A writer
+ * thread takes futures from the queue one by one and waits for each, so the queue works as a reorder buffer. When
+ * the queue is full, reading blocks until writer catches up.
+ * <p/>
+ * All worker threads share one {@link ChunkingPipeline}, so the chunker model is loaded only once. Morphology models
+ * are loaded per thread unless sharing is asked, see {@link TurkishMorphology}.
+ */
+public class CorpusChunker {
+
+    public enum Unit {
+        LINE, SENTENCE
+    }
+
+    final Chunker chunker;
+    final TurkishMorphology morphology;
+    final int threadCount;
+    final int window;
+    final Unit unit;
+    final int reportInterval;
+
+    final ChunkingPipeline pipeline;
+
+    /**
+     * @param chunker        chunker.
+     * @param morphology     morphology.
+     * @param threadCount    amount of worker threads.
+     * @param window         maximum amount of sentences that are read but not written yet.
+     * @param unit           if LINE, every line is a sentence. If SENTENCE, lines are split to sentences.
+     * @param reportInterval progress is reported after this amount of sentences. 0 disables reporting.
+     */
+    public CorpusChunker(Chunker chunker, TurkishMorphology morphology, int threadCount, int window, Unit unit,
+                         int reportInterval) {
+        if (threadCount < 1)
+            throw new IllegalArgumentException("Thread count must be positive. But it is " + threadCount);
+        if (window < threadCount)
+            throw new IllegalArgumentException("Window " + window + " must not be smaller than thread count " + threadCount);
+        this.chunker = chunker;
+        this.morphology = morphology;
+        this.threadCount = threadCount;
+        this.window = window;
+        this.unit = unit;
+        this.reportInterval = reportInterval;
+        this.pipeline = new ChunkingPipeline(new TurkishSentenceTokenizer(), morphology, chunker);
+    }
+
+    /**
+     * Chunks all sentences of the input and writes one line for each sentence. Output line contains the chunks of
+     * the sentence separated with spaces. Empty input lines in LINE mode and sentences that cannot be chunked
+     * produce empty lines.
+     *
+     * @param reader input.
+     * @param writer output.
+     * @return statistics of the run.
+     * @throws IOException if reading or writing fails.
+     */
+    public Stats process(BufferedReader reader, Writer writer) throws IOException {
+        final BlockingQueue<Future<String>> pending = new ArrayBlockingQueue<>(window);
+        final Stats stats = new Stats();
+        final ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        OrderedWriter orderedWriter = new OrderedWriter(pending, writer, stats);
+        Thread writerThread = new Thread(orderedWriter, "corpus-chunker-writer");
+        writerThread.start();
+        try {
+            String line;
+            long index = 0;
+            while ((line = reader.readLine()) != null && orderedWriter.error == null) {
+                if (unit == Unit.LINE) {
+                    pending.put(executor.submit(new ChunkTask(line.trim(), index++)));
+                } else {
+                    for (String sentence : splitSentences(line)) {
+                        pending.put(executor.submit(new ChunkTask(sentence, index++)));
+                    }
+                }
+            }
+            pending.put(END);
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            writerThread.interrupt();
+            throw new InterruptedIOException("Interrupted while chunking.");
+        } finally {
+            executor.shutdownNow();
+        }
+        if (orderedWriter.error != null)
+            throw orderedWriter.error;
+        stats.finish();
+        return stats;
+    }
+
+    /**
+     * @param sentence a non empty sentence.
+     * @return output line of the sentence.
+     */
+    String chunk(String sentence) {
+        return Joiner.on(" ").join(pipeline.getChunks(sentence));
+    }
+
+    static List<String> splitSentences(String line) {
+        List<String> sentences = new ArrayList<>();
+        BreakIterator iterator = BreakIterator.getSentenceInstance(new Locale("tr"));
+        iterator.setText(line);
+        int start = iterator.first();
+        for (int end = iterator.next(); end != BreakIterator.DONE; start = end, end = iterator.next()) {
+            String sentence = line.substring(start, end).trim();
+            if (sentence.length() > 0)
+                sentences.add(sentence);
+        }
+        return sentences;
+    }
+
+    // marks the end of input in pending queue.
+    static final Future<String> END = new FutureTask<>(new Callable<String>() {
+        @Override
+        public String call() {
+            return null;
+        }
+    });
+
+    class ChunkTask implements Callable<String> {
+        final String sentence;
+        final long index;
+
+        ChunkTask(String sentence, long index) {
+            this.sentence = sentence;
+            this.index = index;
+        }
+
+        @Override
+        public String call() {
+            if (sentence.length() == 0)
+                return "";
+            try {
+                return chunk(sentence);
+            } catch (Exception e) {
+                System.err.println("Cannot chunk sentence " + index + " [" + sentence + "] : " + e);
+                return null;
+            }
+        }
+    }
+
+    class OrderedWriter implements Runnable {
+        final BlockingQueue<Future<String>> pending;
+        final Writer writer;
+        final Stats stats;
+        volatile IOException error;
+
+        OrderedWriter(BlockingQueue<Future<String>> pending, Writer writer, Stats stats) {
+            this.pending = pending;
+            this.writer = writer;
+            this.stats = stats;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    Future<String> future = pending.take();
+                    if (future == END)
+                        break;
+                    // after an error, remaining sentences are discarded so that reader is not blocked.
+                    if (error != null) {
+                        future.cancel(true);
+                        continue;
+                    }
+                    try {
+                        write(future.get());
+                    } catch (IOException e) {
+                        error = e;
+                    } catch (ExecutionException e) {
+                        error = new IOException(e.getCause());
+                    }
+                }
+                if (error == null)
+                    writer.flush();
+            } catch (IOException e) {
+                error = e;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void write(String result) throws IOException {
+            if (result == null)
+                stats.failed++;
+            writer.write(result == null ? "" : result);
+            writer.write('\n');
+            stats.sentences++;
+            if (reportInterval > 0 && stats.sentences % reportInterval == 0)
+                System.err.println(stats);
+        }
+    }
+
+    public static class Stats {
+        final long start = System.nanoTime();
+        long end;
+        volatile long sentences;
+        volatile long failed;
+
+        void finish() {
+            end = System.nanoTime();
+        }
+
+        public long getSentenceCount() {
+            return sentences;
+        }
+
+        public long getFailedCount() {
+            return failed;
+        }
+
+        public double getSeconds() {
+            return ((end == 0 ? System.nanoTime() : end) - start) / 1e9;
+        }
+
+        public double getSentencesPerSecond() {
+            double seconds = getSeconds();
+            return seconds == 0 ? 0 : sentences / seconds;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("sentences=%d failed=%d time=%.1fs speed=%.1f sentences/s",
+                    sentences, failed, getSeconds(), getSentencesPerSecond());
+        }
+    }
+
+    private static final CommandOption.File modelOption = new CommandOption.File
+            (CorpusChunker.class, "model-file", "FILENAME", true, null,
+                    "Chunker model. Mallet model, binary model or CRF++ text model.", null);
+
+    private static final CommandOption.String modelTypeOption = new CommandOption.String
+            (CorpusChunker.class, "model-type", "mallet|crfpp", true, "mallet",
+                    "Type of the model. crfpp is a text model generated with crf_learn -t", null);
+
+    private static final CommandOption.File templateOption = new CommandOption.File
+            (CorpusChunker.class, "template-file", "FILENAME", true, new File("crfplusplus/template_cemil"),
+                    "CRF++ template file used for training a Mallet model.", null);
+
+    private static final CommandOption.File outputOption = new CommandOption.File
+            (CorpusChunker.class, "output", "FILENAME", true, null,
+                    "Output file. Default is standard output.", null);
+
+    private static final CommandOption.Integer threadsOption = new CommandOption.Integer
+            (CorpusChunker.class, "threads", "INTEGER", true, Runtime.getRuntime().availableProcessors(),
+                    "Number of worker threads.", null);
+
+    private static final CommandOption.Integer windowOption = new CommandOption.Integer
+            (CorpusChunker.class, "window", "INTEGER", true, 0,
+                    "Maximum number of sentences in flight. Default is 64 times thread count.", null);
+
+    private static final CommandOption.String unitOption = new CommandOption.String
+            (CorpusChunker.class, "unit", "line|sentence", true, "line",
+                    "line: every line is a sentence. sentence: lines are split to sentences.", null);
+
+    private static final CommandOption.Integer reportOption = new CommandOption.Integer
+            (CorpusChunker.class, "report-interval", "INTEGER", true, 10000,
+                    "Report progress after this many sentences. 0 disables.", null);
+
+    private static final CommandOption.Integer beamWidthOption = new CommandOption.Integer
+            (CorpusChunker.class, "beam-width", "INTEGER", true, 0,
+                    "Decode with beam search of this width. 0 uses exact Viterbi search. Only for mallet models.", null);
+
+    private static final CommandOption.Double beamThresholdOption = new CommandOption.Double
+            (CorpusChunker.class, "beam-threshold", "DECIMAL", true, Double.POSITIVE_INFINITY,
+                    "Beam search drops paths that score lower than the best one by more than this.", null);
+
+    private static final CommandOption.Boolean metricsOption = new CommandOption.Boolean
+            (CorpusChunker.class, "metrics", "true|false", true, false,
+                    "Collect per stage latencies and print them at the end.", null);
+
+    private static final CommandOption.Boolean morphologyPerThreadOption = new CommandOption.Boolean
+            (CorpusChunker.class, "morphology-per-thread", "true|false", true, true,
+                    "Every worker thread loads its own morphology models. If false, threads share one, "
+                    + "which is not verified to be safe with Zemberek.", null);
+
+    private static final CommandOption.List commandOptions =
+            new CommandOption.List(
+                    "Chunks a UTF-8 corpus with multiple threads.",
+                    new CommandOption[]{
+                            modelOption,
+                            modelTypeOption,
+                            templateOption,
+                            outputOption,
+                            threadsOption,
+                            windowOption,
+                            unitOption,
+                            reportOption,
+                            beamWidthOption,
+                            beamThresholdOption,
+                            metricsOption,
+                            morphologyPerThreadOption
+                    });
+
+    public static void main(String[] args) throws IOException {
+        int restArgs = commandOptions.processOptions(args);
+        if (restArgs == args.length || modelOption.value == null) {
+            commandOptions.printUsage(true);
+            throw new IllegalArgumentException("Missing model or input file.");
+        }
+        File input = new File(args[restArgs]);
+
+        Chunker chunker;
+        if (modelTypeOption.value.equals("crfpp"))
+            chunker = new CrfPlusPlusBasedChunker(CrfPlusPlusModel.loadTextModel(modelOption.value));
+        else {
+            MalletBasedChunker malletChunker = new MalletBasedChunker(modelOption.value,
+                    CrfTemplates.loadFromCrfPlusPlusTemplate(templateOption.value, "/"));
+            malletChunker.setBeam(beamWidthOption.value, beamThresholdOption.value);
+            chunker = malletChunker;
+        }
+
+        DefaultChunkingMetrics metrics = null;
+        if (metricsOption.value) {
+            metrics = new DefaultChunkingMetrics();
+            MetricsRegistry.set(metrics);
+        }
+
+        int threads = threadsOption.value;
+        int window = windowOption.value > 0 ? windowOption.value : threads * 64;
+        TurkishMorphology morphology = new TurkishMorphology(TurkishMorphology.DEFAULT_CACHE_SIZE,
+                morphologyPerThreadOption.value);
+        CorpusChunker corpusChunker = new CorpusChunker(chunker, morphology, threads, window,
+                Unit.valueOf(unitOption.value.toUpperCase(Locale.ENGLISH)), reportOption.value);
+
+        OutputStream os = outputOption.value == null ? System.out : new FileOutputStream(outputOption.value);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(input), Charsets.UTF_8));
+             Writer writer = new BufferedWriter(new OutputStreamWriter(os, Charsets.UTF_8))) {
+            Stats stats = corpusChunker.process(reader, writer);
+            System.err.println("Done. " + stats);
+        }
+        if (metrics != null) {
+            System.err.println(metrics);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package trnlp.chunking;
+
+import cc.mallet.fst.CRF;
+import cc.mallet.util.CommandOption;
+import trnlp.apps.BinaryCrfModel;
+import trnlp.apps.CrfTemplates;
+import trnlp.apps.TurkishMorphology;
+import trnlp.apps.TurkishSentenceTokenizer;
+import zemberek3.parser.morphology.SentenceMorphParse;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Makes a trained chunking model smaller. Weights with small absolute values are removed, optionally only the
+ * features with the largest weights are kept, and remaining weights can be quantized to 16 or 8 bits with one scale
+ * for each weight set. Output is a {@link BinaryCrfModel} file that {@link MalletBasedChunker} loads directly.
+ * <p/>
+ * Size, load time, decoding speed and accuracy of the original and the compressed model are reported. Accuracy is
+ * measured on an annotated test file with {@link ChunkerTest}.
+ */
+public class CrfModelCompressor {
+
+    private static final CommandOption.File modelOption = new CommandOption.File
+            (CrfModelCompressor.class, "model-file", "FILENAME", true, null,
+                    "Model to compress. Serialized Mallet CRF or binary model.", null);
+
+    private static final CommandOption.File outputOption = new CommandOption.File
+            (CrfModelCompressor.class, "output", "FILENAME", true, null,
+                    "Compressed binary model.", null);
+
+    private static final CommandOption.File templateOption = new CommandOption.File
+            (CrfModelCompressor.class, "template-file", "FILENAME", true, new File("crfplusplus/template_cemil"),
+                    "CRF++ template file the model is trained with.", null);
+
+    private static final CommandOption.Double thresholdOption = new CommandOption.Double
+            (CrfModelCompressor.class, "threshold", "DECIMAL", true, 0,
+                    "Weights with smaller absolute values are removed.", null);
+
+    private static final CommandOption.Integer maxFeaturesOption = new CommandOption.Integer
+            (CrfModelCompressor.class, "max-features", "INTEGER", true, 0,
+                    "Keep only this many features with the largest absolute weights. 0 keeps all.", null);
+
+    private static final CommandOption.Integer weightBitsOption = new CommandOption.Integer
+            (CrfModelCompressor.class, "weight-bits", "64|16|8", true, 64,
+                    "Bits of the stored weight values. 64 stores doubles.", null);
+
+    private static final CommandOption.File testOption = new CommandOption.File
+            (CrfModelCompressor.class, "test-file", "FILENAME", true, new File("data/chunker-test.txt"),
+                    "Annotated sentences for measuring accuracy and decoding speed.", null);
+
+    private static final CommandOption.Boolean reportOption = new CommandOption.Boolean
+            (CrfModelCompressor.class, "report", "true|false", true, true,
+                    "Compare original and compressed models.", null);
+
+    private static final CommandOption.List commandOptions =
+            new CommandOption.List(
+                    "Prunes and quantizes a chunking CRF model.",
+                    new CommandOption[]{
+                            modelOption,
+                            outputOption,
+                            templateOption,
+                            thresholdOption,
+                            maxFeaturesOption,
+                            weightBitsOption,
+                            testOption,
+                            reportOption
+                    });
+
+    static final int DECODE_ROUNDS = 5;
+
+    /**
+     * @param file serialized Mallet CRF or binary model.
+     * @return binary model.
+     * @throws IOException
+     */
+    static BinaryCrfModel loadModel(File file) throws IOException {
+        if (BinaryCrfModel.isBinaryModel(file))
+            return BinaryCrfModel.load(file);
+        try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            return BinaryCrfModel.fromCrf((CRF) ois.readObject());
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Not a serialized CRF: " + file, e);
+        }
+    }
+
+    /**
+     * Compresses a model.
+     *
+     * @param input       model file.
+     * @param output      compressed binary model file.
+     * @param threshold   weights with smaller absolute values are removed.
+     * @param maxFeatures if positive, only this amount of features with the largest weights are kept.
+     * @param weightBits  64, 16 or 8.
+     * @return compressed model.
+     * @throws IOException
+     */
+    public static BinaryCrfModel compress(File input, File output, double threshold, int maxFeatures, int weightBits)
+            throws IOException {
+        BinaryCrfModel original = loadModel(input);
+        BinaryCrfModel pruned = original.prune(threshold, maxFeatures);
+        pruned.save(output, weightBits);
+        System.out.println(String.format("Features: %d -> %d, weights: %d -> %d",
+                original.getFeatureCount(), pruned.getFeatureCount(),
+                original.getWeightCount(), pruned.getWeightCount()));
+        return pruned;
+    }
+
+    static class Measurement {
+        final String name;
+        final long size;
+        double loadMillis;
+        double sentencesPerSecond;
+        double accuracy;
+
+        Measurement(String name, File file) {
+            this.name = name;
+            this.size = file.length();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-12s %10d %10.1f %14.1f %10.4f",
+                    name, size / 1024, loadMillis, sentencesPerSecond, accuracy);
+        }
+    }
+
+    static Measurement measure(String name, File model, CrfTemplates templates, TurkishMorphology morphology,
+                               List<List<String>> tokens, List<SentenceMorphParse> parses, File testFile)
+            throws IOException {
+        Measurement measurement = new Measurement(name, model);
+        long start = System.nanoTime();
+        MalletBasedChunker chunker = new MalletBasedChunker(model, templates);
+        measurement.loadMillis = (System.nanoTime() - start) / 1e6;
+
+        // first round is warm up.
+        long elapsed = 0;
+        for (int round = 0; round <= DECODE_ROUNDS; round++) {
+            start = System.nanoTime();
+            for (int i = 0; i < tokens.size(); i++) {
+                chunker.getChunks(tokens.get(i), parses.get(i));
+            }
+            if (round > 0)
+                elapsed += System.nanoTime() - start;
+        }
+        measurement.sentencesPerSecond = elapsed == 0 ? 0 : tokens.size() * DECODE_ROUNDS / (elapsed / 1e9);
+        measurement.accuracy = new ChunkerTest(chunker, morphology).test(testFile, " ");
+        return measurement;
+    }
+
+    /**
+     * Prints size, load time, decoding speed and accuracy of both models.
+     */
+    public static void report(File original, File compressed, CrfTemplates templates, File testFile)
+            throws IOException {
+        TurkishMorphology morphology = new TurkishMorphology();
+        TurkishSentenceTokenizer tokenizer = new TurkishSentenceTokenizer();
+        List<List<String>> tokens = new ArrayList<>();
+        List<SentenceMorphParse> parses = new ArrayList<>();
+        for (String sentence : ChunkerTest.loadSentences(testFile, " ")) {
+            List<String> sentenceTokens = tokenizer.tokenizeAsStrings(sentence);
+            tokens.add(sentenceTokens);
+            parses.add(morphology.parseAndDisambiguateSentence(sentenceTokens));
+        }
+        List<Measurement> measurements = new ArrayList<>();
+        measurements.add(measure("original", original, templates, morphology, tokens, parses, testFile));
+        measurements.add(measure("compressed", compressed, templates, morphology, tokens, parses, testFile));
+
+        System.out.format("%-12s %10s %10s %14s %10s%n", "Model", "Size(KB)", "Load(ms)", "Sentences/s", "Accuracy");
+        for (Measurement measurement : measurements) {
+            System.out.println(measurement);
+        }
+        Measurement before = measurements.get(0);
+        Measurement after = measurements.get(1);
+        System.out.format("Size %.1f%%, load time %.1f%%, speed %.1f%%, accuracy %+.4f%n",
+                100.0 * after.size / before.size,
+                100.0 * after.loadMillis / before.loadMillis,
+                100.0 * after.sentencesPerSecond / before.sentencesPerSecond,
+                after.accuracy - before.accuracy);
+    }
+
+    public static void main(String[] args) throws IOException {
+        commandOptions.processOptions(args);
+        if (modelOption.value == null || outputOption.value == null) {
+            commandOptions.printUsage(true);
+            throw new IllegalArgumentException("Missing model or output file.");
+        }
+        compress(modelOption.value, outputOption.value, thresholdOption.value, maxFeaturesOption.value,
+                weightBitsOption.value);
+        if (reportOption.value) {
+            report(modelOption.value, outputOption.value,
+                    CrfTemplates.loadFromCrfPlusPlusTemplate(templateOption.value, "/"), testOption.value);
+        }
+    }
+}
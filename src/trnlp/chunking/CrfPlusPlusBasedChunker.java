@@ -3,36 +3,79 @@ package trnlp.chunking;
 import com.google.common.base.Joiner;
 import org.jcaki.SimpleTextWriter;
 import org.jcaki.Strings;
-import trnlp.apps.CrfPlusPlusRunner;
+import trnlp.apps.CrfPlusPlusModel;
+import trnlp.apps.CrfPlusPlusProcessPool;
 import trnlp.apps.TurkishMorphology;
 import trnlp.apps.TurkishSentenceTokenizer;
+import trnlp.metrics.ChunkingMetrics;
+import trnlp.metrics.MetricsRegistry;
+import trnlp.metrics.Stage;
 import zemberek3.parser.morphology.MorphParse;
 import zemberek3.parser.morphology.SentenceMorphParse;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
-public class CrfPlusPlusBasedChunker extends Chunker {
+/**
+ * Chunker that uses a CRF++ model, either with crf_test processes or decoding in the JVM. Instances are thread
+ * safe. Processes are taken from a pool for each sentence, and the in-JVM model is only read while decoding.
+ */
+public class CrfPlusPlusBasedChunker extends Chunker implements Closeable {
 
-    CrfPlusPlusRunner runner;
+    CrfPlusPlusProcessPool pool;
+    CrfPlusPlusModel model;
 
     public CrfPlusPlusBasedChunker(File model) throws IOException {
-        this.runner = new CrfPlusPlusRunner(model);
+        this(model, 1);
+    }
+
+    /**
+     * @param model    CRF++ model file.
+     * @param poolSize amount of crf_test processes kept alive for labeling sentences concurrently.
+     * @throws IOException if crf_test processes cannot be started.
+     */
+    public CrfPlusPlusBasedChunker(File model, int poolSize) throws IOException {
+        this.pool = new CrfPlusPlusProcessPool(model, poolSize);
+    }
+
+    public CrfPlusPlusBasedChunker(CrfPlusPlusProcessPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Creates a chunker that decodes sentences in the JVM. No crf_test process is used.
+     *
+     * @param model CRF++ model loaded from a text model file.
+     */
+    public CrfPlusPlusBasedChunker(CrfPlusPlusModel model) {
+        this.model = model;
     }
 
     public List<Chunk> getChunks(List<String> words, SentenceMorphParse input) {
+        ChunkingMetrics metrics = MetricsRegistry.get();
+        long start = metrics.start();
+        if (model != null) {
+            List<List<String>> rows = getFeatureRows(input);
+            metrics.stop(Stage.FEATURES, start);
+            start = metrics.start();
+            List<String> labels = model.findLabels(rows);
+            metrics.stop(Stage.DECODE, start);
+            return getChunks(words, labels, input);
+        }
         try {
-            File tmp = File.createTempFile("trchunker", ".txt");
-            tmp.deleteOnExit();
-            createFeatureFile(input, tmp);
-            List<String> lines = runner.findLabels(tmp);
+            List<String> featureLines = getFeatureLines(input);
+            metrics.stop(Stage.FEATURES, start);
+            start = metrics.start();
+            List<String> lines = pool.findLabels(featureLines);
             List<String> labels = new ArrayList<>();
             for (String line : lines) {
                 labels.add(Strings.subStringAfterLast(line, "\t"));
             }
+            metrics.stop(Stage.DECODE, start);
             return getChunks(words, labels, input);
         } catch (IOException | InterruptedException e) {
             e.printStackTrace();
@@ -41,27 +84,51 @@ public class CrfPlusPlusBasedChunker extends Chunker {
     }
 
     /**
-     * Generates feature file for a single sentence. Because CRF++ model already contains the feature template
-     * information, we do not need to give full feature information. Only single word features are enough.
+     * Generates tab separated single word feature lines of a sentence. Because CRF++ model already contains the
+     * feature template information, only single word features are enough.
      *
      * @param input morphological parse of the input sentence.
-     * @param file  output file that will contain the feature information. This file will be passed to CRF++ process.
-     * @throws IOException
+     * @return feature lines.
      */
-    public void createFeatureFile(SentenceMorphParse input, File file) throws IOException {
-        List<ChunkerAnnotationFeatureExtractor.TurkishChunkFeatures> featuresList = new ArrayList<>();
+    public List<String> getFeatureLines(SentenceMorphParse input) {
+        List<String> lines = new ArrayList<>();
+        for (List<String> row : getFeatureRows(input)) {
+            lines.add(Joiner.on("\t").join(row));
+        }
+        return lines;
+    }
 
+    /**
+     * Generates single word feature columns of a sentence.
+     *
+     * @param input morphological parse of the input sentence.
+     * @return feature columns for each word.
+     */
+    public List<List<String>> getFeatureRows(SentenceMorphParse input) {
+        List<List<String>> rows = new ArrayList<>();
         for (SentenceMorphParse.Entry entry : input) {
             MorphParse first = entry.parses.get(0);
-            featuresList.add(new ChunkerAnnotationFeatureExtractor.TurkishChunkFeatures(entry.input, first));
+            rows.add(new ChunkerAnnotationFeatureExtractor.TurkishChunkFeatures(entry.input, first).getFeatureList());
         }
+        return rows;
+    }
 
-        List<String> lines = new ArrayList<>();
-        for (ChunkerAnnotationFeatureExtractor.TurkishChunkFeatures features : featuresList) {
-            lines.add(Joiner.on("\t").join(features.getFeatureList()));
-        }
+    /**
+     * Generates feature file for a single sentence. Because CRF++ model already contains the feature template
+     * information, we do not need to give full feature information. Only single word features are enough.
+     *
+     * @param input morphological parse of the input sentence.
+     * @param file  output file that will contain the feature information. This file will be passed to CRF++ process.
+     * @throws IOException
+     */
+    public void createFeatureFile(SentenceMorphParse input, File file) throws IOException {
+        SimpleTextWriter.oneShotUTF8Writer(file).writeLines(getFeatureLines(input));
+    }
 
-        SimpleTextWriter.oneShotUTF8Writer(file).writeLines(lines);
+    @Override
+    public void close() {
+        if (pool != null)
+            pool.close();
     }
 
     public static void main(String[] args) throws IOException, InterruptedException {
@@ -87,5 +154,6 @@ public class CrfPlusPlusBasedChunker extends Chunker {
 
         CrfPlusPlusBasedChunker chunker = new CrfPlusPlusBasedChunker(new File("crfplusplus/cemil_model"));
         System.out.println(chunker.getChunks(tokenList, disambiguated));
+        chunker.close();
     }
 }
@@ -0,0 +1,110 @@
+package trnlp.chunking;
+
+import com.google.common.collect.Iterables;
+import zemberek3.parser.morphology.MorphParse;
+
+import java.util.List;
+
+/**
+ * Remembers the last inflectional group features of suffix sequences, so they are generated once for each
+ * distinct sequence. Sequences are kept in a trie keyed by suffix ids. Lookups do not lock, only adding a new
+ * node does. Suffix sequences of a last inflectional group are limited by the morphotactics, so the trie does not
+ * grow with the vocabulary of the processed text.
+ */
+class LastIgCache {
+
+    static final String NONE = "_";
+
+    // case names in the order they are checked.
+    final String[] cases;
+    final Node root;
+
+    /**
+     * @param cases noun cases in the order they are checked. First case found in the suffix ids is used.
+     */
+    LastIgCache(Iterable<String> cases) {
+        this.cases = Iterables.toArray(cases, String.class);
+        this.root = new Node("", 0);
+    }
+
+    /**
+     * @param parse morphological parse.
+     * @return last inflectional group node of the parse.
+     */
+    Node get(MorphParse parse) {
+        if (parse.getSuffixDataList().size() == 0)
+            return root;
+        Node node = root;
+        for (MorphParse.SuffixData suffixData : parse.getLastIg().suffixList) {
+            node = node.child(suffixData.suffix.id);
+        }
+        return node;
+    }
+
+    final class Node {
+        final String value;
+        // bit i is set if case i appears in the value. Highest bit is plurality.
+        final int mask;
+        final String lastIg;
+        final String nounCase;
+        final boolean plural;
+        volatile Child[] children = new Child[0];
+
+        Node(String value, int mask) {
+            this.value = value;
+            this.mask = mask;
+            this.lastIg = value.length() == 0 ? NONE : value;
+            this.plural = (mask & PLURAL) != 0;
+            String nounCase = NONE;
+            for (int i = 0; i < cases.length; i++) {
+                if ((mask & (1 << i)) != 0) {
+                    nounCase = cases[i];
+                    break;
+                }
+            }
+            this.nounCase = nounCase;
+        }
+
+        Node child(String suffixId) {
+            for (Child child : children) {
+                if (child.suffixId.equals(suffixId))
+                    return child.node;
+            }
+            synchronized (this) {
+                Child[] current = children;
+                for (Child child : current) {
+                    if (child.suffixId.equals(suffixId))
+                        return child.node;
+                }
+                Node node = new Node(value.length() == 0 ? suffixId : value + "+" + suffixId, mask | suffixMask(suffixId));
+                Child[] extended = new Child[current.length + 1];
+                System.arraycopy(current, 0, extended, 0, current.length);
+                extended[current.length] = new Child(suffixId, node);
+                children = extended;
+                return node;
+            }
+        }
+    }
+
+    static final int PLURAL = 1 << 30;
+
+    // case names do not contain '+', so a case appears in the joined value only if it appears in a suffix id.
+    int suffixMask(String suffixId) {
+        int mask = suffixId.contains("A3pl") ? PLURAL : 0;
+        for (int i = 0; i < cases.length; i++) {
+            if (suffixId.contains(cases[i]))
+                mask |= 1 << i;
+        }
+        return mask;
+    }
+
+    static final class Child {
+        final String suffixId;
+        final Node node;
+
+        Child(String suffixId, Node node) {
+            this.suffixId = suffixId;
+            this.node = node;
+        }
+    }
+}
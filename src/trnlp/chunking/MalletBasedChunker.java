@@ -1,12 +1,16 @@
 package trnlp.chunking;
 
+import trnlp.apps.BinaryCrfModel;
+import trnlp.apps.CompiledTemplates;
+import trnlp.apps.CrfBeamDecoder;
+import trnlp.apps.CrfNBestDecoder;
 import trnlp.apps.CrfTemplates;
-import trnlp.apps.TurkishMorphology;
-import trnlp.apps.TurkishSentenceTokenizer;
+import trnlp.apps.CrfViterbiDecoder;
 import cc.mallet.fst.CRF;
-import cc.mallet.types.ArraySequence;
-import cc.mallet.types.Instance;
 import com.google.common.io.Resources;
+import trnlp.metrics.ChunkingMetrics;
+import trnlp.metrics.MetricsRegistry;
+import trnlp.metrics.Stage;
 import zemberek3.parser.morphology.MorphParse;
 import zemberek3.parser.morphology.SentenceMorphParse;
 
@@ -17,20 +21,88 @@ import java.io.ObjectInputStream;
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * Chunker that uses a CRF trained with Mallet. Instances are thread safe, one loaded chunker can be used by many
+ * threads. Model weights, compiled templates and labels are only read after loading, and decoding uses a lattice of
+ * the calling thread. Feature values are resolved to symbol ids of the model when the features of a word are built,
+ * and values that the model does not know share one unknown id, so nothing is added while decoding.
+ * <p/>
+ * By default sentences are decoded with exact Viterbi search. {@link #setBeam(int, double)} switches to a faster beam
+ * search, which may find a lower scoring path on long sentences.
+ */
 public class MalletBasedChunker extends Chunker {
 
+    // Mallet CRF of the model. For binary models it is only built when asked for, see getCrf().
     CRF crf;
+    BinaryCrfModel binaryModel;
     CrfTemplates templates;
-
+    CompiledTemplates compiledTemplates;
+    CrfViterbiDecoder decoder;
+    ChunkLabels labels;
+    // used for n-best results when beam search is not set.
+    CrfNBestDecoder nBestDecoder;
+    volatile CrfBeamDecoder beamDecoder;
+
+    /**
+     * @param model     serialized Mallet CRF model or a model in {@link BinaryCrfModel} format. Binary models are
+     *                  decoded from the memory mapped file, no Mallet CRF is built for them.
+     * @param templates feature templates used for training the model.
+     * @throws IOException
+     */
     public MalletBasedChunker(File model, CrfTemplates templates) throws IOException {
-        ObjectInputStream s = new ObjectInputStream(new FileInputStream(model));
-        try {
-            crf = (CRF) s.readObject();
-        } catch (ClassNotFoundException e) {
-            e.printStackTrace();
+        if (BinaryCrfModel.isBinaryModel(model)) {
+            binaryModel = BinaryCrfModel.load(model);
+            initialize(CrfViterbiDecoder.fromModel(binaryModel), CompiledTemplates.compile(templates, binaryModel),
+                    templates);
+        } else {
+            ObjectInputStream s = new ObjectInputStream(new FileInputStream(model));
+            try {
+                crf = (CRF) s.readObject();
+            } catch (ClassNotFoundException e) {
+                e.printStackTrace();
+            }
+            s.close();
+            initialize(CrfViterbiDecoder.fromCrf(crf), templates.compile(crf.getInputAlphabet()), templates);
         }
-        s.close();
+    }
+
+    /**
+     * @param crf       trained CRF.
+     * @param templates feature templates used for training the model.
+     */
+    public MalletBasedChunker(CRF crf, CrfTemplates templates) {
+        this.crf = crf;
+        initialize(CrfViterbiDecoder.fromCrf(crf), templates.compile(crf.getInputAlphabet()), templates);
+    }
+
+    private void initialize(CrfViterbiDecoder decoder, CompiledTemplates compiledTemplates, CrfTemplates templates) {
+        this.decoder = decoder;
         this.templates = templates;
+        this.compiledTemplates = compiledTemplates;
+        this.labels = new ChunkLabels(decoder.getLabelNames());
+        this.nBestDecoder = new CrfNBestDecoder(decoder);
+    }
+
+    /**
+     * Chunking does not use the Mallet CRF. It is only necessary for Mallet APIs, such as training further or
+     * {@link CRF#transduce}.
+     *
+     * @return Mallet CRF of the model. For a binary model it is built on the first call.
+     */
+    public synchronized CRF getCrf() {
+        if (crf == null && binaryModel != null)
+            crf = binaryModel.toCrf();
+        return crf;
+    }
+
+    /**
+     * Sets beam search for decoding. It should be set before the chunker is shared between threads.
+     *
+     * @param beamWidth      maximum amount of partial paths kept for every word. If 0, exact Viterbi search is used.
+     * @param scoreThreshold partial paths that score lower than the best one by more than this are dropped.
+     */
+    public void setBeam(int beamWidth, double scoreThreshold) {
+        beamDecoder = beamWidth == 0 ? null : new CrfBeamDecoder(decoder, beamWidth, scoreThreshold);
     }
 
     public MalletBasedChunker() throws IOException {
@@ -59,69 +131,118 @@ public class MalletBasedChunker extends Chunker {
     }
 
     public List<Chunk> getChunks(List<String> words, SentenceMorphParse input) {
-        ArraySequence data = getCrfResult(input);
-        List<String> labels = new ArrayList<>();
-        for (int i = 0; i < data.size(); i++)
-            labels.add((String) data.get(i));
-        return getChunks(words, labels, input);
+        return getChunks(words, getCrfResult(input), labels, input);
     }
 
-    private ArraySequence getCrfResult(SentenceMorphParse input) {
-        List<ChunkerAnnotationFeatureExtractor.TurkishChunkFeatures> featuresList = new ArrayList<>();
+    /**
+     * Finds the k best chunk sequences of a sentence. Without beam search, search is exact and the first result is
+     * the same with {@link #getChunks(List, SentenceMorphParse)}. If beam search is set, its settings are used and
+     * beam is widened to k if necessary.
+     *
+     * @param words tokens of the sentence.
+     * @param input disambiguated parse of the sentence.
+     * @param k     maximum amount of results.
+     * @return chunk sequences in decreasing order of their scores.
+     */
+    public List<ScoredChunks> getNBestChunks(List<String> words, SentenceMorphParse input, int k) {
+        int[][] featureIndexes = getFeatureIndexes(input);
+        CrfBeamDecoder beam = beamDecoder;
+        List<CrfBeamDecoder.Path> paths = beam == null ?
+                nBestDecoder.decode(featureIndexes, k) : beam.decode(featureIndexes, k);
+        List<ScoredChunks> result = new ArrayList<>(k);
+        for (CrfBeamDecoder.Path path : paths) {
+            result.add(new ScoredChunks(labels.toChunks(path.labels, words, input), path.score));
+        }
+        return result;
+    }
 
-        for (SentenceMorphParse.Entry entry : input) {
-            MorphParse first = entry.parses.get(0);
-            featuresList.add(new ChunkerAnnotationFeatureExtractor.TurkishChunkFeatures(entry.input, first));
+    public static class ScoredChunks {
+        public final List<Chunk> chunks;
+        // unnormalized log score of the label sequence.
+        public final double score;
+
+        public ScoredChunks(List<Chunk> chunks, double score) {
+            this.chunks = chunks;
+            this.score = score;
         }
 
-        List<List<String>> singleFeatures = new ArrayList<>();
-        for (ChunkerAnnotationFeatureExtractor.TurkishChunkFeatures features : featuresList) {
-            singleFeatures.add(features.getFeatureList());
+        @Override
+        public String toString() {
+            return String.format("%.4f %s", score, chunks);
         }
+    }
+
+    private byte[] getCrfResult(SentenceMorphParse input) {
+        ChunkingMetrics metrics = MetricsRegistry.get();
+        long start = metrics.start();
+        return decode(getFeatureIndexes(input), metrics, start);
+    }
 
-        String[][] featureMatrix = new String[featuresList.size()][];
+    /**
+     * @param input disambiguated parse of a sentence.
+     * @return feature indexes of each word, found from the symbol ids of their single word features.
+     */
+    int[][] getFeatureIndexes(SentenceMorphParse input) {
+        int[][] symbolIds = new int[input.size()][];
+        List<List<String>> singleFeatures = new ArrayList<>(input.size());
         int i = 0;
-        for (List<String> fullFeatures : templates.getFeatureLinesForTest(singleFeatures)) {
-            featureMatrix[i] = fullFeatures.toArray(new String[fullFeatures.size()]);
-            i++;
+        for (SentenceMorphParse.Entry entry : input) {
+            ChunkerAnnotationFeatureExtractor.TurkishChunkFeatures features =
+                    new ChunkerAnnotationFeatureExtractor.TurkishChunkFeatures(
+                            entry.input, entry.parses.get(0), compiledTemplates);
+            symbolIds[i++] = features.getSymbolIds();
+            singleFeatures.add(features.getColumns());
         }
+        return compiledTemplates.getFeatureIndexes(symbolIds, singleFeatures);
+    }
+
+    /**
+     * @param singleFeatures single word features of a sentence.
+     * @return label codes of the words.
+     */
+    byte[] decodeFeatures(List<List<String>> singleFeatures) {
+        ChunkingMetrics metrics = MetricsRegistry.get();
+        return decodeFeatures(singleFeatures, metrics, metrics.start());
+    }
 
-        Instance il = new Instance(featureMatrix, "", "", "");
-        Instance answer = crf.transduce(il);
-        return (ArraySequence) answer.getData();
+    private byte[] decodeFeatures(List<List<String>> singleFeatures, ChunkingMetrics metrics, long start) {
+        return decode(compiledTemplates.getFeatureIndexes(singleFeatures), metrics, start);
+    }
+
+    private byte[] decode(int[][] featureIndexes, ChunkingMetrics metrics, long start) {
+        metrics.stop(Stage.FEATURES, start);
+
+        start = metrics.start();
+        CrfBeamDecoder beam = beamDecoder;
+        byte[] result = beam == null ? decoder.decode(featureIndexes) : beam.decode(featureIndexes);
+        metrics.stop(Stage.DECODE, start);
+        return result;
     }
 
     public List<TokenAndLabel> getHypothesisLabels(SentenceMorphParse input) {
-        ArraySequence data = getCrfResult(input);
+        byte[] data = getCrfResult(input);
         List<TokenAndLabel> labels = new ArrayList<>();
-        for (int i = 0; i < data.size(); i++) {
-            labels.add(new TokenAndLabel(input.getEntry(i).input, (String) data.get(i)));
+        for (int i = 0; i < data.length; i++) {
+            labels.add(new TokenAndLabel(input.getEntry(i).input, decoder.getLabel(data[i])));
         }
         return labels;
     }
 
 
     public static void main(String[] args) throws IOException {
-        TurkishSentenceTokenizer tokenizer = new TurkishSentenceTokenizer();
-        TurkishMorphology morphology = new TurkishMorphology();
         //String input = "Ahmet öğleden sonra çay demledi.";
         String input = "Bu futbolcunun kafa vuruşunda meşin yuvarlak,  kalenin solundan auta gitti.";
-        String tokenized = tokenizer.getTokensContentsAsString(input);
-        List<String> tokenList = tokenizer.tokenizeAsStrings(input);
-        SentenceMorphParse parse = morphology.parseSentence(tokenized);
-        for (SentenceMorphParse.Entry entry : parse) {
-            System.out.println(entry.parses);
-        }
-        SentenceMorphParse disambiguated = morphology.parseAndDisambiguateSentence(tokenized);
-        for (SentenceMorphParse.Entry entry : disambiguated) {
-            System.out.println(entry.parses);
-        }
         MalletBasedChunker chunker = new MalletBasedChunker(
                 new File("data/chunk-model.ser"),
                 CrfTemplates.loadFromCrfPlusPlusTemplate(
                         new File("crfplusplus/template_cemil"), "/")
         );
-        System.out.println(chunker.getChunks(tokenList, disambiguated));
+        ChunkingPipeline pipeline = new ChunkingPipeline(chunker);
+        ChunkingPipeline.Result result = pipeline.process(input);
+        for (SentenceMorphParse.Entry entry : result.parse) {
+            System.out.println(entry.parses);
+        }
+        System.out.println(result.chunks);
     }
 
 }
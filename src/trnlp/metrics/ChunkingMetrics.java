@@ -0,0 +1,63 @@
+package trnlp.metrics;
+
+/**
+ * Receives measurements of the chunking stages. Implementations must be thread safe and cheap, because they are
+ * called for every sentence. A stage is measured like this:
+ * <pre>
+ * ChunkingMetrics metrics = MetricsRegistry.get();
+ * long start = metrics.start();
+ * ... work ...
+ * metrics.stop(Stage.DECODE, start);
+ * </pre>
+ */
+public interface ChunkingMetrics {
+
+    /**
+     * @return start time of a measurement in nanoseconds. It is only meaningful for {@link #stop(Stage, long)}.
+     */
+    long start();
+
+    /**
+     * Records the time passed since start for a stage.
+     *
+     * @param stage stage.
+     * @param start value returned from {@link #start()}.
+     */
+    void stop(Stage stage, long start);
+
+    /**
+     * Records a chunked sentence.
+     *
+     * @param tokenCount amount of tokens of the sentence.
+     */
+    void sentence(int tokenCount);
+
+    /**
+     * Records a chunk.
+     *
+     * @param type name of the chunk type.
+     */
+    void chunk(String type);
+
+    /**
+     * Does nothing. It does not even read the clock, so it costs almost nothing when metrics are not needed.
+     */
+    ChunkingMetrics NOOP = new ChunkingMetrics() {
+        @Override
+        public long start() {
+            return 0;
+        }
+
+        @Override
+        public void stop(Stage stage, long start) {
+        }
+
+        @Override
+        public void sentence(int tokenCount) {
+        }
+
+        @Override
+        public void chunk(String type) {
+        }
+    };
+}
@@ -0,0 +1,34 @@
+package trnlp.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link DefaultChunkingMetrics}. Stage maps are keyed by stage name.
+ */
+public interface ChunkingMetricsMXBean {
+
+    long getSentenceCount();
+
+    long getTokenCount();
+
+    double getSentencesPerSecond();
+
+    Map<String, Long> getStageCounts();
+
+    Map<String, Double> getStageMeanMicros();
+
+    Map<String, Double> getStageP50Micros();
+
+    Map<String, Double> getStageP99Micros();
+
+    Map<String, Double> getStageMaxMicros();
+
+    Map<String, Long> getChunkTypeCounts();
+
+    /**
+     * @return amount of sentences for each token count. Last entry counts all longer sentences.
+     */
+    long[] getSentenceLengthHistogram();
+
+    void reset();
+}
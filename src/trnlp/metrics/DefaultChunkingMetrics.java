@@ -0,0 +1,197 @@
+package trnlp.metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free metrics kept in memory. Every stage has a {@link LatencyHistogram}. Sentence and token counts,
+ * sentence lengths and chunk type counts are also recorded. Values can be read from code or through JMX after
+ * {@link #registerMBean(String)}.
+ */
+public class DefaultChunkingMetrics implements ChunkingMetrics, ChunkingMetricsMXBean {
+
+    public static final int MAX_SENTENCE_LENGTH = 128;
+
+    final LatencyHistogram[] stages = new LatencyHistogram[Stage.values().length];
+    final AtomicLong sentences = new AtomicLong();
+    final AtomicLong tokens = new AtomicLong();
+    final AtomicLongArray sentenceLengths = new AtomicLongArray(MAX_SENTENCE_LENGTH + 1);
+    final ConcurrentMap<String, AtomicLong> chunkTypes = new ConcurrentHashMap<>();
+    volatile long startTime = System.nanoTime();
+
+    public DefaultChunkingMetrics() {
+        for (int i = 0; i < stages.length; i++) {
+            stages[i] = new LatencyHistogram();
+        }
+    }
+
+    @Override
+    public long start() {
+        return System.nanoTime();
+    }
+
+    @Override
+    public void stop(Stage stage, long start) {
+        stages[stage.ordinal()].record(System.nanoTime() - start);
+    }
+
+    @Override
+    public void sentence(int tokenCount) {
+        sentences.incrementAndGet();
+        tokens.addAndGet(tokenCount);
+        sentenceLengths.incrementAndGet(Math.min(tokenCount, MAX_SENTENCE_LENGTH));
+    }
+
+    @Override
+    public void chunk(String type) {
+        AtomicLong counter = chunkTypes.get(type);
+        if (counter == null) {
+            AtomicLong newCounter = new AtomicLong();
+            counter = chunkTypes.putIfAbsent(type, newCounter);
+            if (counter == null)
+                counter = newCounter;
+        }
+        counter.incrementAndGet();
+    }
+
+    public LatencyHistogram getHistogram(Stage stage) {
+        return stages[stage.ordinal()];
+    }
+
+    @Override
+    public long getSentenceCount() {
+        return sentences.get();
+    }
+
+    @Override
+    public long getTokenCount() {
+        return tokens.get();
+    }
+
+    @Override
+    public double getSentencesPerSecond() {
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        return seconds == 0 ? 0 : sentences.get() / seconds;
+    }
+
+    @Override
+    public Map<String, Long> getStageCounts() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (Stage stage : Stage.values()) {
+            result.put(stage.name(), getHistogram(stage).getCount());
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Double> getStageMeanMicros() {
+        Map<String, Double> result = new LinkedHashMap<>();
+        for (Stage stage : Stage.values()) {
+            result.put(stage.name(), getHistogram(stage).getMeanNanos() / 1000d);
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Double> getStageP50Micros() {
+        return percentileMicros(50);
+    }
+
+    @Override
+    public Map<String, Double> getStageP99Micros() {
+        return percentileMicros(99);
+    }
+
+    private Map<String, Double> percentileMicros(double percentile) {
+        Map<String, Double> result = new LinkedHashMap<>();
+        for (Stage stage : Stage.values()) {
+            result.put(stage.name(), getHistogram(stage).getPercentileNanos(percentile) / 1000d);
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Double> getStageMaxMicros() {
+        Map<String, Double> result = new LinkedHashMap<>();
+        for (Stage stage : Stage.values()) {
+            result.put(stage.name(), getHistogram(stage).getMaxNanos() / 1000d);
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getChunkTypeCounts() {
+        Map<String, Long> result = new TreeMap<>();
+        for (Map.Entry<String, AtomicLong> entry : chunkTypes.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().get());
+        }
+        return result;
+    }
+
+    @Override
+    public long[] getSentenceLengthHistogram() {
+        long[] result = new long[sentenceLengths.length()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = sentenceLengths.get(i);
+        }
+        return result;
+    }
+
+    @Override
+    public void reset() {
+        for (LatencyHistogram stage : stages) {
+            stage.reset();
+        }
+        sentences.set(0);
+        tokens.set(0);
+        for (int i = 0; i < sentenceLengths.length(); i++) {
+            sentenceLengths.set(i, 0);
+        }
+        chunkTypes.clear();
+        startTime = System.nanoTime();
+    }
+
+    /**
+     * Registers these metrics to the platform MBean server.
+     *
+     * @param name object name, such as "trnlp:type=ChunkingMetrics"
+     * @return registered object name.
+     * @throws JMException if name is not valid or already registered.
+     */
+    public ObjectName registerMBean(String name) throws JMException {
+        ObjectName objectName = new ObjectName(name);
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    public static void unregisterMBean(ObjectName name) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        if (server.isRegistered(name))
+            server.unregisterMBean(name);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("sentences=%d tokens=%d speed=%.1f sentences/s%n",
+                getSentenceCount(), getTokenCount(), getSentencesPerSecond()));
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram histogram = getHistogram(stage);
+            sb.append(String.format("%-12s count=%d mean=%.1fus p50=%.1fus p99=%.1fus max=%.1fus%n",
+                    stage.name(), histogram.getCount(), histogram.getMeanNanos() / 1000d,
+                    histogram.getPercentileNanos(50) / 1000d, histogram.getPercentileNanos(99) / 1000d,
+                    histogram.getMaxNanos() / 1000d));
+        }
+        sb.append("chunks=").append(getChunkTypeCounts());
+        return sb.toString();
+    }
+}
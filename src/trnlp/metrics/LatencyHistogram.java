@@ -0,0 +1,96 @@
+package trnlp.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock free histogram of durations in nanoseconds. Every power of two range is split to 4 buckets, so
+ * percentiles are within 25% of the real value. Recording is a few atomic increments, no allocation.
+ */
+public class LatencyHistogram {
+
+    static final int BUCKET_COUNT = 248;
+
+    final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    final AtomicLong count = new AtomicLong();
+    final AtomicLong total = new AtomicLong();
+    final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        if (nanos < 0)
+            nanos = 0;
+        buckets.incrementAndGet(bucketIndex(nanos));
+        count.incrementAndGet();
+        total.addAndGet(nanos);
+        long current;
+        while (nanos > (current = max.get())) {
+            if (max.compareAndSet(current, nanos))
+                break;
+        }
+    }
+
+    static int bucketIndex(long value) {
+        if (value < 4)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - 2)) & 3;
+        return (exponent - 1) * 4 + sub;
+    }
+
+    static long bucketUpperBound(int index) {
+        if (index < 4)
+            return index;
+        int exponent = index / 4 + 1;
+        long lower = (4L + index % 4) << (exponent - 2);
+        return lower + (1L << (exponent - 2)) - 1;
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getTotalNanos() {
+        return total.get();
+    }
+
+    public long getMaxNanos() {
+        return max.get();
+    }
+
+    public double getMeanNanos() {
+        long c = count.get();
+        return c == 0 ? 0 : (double) total.get() / c;
+    }
+
+    /**
+     * @param percentile a value between 0 and 100.
+     * @return upper bound of the bucket that contains the percentile, in nanoseconds. 0 if nothing is recorded.
+     */
+    public long getPercentileNanos(double percentile) {
+        long[] snapshot = new long[BUCKET_COUNT];
+        long c = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = buckets.get(i);
+            c += snapshot[i];
+        }
+        if (c == 0)
+            return 0;
+        long rank = (long) Math.ceil(percentile / 100d * c);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += snapshot[i];
+            if (seen >= rank && snapshot[i] > 0)
+                return Math.min(bucketUpperBound(i), max.get());
+        }
+        return max.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        total.set(0);
+        max.set(0);
+    }
+}
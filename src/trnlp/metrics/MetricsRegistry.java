@@ -0,0 +1,33 @@
+package trnlp.metrics;
+
+/**
+ * Holds the metrics used by tokenizer, morphology and chunkers. Default is {@link ChunkingMetrics#NOOP}. An
+ * implementation can be plugged in at any time, components read it for every sentence.
+ * <pre>
+ * DefaultChunkingMetrics metrics = new DefaultChunkingMetrics();
+ * metrics.registerMBean("trnlp:type=ChunkingMetrics");
+ * MetricsRegistry.set(metrics);
+ * </pre>
+ */
+public final class MetricsRegistry {
+
+    private static volatile ChunkingMetrics metrics = ChunkingMetrics.NOOP;
+
+    private MetricsRegistry() {
+    }
+
+    public static ChunkingMetrics get() {
+        return metrics;
+    }
+
+    /**
+     * @param metrics metrics to use. If null, metrics are disabled.
+     */
+    public static void set(ChunkingMetrics metrics) {
+        MetricsRegistry.metrics = metrics == null ? ChunkingMetrics.NOOP : metrics;
+    }
+
+    public static void disable() {
+        metrics = ChunkingMetrics.NOOP;
+    }
+}
@@ -0,0 +1,13 @@
+package trnlp.metrics;
+
+/**
+ * Stages of chunking a sentence.
+ */
+public enum Stage {
+    TOKENIZE,
+    PARSE,
+    DISAMBIGUATE,
+    FEATURES,
+    DECODE,
+    CHUNK
+}
@@ -0,0 +1,10 @@
+#!/bin/sh
+# Behaves like "crf_test -m model" reading from standard input. Appends the first column of each line as label.
+while IFS= read -r line; do
+    if [ -z "$line" ]; then
+        echo ""
+    else
+        label=$(echo "$line" | cut -f1)
+        printf '%s\t%s\n' "$line" "$label"
+    fi
+done
@@ -0,0 +1,10 @@
+#!/bin/sh
+# Labels only one sentence and exits, simulating a crashing crf_test process.
+while IFS= read -r line; do
+    if [ -z "$line" ]; then
+        echo ""
+        exit 1
+    fi
+    label=$(echo "$line" | cut -f1)
+    printf '%s\t%s\n' "$line" "$label"
+done
@@ -0,0 +1,13 @@
+#!/bin/sh
+# Like fake_crf_test.sh, but never answers a sentence that contains a line starting with "SLOW".
+while IFS= read -r line; do
+    if [ -z "$line" ]; then
+        echo ""
+    else
+        label=$(echo "$line" | cut -f1)
+        if [ "$label" = "SLOW" ]; then
+            sleep 10
+        fi
+        printf '%s\t%s\n' "$line" "$label"
+    fi
+done
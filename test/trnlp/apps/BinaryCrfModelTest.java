@@ -0,0 +1,191 @@
+package trnlp.apps;
+
+import cc.mallet.fst.CRF;
+import cc.mallet.types.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class BinaryCrfModelTest {
+
+    static CRF randomCrf(Random random, int featureCount) {
+        Alphabet features = new Alphabet();
+        for (int i = 0; i < featureCount; i++) {
+            features.lookupIndex("f" + i);
+        }
+        return randomCrf(random, features);
+    }
+
+    static CRF randomCrf(Random random, Alphabet features) {
+        int featureCount = features.size();
+        LabelAlphabet labels = new LabelAlphabet();
+        String[] labelNames = {"SB", "SI", "VB"};
+        for (String labelName : labelNames) {
+            labels.lookupIndex(labelName);
+        }
+        CRF crf = new CRF(features, labels);
+        crf.addFullyConnectedStates(labelNames);
+        for (int i = 0; i < crf.numStates(); i++) {
+            crf.getState(i).setInitialWeight(random.nextDouble());
+            crf.getState(i).setFinalWeight(random.nextDouble());
+        }
+        SparseVector[] weights = crf.getWeights();
+        for (int w = 0; w < weights.length; w++) {
+            int[] indexes = {random.nextInt(featureCount / 2), featureCount / 2 + random.nextInt(featureCount / 2)};
+            double[] values = {random.nextGaussian(), random.nextGaussian()};
+            crf.setWeights(w, new IndexedSparseVector(indexes, values));
+            crf.setDefaultWeight(w, random.nextGaussian());
+        }
+        return crf;
+    }
+
+    @Test
+    public void saveLoadDecode() throws IOException {
+        Random random = new Random(1);
+        int featureCount = 20;
+        CRF crf = randomCrf(random, featureCount);
+        File file = File.createTempFile("crf", ".bin");
+        file.deleteOnExit();
+        BinaryCrfModel.fromCrf(crf).save(file);
+        Assert.assertTrue(BinaryCrfModel.isBinaryModel(file));
+
+        CRF loaded = BinaryCrfModel.load(file).toCrf();
+        Assert.assertEquals(crf.numStates(), loaded.numStates());
+        for (int k = 0; k < 100; k++) {
+            int length = 1 + random.nextInt(10);
+            FeatureVector[] original = new FeatureVector[length];
+            FeatureVector[] copy = new FeatureVector[length];
+            for (int i = 0; i < length; i++) {
+                int[] indexes = {random.nextInt(featureCount), random.nextInt(featureCount), random.nextInt(featureCount)};
+                original[i] = new FeatureVector(crf.getInputAlphabet(), indexes);
+                copy[i] = new FeatureVector(loaded.getInputAlphabet(), indexes);
+            }
+            Sequence expected = crf.transduce(new FeatureVectorSequence(original));
+            Sequence actual = loaded.transduce(new FeatureVectorSequence(copy));
+            for (int i = 0; i < length; i++) {
+                Assert.assertEquals(expected.get(i), actual.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void hashedAlphabetHasNoEntries() throws IOException, ClassNotFoundException {
+        FeatureHashing hashing = new FeatureHashing(FeatureHashing.MAX_BITS);
+        Alphabet alphabet = hashing.newAlphabet();
+        Assert.assertEquals(hashing.getSize(), alphabet.size());
+        Assert.assertEquals(hashing.getSize() - 1, alphabet.lookupIndex(hashing.getSize() - 1));
+        Assert.assertEquals(-1, alphabet.lookupIndex(hashing.getSize()));
+        Assert.assertEquals(-1, alphabet.lookupIndex("f1", true));
+        Assert.assertEquals(7, alphabet.lookupObject(7));
+        Assert.assertSame(hashing, FeatureHashing.fromAlphabet(alphabet));
+
+        CRF crf = randomCrf(new Random(1), new FeatureHashing(5).newAlphabet());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(crf);
+        }
+        CRF loaded;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            loaded = (CRF) in.readObject();
+        }
+        Assert.assertTrue(loaded.getInputAlphabet() instanceof FeatureHashing.HashedAlphabet);
+        Assert.assertEquals(5, FeatureHashing.fromAlphabet(loaded.getInputAlphabet()).getBits());
+    }
+
+    @Test
+    public void hashedModelHasNoFeatureNames() throws IOException {
+        Random random = new Random(1);
+        CRF crf = randomCrf(random, new FeatureHashing(5).newAlphabet());
+        File file = File.createTempFile("crf", ".bin");
+        file.deleteOnExit();
+        BinaryCrfModel.fromCrf(crf).save(file);
+
+        BinaryCrfModel model = BinaryCrfModel.load(file);
+        Assert.assertEquals(5, model.getHashBits());
+        Assert.assertEquals(0, model.getFeatureNames().length);
+        Assert.assertEquals(32, model.getFeatureCount());
+        CRF loaded = model.toCrf();
+        Assert.assertEquals(5, FeatureHashing.fromAlphabet(loaded.getInputAlphabet()).getBits());
+        for (int k = 0; k < 20; k++) {
+            int[] indexes = {random.nextInt(32), random.nextInt(32)};
+            Sequence expected = crf.transduce(new FeatureVectorSequence(
+                    new FeatureVector[]{new FeatureVector(crf.getInputAlphabet(), indexes)}));
+            Sequence actual = loaded.transduce(new FeatureVectorSequence(
+                    new FeatureVector[]{new FeatureVector(loaded.getInputAlphabet(), indexes)}));
+            Assert.assertEquals(expected.get(0), actual.get(0));
+        }
+    }
+
+    @Test
+    public void pruneAndQuantize() throws IOException {
+        Random random = new Random(1);
+        BinaryCrfModel model = BinaryCrfModel.fromCrf(randomCrf(random, 200));
+
+        BinaryCrfModel pruned = model.prune(0.5, 0);
+        for (int l = 0; l < pruned.getWeightCount(); l++) {
+            Assert.assertTrue(Math.abs(pruned.featureValues.get(l)) >= 0.5);
+        }
+        Assert.assertTrue(pruned.getWeightCount() < model.getWeightCount());
+        // a pruned feature has the same weights with the original feature of the same name.
+        List<String> names = Arrays.asList(model.getFeatureNames());
+        String[] prunedNames = pruned.getFeatureNames();
+        Assert.assertEquals(pruned.getFeatureCount(), prunedNames.length);
+        for (int f = 0; f < prunedNames.length; f++) {
+            int o = names.indexOf(prunedNames[f]);
+            for (int l = pruned.featureOffsets.get(f); l < pruned.featureOffsets.get(f + 1); l++) {
+                boolean found = false;
+                for (int m = model.featureOffsets.get(o); m < model.featureOffsets.get(o + 1); m++) {
+                    found |= model.featureWeightSets.get(m) == pruned.featureWeightSets.get(l)
+                            && model.featureValues.get(m) == pruned.featureValues.get(l);
+                }
+                Assert.assertTrue(found);
+            }
+        }
+
+        BinaryCrfModel top = model.prune(0, 10);
+        Assert.assertEquals(10, top.getFeatureCount());
+        Assert.assertEquals(10, top.getFeatureNames().length);
+
+        double[] max = new double[pruned.weightNames.length];
+        for (int l = 0; l < pruned.getWeightCount(); l++) {
+            int w = pruned.featureWeightSets.get(l);
+            max[w] = Math.max(max[w], Math.abs(pruned.featureValues.get(l)));
+        }
+        for (int bits : new int[]{16, 8}) {
+            File file = File.createTempFile("crf", ".bin");
+            file.deleteOnExit();
+            pruned.save(file, bits);
+            BinaryCrfModel loaded = BinaryCrfModel.load(file);
+            Assert.assertArrayEquals(prunedNames, loaded.getFeatureNames());
+            Assert.assertEquals(pruned.featureOffsets, loaded.featureOffsets);
+            Assert.assertEquals(pruned.featureWeightSets, loaded.featureWeightSets);
+            for (int l = 0; l < pruned.getWeightCount(); l++) {
+                double step = max[pruned.featureWeightSets.get(l)] / ((1 << (bits - 1)) - 1);
+                Assert.assertEquals(pruned.featureValues.get(l), loaded.featureValues.get(l), step / 2 + 1e-12);
+            }
+        }
+    }
+
+    @Test
+    public void loadedModelUsesMappedWeights() throws IOException {
+        Random random = new Random(1);
+        BinaryCrfModel model = BinaryCrfModel.fromCrf(randomCrf(random, 50));
+        File file = File.createTempFile("crf", ".bin");
+        file.deleteOnExit();
+        model.save(file);
+        BinaryCrfModel loaded = BinaryCrfModel.load(file);
+        Assert.assertTrue(loaded.featureValues.isDirect());
+        Assert.assertTrue(loaded.featureNames.isDirect());
+        Assert.assertArrayEquals(model.getFeatureNames(), loaded.getFeatureNames());
+        Assert.assertEquals(model.featureValues, loaded.featureValues);
+    }
+}
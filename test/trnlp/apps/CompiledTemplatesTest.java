@@ -0,0 +1,148 @@
+package trnlp.apps;
+
+import cc.mallet.types.Alphabet;
+import com.google.common.collect.Lists;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class CompiledTemplatesTest {
+
+    static List<List<String>> sentence(String... words) {
+        List<List<String>> result = new ArrayList<>();
+        for (String word : words) {
+            result.add(Lists.newArrayList(word, word.toUpperCase()));
+        }
+        return result;
+    }
+
+    @Test
+    public void sameIndexesWithStringFeatures() throws IOException {
+        CrfTemplates templates = CrfTemplates.loadFromCrfPlusPlusTemplate(
+                new File("test/data/crfpp_template_1.txt"), "/");
+        Alphabet alphabet = new Alphabet();
+        List<List<List<String>>> training = Lists.newArrayList(
+                sentence("a", "b", "c", "d"),
+                sentence("b", "1/2", "c"),
+                sentence("_", "a"));
+        for (List<List<String>> s : training) {
+            for (List<String> line : templates.getFeatureLinesForTest(s)) {
+                for (String feature : line.subList(0, line.size() - 1)) {
+                    alphabet.lookupIndex(feature);
+                }
+            }
+        }
+        alphabet.stopGrowth();
+
+        CompiledTemplates compiled = CompiledTemplates.compile(templates, alphabet);
+        List<List<List<String>>> test = Lists.newArrayList(
+                sentence("a", "b", "c", "d"),
+                sentence("b", "1/2", "c"),
+                sentence("x", "b", "1", "2", "1/2", "y"),
+                sentence("d", "c", "b", "a", "_"),
+                sentence("a"));
+        for (List<List<String>> s : test) {
+            int[][] indexes = compiled.getFeatureIndexes(s);
+            List<List<String>> lines = templates.getFeatureLinesForTest(s);
+            Assert.assertEquals(lines.size(), indexes.length);
+            for (int i = 0; i < lines.size(); i++) {
+                List<Integer> expected = new ArrayList<>();
+                for (String feature : lines.get(i).subList(0, lines.get(i).size() - 1)) {
+                    int index = alphabet.lookupIndex(feature, false);
+                    if (index >= 0)
+                        expected.add(index);
+                }
+                List<Integer> actual = new ArrayList<>();
+                for (int index : indexes[i]) {
+                    actual.add(index);
+                }
+                Assert.assertEquals(expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void sameIndexesWithSymbolIds() throws IOException {
+        CrfTemplates templates = CrfTemplates.loadFromCrfPlusPlusTemplate(
+                new File("test/data/crfpp_template_1.txt"), "/");
+        Alphabet alphabet = new Alphabet();
+        for (List<List<String>> s : Lists.newArrayList(sentence("a", "b", "c", "d"), sentence("b", "1/2", "c"))) {
+            for (List<String> line : templates.getFeatureLinesForTest(s)) {
+                for (String feature : line.subList(0, line.size() - 1)) {
+                    alphabet.lookupIndex(feature);
+                }
+            }
+        }
+        alphabet.stopGrowth();
+
+        CompiledTemplates compiled = CompiledTemplates.compile(templates, alphabet);
+        Assert.assertEquals(CompiledTemplates.UNKNOWN, compiled.getSymbolId("x"));
+        Assert.assertEquals(CompiledTemplates.STRING_LOOKUP, compiled.getSymbolId("1/2"));
+        for (List<List<String>> s : Lists.newArrayList(
+                sentence("a", "b", "c", "d"),
+                sentence("x", "b", "1", "2", "1/2", "y"),
+                sentence("a"))) {
+            int[][] symbolIds = new int[s.size()][];
+            for (int i = 0; i < s.size(); i++) {
+                symbolIds[i] = new int[s.get(i).size()];
+                for (int c = 0; c < symbolIds[i].length; c++) {
+                    symbolIds[i][c] = compiled.getSymbolId(s.get(i).get(c));
+                }
+            }
+            int[][] expected = compiled.getFeatureIndexes(s);
+            int[][] actual = compiled.getFeatureIndexes(symbolIds, s);
+            for (int i = 0; i < expected.length; i++) {
+                Assert.assertArrayEquals(expected[i], actual[i]);
+            }
+        }
+    }
+
+    @Test
+    public void unknownValuesDoNotGrowSymbols() throws IOException {
+        CrfTemplates templates = CrfTemplates.loadFromCrfPlusPlusTemplate(
+                new File("test/data/crfpp_template_1.txt"), "/");
+        Alphabet alphabet = new Alphabet();
+        for (String feature : templates.getFeatureLinesForTest(sentence("a", "b", "1/2", "c")).get(1)) {
+            alphabet.lookupIndex(feature);
+        }
+        alphabet.stopGrowth();
+
+        CompiledTemplates compiled = CompiledTemplates.compile(templates, alphabet);
+        int symbolCount = compiled.getSymbolCount();
+        int[][] known = compiled.getFeatureIndexes(sentence("a", "b", "1/2", "c"));
+        for (int i = 0; i < 1000; i++) {
+            compiled.getFeatureIndexes(sentence("x" + i, "b", "y" + i + "/2", "c"));
+        }
+        Assert.assertEquals(symbolCount, compiled.getSymbolCount());
+        int[][] again = compiled.getFeatureIndexes(sentence("a", "b", "1/2", "c"));
+        for (int i = 0; i < known.length; i++) {
+            Assert.assertArrayEquals(known[i], again[i]);
+        }
+    }
+
+    @Test
+    public void hashedIndexesMatchHashedFeatureStrings() throws IOException {
+        CrfTemplates templates = CrfTemplates.loadFromCrfPlusPlusTemplate(
+                new File("test/data/crfpp_template_1.txt"), "/");
+        FeatureHashing hashing = new FeatureHashing(12);
+        CompiledTemplates compiled = CompiledTemplates.compile(templates, hashing.newAlphabet());
+        for (List<List<String>> s : Lists.newArrayList(
+                sentence("a", "b", "c", "d"),
+                sentence("x", "1/2", "b", "çay"),
+                sentence("a"))) {
+            int[][] indexes = compiled.getFeatureIndexes(s);
+            List<List<String>> lines = templates.getFeatureLinesForTest(s);
+            for (int i = 0; i < lines.size(); i++) {
+                List<String> features = lines.get(i).subList(0, lines.get(i).size() - 1);
+                Assert.assertEquals(features.size(), indexes[i].length);
+                for (int t = 0; t < features.size(); t++) {
+                    Assert.assertEquals(hashing.bucket(features.get(t)), indexes[i][t]);
+                }
+            }
+        }
+    }
+}
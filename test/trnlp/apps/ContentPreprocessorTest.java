@@ -0,0 +1,70 @@
+package trnlp.apps;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Random;
+
+public class ContentPreprocessorTest {
+
+    // previous regular expression based implementation.
+    static String normalizeWithRegex(String input) {
+        return input
+                .replaceAll("[“”»«″\u0093\u0094]|''",
+                        "\"").replaceAll("[\u0091\u0092′´`’‘]", "'")
+                .replaceAll("[\u0096\u0097–]", "-");
+    }
+
+    static final String CHARS = "ab '\"-“”»«″\u0093\u0094\u0091\u0092′´`’‘\u0096\u0097–—ç";
+
+    // returns at most one character in each read, so quote pairs are split between reads.
+    static class SlowReader extends StringReader {
+        SlowReader(String s) {
+            super(s);
+        }
+
+        @Override
+        public int read(char[] chars, int offset, int length) throws IOException {
+            return super.read(chars, offset, Math.min(length, 1));
+        }
+    }
+
+    static String readAll(Reader reader, int bufferSize) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        char[] buffer = new char[bufferSize];
+        int n;
+        while ((n = reader.read(buffer, 0, buffer.length)) != -1) {
+            sb.append(buffer, 0, n);
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void sameWithRegex() throws IOException {
+        Random random = new Random(1);
+        for (int i = 0; i < 5000; i++) {
+            StringBuilder sb = new StringBuilder();
+            int length = random.nextInt(20);
+            for (int j = 0; j < length; j++) {
+                sb.append(CHARS.charAt(random.nextInt(CHARS.length())));
+            }
+            String input = sb.toString();
+            String expected = normalizeWithRegex(input);
+            Assert.assertEquals(input, expected, ContentPreprocessor.normalizeQuotesHyphens(input));
+            Assert.assertEquals(input, expected,
+                    readAll(ContentPreprocessor.normalizeQuotesHyphens(new SlowReader(input)), 1 + random.nextInt(4)));
+        }
+    }
+
+    @Test
+    public void unchangedInputIsNotCopied() {
+        String input = "Ali'nin evi - 'bu' \"şu\"";
+        Assert.assertSame(input, ContentPreprocessor.normalizeQuotesHyphens(input));
+        Assert.assertEquals("a\"b", ContentPreprocessor.normalizeQuotesHyphens("a''b"));
+        Assert.assertEquals("\"'", ContentPreprocessor.normalizeQuotesHyphens("'''"));
+        Assert.assertEquals("''", ContentPreprocessor.normalizeQuotesHyphens("’’"));
+    }
+}
@@ -0,0 +1,136 @@
+package trnlp.apps;
+
+import cc.mallet.fst.CRF;
+import cc.mallet.fst.SumLatticeDefault;
+import cc.mallet.fst.Transducer;
+import cc.mallet.types.ArraySequence;
+import cc.mallet.types.FeatureVector;
+import cc.mallet.types.FeatureVectorSequence;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+
+public class CrfBeamDecoderTest {
+
+    static class ScoredLabels {
+        final byte[] labels;
+        final double score;
+
+        ScoredLabels(byte[] labels, double score) {
+            this.labels = labels;
+            this.score = score;
+        }
+    }
+
+    // scores all label sequences of the sentence with Mallet, in decreasing order.
+    static List<ScoredLabels> allPaths(CRF crf, CrfViterbiDecoder decoder, int[][] indexes) {
+        FeatureVector[] vectors = new FeatureVector[indexes.length];
+        for (int i = 0; i < indexes.length; i++) {
+            vectors[i] = new FeatureVector(crf.getInputAlphabet(), indexes[i]);
+        }
+        FeatureVectorSequence input = new FeatureVectorSequence(vectors);
+        int labelCount = decoder.getLabelNames().length;
+        List<ScoredLabels> result = new ArrayList<>();
+        int total = (int) Math.pow(labelCount, indexes.length);
+        for (int p = 0; p < total; p++) {
+            byte[] labels = new byte[indexes.length];
+            String[] names = new String[indexes.length];
+            for (int i = 0, r = p; i < indexes.length; i++, r /= labelCount) {
+                labels[i] = (byte) (r % labelCount);
+                names[i] = decoder.getLabel(labels[i]);
+            }
+            double score = new SumLatticeDefault(crf, input, new ArraySequence<>(names)).getTotalWeight();
+            result.add(new ScoredLabels(labels, score));
+        }
+        Collections.sort(result, new Comparator<ScoredLabels>() {
+            @Override
+            public int compare(ScoredLabels a, ScoredLabels b) {
+                return Double.compare(b.score, a.score);
+            }
+        });
+        return result;
+    }
+
+    // like models of CrfTrainer, only one state can start, so every label sequence has a single path.
+    static CRF randomCrf(Random random, int featureCount) {
+        CRF crf = BinaryCrfModelTest.randomCrf(random, featureCount);
+        for (int i = 1; i < crf.numStates(); i++) {
+            crf.getState(i).setInitialWeight(Transducer.IMPOSSIBLE_WEIGHT);
+        }
+        return crf;
+    }
+
+    static int[][] randomSentence(Random random, int length, int featureCount) {
+        int[][] indexes = new int[length][];
+        for (int i = 0; i < length; i++) {
+            indexes[i] = new int[]{random.nextInt(featureCount), random.nextInt(featureCount), random.nextInt(featureCount)};
+        }
+        return indexes;
+    }
+
+    @Test
+    public void wideBeamFindsExactNBest() {
+        Random random = new Random(1);
+        int featureCount = 20;
+        CRF crf = randomCrf(random, featureCount);
+        CrfViterbiDecoder viterbi = CrfViterbiDecoder.fromCrf(crf);
+        CrfBeamDecoder decoder = new CrfBeamDecoder(viterbi, 1000, Double.POSITIVE_INFINITY);
+        for (int k = 0; k < 50; k++) {
+            int[][] indexes = randomSentence(random, 1 + random.nextInt(5), featureCount);
+            List<ScoredLabels> expected = allPaths(crf, viterbi, indexes);
+            List<CrfBeamDecoder.Path> paths = decoder.decode(indexes, 5);
+            Assert.assertEquals(Math.min(5, expected.size()), paths.size());
+            for (int i = 0; i < paths.size(); i++) {
+                Assert.assertEquals(expected.get(i).score, paths.get(i).score, 1e-9);
+                // tied paths may be ordered differently.
+                double score = expected.get(i).score;
+                boolean tied = (i > 0 && expected.get(i - 1).score == score)
+                        || (i + 1 < expected.size() && expected.get(i + 1).score == score);
+                if (!tied)
+                    Assert.assertArrayEquals(expected.get(i).labels, paths.get(i).labels);
+            }
+            Assert.assertArrayEquals(paths.get(0).labels, decoder.decode(indexes));
+        }
+    }
+
+    @Test
+    public void narrowBeamAndThreshold() {
+        Random random = new Random(2);
+        int featureCount = 20;
+        CRF crf = randomCrf(random, featureCount);
+        CrfViterbiDecoder viterbi = CrfViterbiDecoder.fromCrf(crf);
+        CrfBeamDecoder narrow = new CrfBeamDecoder(viterbi, 2, Double.POSITIVE_INFINITY);
+        CrfBeamDecoder pruned = new CrfBeamDecoder(viterbi, 1000, 1.0);
+        for (int k = 0; k < 50; k++) {
+            int[][] indexes = randomSentence(random, 1 + random.nextInt(5), featureCount);
+            List<ScoredLabels> all = allPaths(crf, viterbi, indexes);
+            Map<String, Double> scores = new HashMap<>();
+            for (ScoredLabels path : all) {
+                scores.put(Arrays.toString(path.labels), path.score);
+            }
+            // paths found with a narrow beam are real paths with correct scores, in decreasing order.
+            List<CrfBeamDecoder.Path> paths = narrow.decode(indexes, 10);
+            Assert.assertTrue(paths.size() <= 10);
+            for (int i = 0; i < paths.size(); i++) {
+                Assert.assertEquals(scores.get(Arrays.toString(paths.get(i).labels)), paths.get(i).score, 1e-9);
+                if (i > 0)
+                    Assert.assertTrue(paths.get(i).score <= paths.get(i - 1).score);
+            }
+            // n-best paths never contain a path worse than the best one by more than the threshold.
+            List<CrfBeamDecoder.Path> prunedPaths = pruned.decode(indexes, 1000);
+            for (CrfBeamDecoder.Path path : prunedPaths) {
+                Assert.assertTrue(path.score >= prunedPaths.get(0).score - 1.0);
+            }
+            Assert.assertTrue(prunedPaths.size() < all.size() || all.get(all.size() - 1).score >= all.get(0).score - 1.0);
+        }
+    }
+
+    @Test
+    public void emptySentence() {
+        CRF crf = BinaryCrfModelTest.randomCrf(new Random(1), 10);
+        CrfBeamDecoder decoder = new CrfBeamDecoder(CrfViterbiDecoder.fromCrf(crf), 4, 10);
+        Assert.assertEquals(0, decoder.decode(new int[0][]).length);
+        Assert.assertTrue(decoder.decode(new int[0][], 3).isEmpty());
+    }
+}
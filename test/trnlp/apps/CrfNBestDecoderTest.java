@@ -0,0 +1,75 @@
+package trnlp.apps;
+
+import cc.mallet.fst.CRF;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+public class CrfNBestDecoderTest {
+
+    @Test
+    public void exactNBest() {
+        Random random = new Random(1);
+        int featureCount = 20;
+        CRF crf = CrfBeamDecoderTest.randomCrf(random, featureCount);
+        CrfViterbiDecoder viterbi = CrfViterbiDecoder.fromCrf(crf);
+        CrfNBestDecoder decoder = new CrfNBestDecoder(viterbi);
+        for (int n = 0; n < 50; n++) {
+            int[][] indexes = CrfBeamDecoderTest.randomSentence(random, 1 + random.nextInt(5), featureCount);
+            List<CrfBeamDecoderTest.ScoredLabels> expected = CrfBeamDecoderTest.allPaths(crf, viterbi, indexes);
+            for (int k : new int[]{1, 5, 20}) {
+                List<CrfBeamDecoder.Path> paths = decoder.decode(indexes, k);
+                Assert.assertEquals(Math.min(k, expected.size()), paths.size());
+                for (int i = 0; i < paths.size(); i++) {
+                    Assert.assertEquals(expected.get(i).score, paths.get(i).score, 1e-9);
+                    // tied paths may be ordered differently.
+                    double score = expected.get(i).score;
+                    boolean tied = (i > 0 && expected.get(i - 1).score == score)
+                            || (i + 1 < expected.size() && expected.get(i + 1).score == score);
+                    if (!tied)
+                        Assert.assertArrayEquals(expected.get(i).labels, paths.get(i).labels);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void bestIsViterbiPathOnLongSentences() {
+        Random random = new Random(2);
+        int featureCount = 50;
+        CRF crf = CrfBeamDecoderTest.randomCrf(random, featureCount);
+        // final weights of trained models are all zero.
+        for (int i = 0; i < crf.numStates(); i++) {
+            crf.getState(i).setFinalWeight(0);
+        }
+        CrfViterbiDecoder viterbi = CrfViterbiDecoder.fromCrf(crf);
+        CrfNBestDecoder decoder = new CrfNBestDecoder(viterbi);
+        for (int n = 0; n < 200; n++) {
+            int[][] indexes = CrfBeamDecoderTest.randomSentence(random, 10 + random.nextInt(60), featureCount);
+            byte[] expected = viterbi.decode(indexes);
+            for (int k : new int[]{1, 3, 10}) {
+                List<CrfBeamDecoder.Path> paths = decoder.decode(indexes, k);
+                Assert.assertEquals(k, paths.size());
+                Assert.assertArrayEquals(expected, paths.get(0).labels);
+                Set<String> distinct = new HashSet<>();
+                for (int i = 0; i < paths.size(); i++) {
+                    Assert.assertTrue(distinct.add(Arrays.toString(paths.get(i).labels)));
+                    if (i > 0)
+                        Assert.assertTrue(paths.get(i).score <= paths.get(i - 1).score);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void emptySentence() {
+        CrfNBestDecoder decoder = new CrfNBestDecoder(
+                CrfViterbiDecoder.fromCrf(CrfBeamDecoderTest.randomCrf(new Random(1), 10)));
+        Assert.assertTrue(decoder.decode(new int[0][], 3).isEmpty());
+    }
+}
@@ -0,0 +1,60 @@
+package trnlp.apps;
+
+import cc.mallet.fst.CRF;
+import cc.mallet.types.InstanceList;
+import cc.mallet.types.SparseVector;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class CrfOnlineTrainerTest {
+
+    static final String[] LABELS = {"SB", "SI", "OB", "OI", "VB"};
+
+    // every word has a feature that tells its label most of the time, and some noise features.
+    static InstanceList randomInstances(FeatureIndexPipe pipe, Random random, int count) {
+        InstanceList instances = new InstanceList(pipe);
+        for (int i = 0; i < count; i++) {
+            int length = 2 + random.nextInt(10);
+            String[][] tokens = new String[length][];
+            for (int w = 0; w < length; w++) {
+                int label = random.nextInt(LABELS.length);
+                int shown = random.nextInt(20) == 0 ? random.nextInt(LABELS.length) : label;
+                tokens[w] = new String[]{
+                        "word=" + LABELS[shown] + random.nextInt(3),
+                        "noise=" + random.nextInt(50),
+                        "noise2=" + random.nextInt(50),
+                        LABELS[label]};
+            }
+            instances.addThruPipe(new cc.mallet.types.Instance(tokens, null, "sentence:" + i, null));
+        }
+        return instances;
+    }
+
+    static double train(String trainer, int batchSize) {
+        Random random = new Random(1);
+        FeatureIndexPipe pipe = new FeatureIndexPipe();
+        pipe.getTargetAlphabet().lookupIndex("O");
+        InstanceList training = randomInstances(pipe, random, 300);
+        InstanceList test = randomInstances(pipe, random, 100);
+        CRF crf = CrfTrainer.train(training, null, null, new int[]{1}, "O", "\\s", ".*", true, 3, 10, null,
+                trainer, batchSize, 0.5);
+        // initial weights of states other than the start state are impossible, so only feature weights are checked.
+        for (SparseVector weights : crf.getParameters().weights) {
+            for (int i = 0; i < weights.numLocations(); i++) {
+                Assert.assertFalse(Double.isNaN(weights.valueAtLocation(i)) || Double.isInfinite(weights.valueAtLocation(i)));
+            }
+        }
+        return CrfParameterSweep.tokenAccuracy(crf, test);
+    }
+
+    @Test
+    public void onlineTrainersLearn() {
+        // 1 of 20 words shows a random label, so about 96% is the best accuracy.
+        Assert.assertTrue(train("perceptron", 1) > 0.85);
+        Assert.assertTrue(train("perceptron", 8) > 0.85);
+        Assert.assertTrue(train("sgd", 1) > 0.9);
+        Assert.assertTrue(train("sgd", 8) > 0.9);
+    }
+}
@@ -0,0 +1,52 @@
+package trnlp.apps;
+
+import cc.mallet.types.Instance;
+import cc.mallet.types.InstanceList;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class CrfParameterSweepTest {
+
+    @Test
+    public void crossValidatesAllConfigs() throws IOException {
+        FeatureIndexPipe pipe = new FeatureIndexPipe();
+        pipe.getTargetAlphabet().lookupIndex(CrfParameterSweep.DEFAULT_LABEL);
+        InstanceList instances = new InstanceList(pipe);
+        for (Instance instance : ParallelInstancePipingTest.toInstances(
+                ParallelInstancePipingTest.randomSentences(new Random(1), 24))) {
+            instances.addThruPipe(instance);
+        }
+
+        CrfParameterSweep sweep = new CrfParameterSweep(instances, 3, 1, 2);
+        int total = 0;
+        for (int f = 0; f < 3; f++) {
+            Assert.assertEquals(8, sweep.testFolds[f].size());
+            Assert.assertEquals(16, sweep.trainingFolds[f].size());
+            total += sweep.testFolds[f].size();
+        }
+        Assert.assertEquals(instances.size(), total);
+
+        List<CrfParameterSweep.Config> configs = CrfParameterSweep.Config.grid(new double[]{1, 10},
+                CrfParameterSweep.parseOrderLists("1;0,1"), new int[]{2});
+        Assert.assertEquals(4, configs.size());
+        List<CrfParameterSweep.ConfigResult> results = sweep.run(configs);
+        Assert.assertEquals(4, results.size());
+        List<CrfParameterSweep.Config> seen = new ArrayList<>();
+        for (int i = 0; i < results.size(); i++) {
+            CrfParameterSweep.ConfigResult result = results.get(i);
+            seen.add(result.getConfig());
+            Assert.assertEquals(3, result.folds.length);
+            Assert.assertTrue(result.getMeanAccuracy() >= 0 && result.getMeanAccuracy() <= 1);
+            Assert.assertTrue(result.getMeanModelBytes() > 0);
+            if (i > 0)
+                Assert.assertTrue(results.get(i - 1).getMeanAccuracy() >= result.getMeanAccuracy());
+        }
+        Assert.assertTrue(seen.containsAll(configs));
+        CrfParameterSweep.writeReport(results, System.out);
+    }
+}
@@ -0,0 +1,75 @@
+package trnlp.apps;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import org.jcaki.SimpleTextReader;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class CrfPlusPlusModelTest {
+
+    @SuppressWarnings("unchecked")
+    static List<List<String>> rows(String... words) {
+        List<List<String>> result = Lists.newArrayList();
+        for (String word : words) {
+            result.add(Lists.newArrayList(word));
+        }
+        return result;
+    }
+
+    @Test
+    public void templateExpansion() {
+        CrfPlusPlusModel.Template template = new CrfPlusPlusModel.Template("U05:%x[-1,0]/%x[0,1]/%x[2,0]");
+        List<List<String>> sentence = Lists.newArrayList();
+        sentence.add(Lists.newArrayList("a0", "a1"));
+        sentence.add(Lists.newArrayList("b0", "b1"));
+        Assert.assertEquals("U05:_B-1/a1/_B+1", template.apply(sentence, 0));
+        Assert.assertEquals("U05:a0/b1/_B+2", template.apply(sentence, 1));
+        Assert.assertEquals("B", new CrfPlusPlusModel.Template("B").apply(sentence, 1));
+    }
+
+    @Test
+    public void viterbi() throws IOException {
+        CrfPlusPlusModel model = CrfPlusPlusModel.loadTextModel(new File("test/data/crfpp_model_1.txt"));
+        Assert.assertArrayEquals(new String[]{"A", "B"}, model.getLabels());
+        Assert.assertEquals(Lists.newArrayList("B", "A", "B"), model.findLabels(rows("x", "x", "x")));
+        Assert.assertEquals(Lists.newArrayList("B"), model.findLabels(rows("y")));
+        Assert.assertTrue(model.findLabels(rows()).isEmpty());
+    }
+
+    /**
+     * crfpp_model_2.txt is a hand written model in "crf_learn -t" format with word, compound and boundary unigram
+     * features and a bigram template with a macro. Its weights are random numbers from a fixed seed.
+     * crfpp_expected_2.txt has word and pos columns followed by the expected label. Labels are not crf_test output,
+     * they are the best sequences found by scoring all label sequences of each sentence with the CRF++ cost formulas.
+     */
+    @Test
+    public void labelsMatchExhaustiveScoring() throws IOException {
+        CrfPlusPlusModel model = CrfPlusPlusModel.loadTextModel(new File("test/data/crfpp_model_2.txt"));
+        List<String> lines = new SimpleTextReader("test/data/crfpp_expected_2.txt", "utf-8").asStringList();
+        lines.add("");
+        List<List<String>> rows = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        int sentenceCount = 0;
+        for (String line : lines) {
+            if (line.trim().isEmpty()) {
+                if (rows.isEmpty())
+                    continue;
+                Assert.assertEquals(expected, model.findLabels(rows));
+                sentenceCount++;
+                rows.clear();
+                expected.clear();
+                continue;
+            }
+            List<String> columns = Lists.newArrayList(Splitter.on('\t').split(line));
+            rows.add(columns.subList(0, columns.size() - 1));
+            expected.add(columns.get(columns.size() - 1));
+        }
+        Assert.assertEquals(7, sentenceCount);
+    }
+}
@@ -0,0 +1,102 @@
+package trnlp.apps;
+
+import com.google.common.collect.Lists;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+public class CrfPlusPlusProcessPoolTest {
+
+    static final File MODEL = new File("test/data/crfpp_template_1.txt");
+
+    @Test
+    public void labelsAreReturnedInOrder() throws IOException, InterruptedException {
+        try (CrfPlusPlusProcessPool pool = new CrfPlusPlusProcessPool("test/data/fake_crf_test.sh", MODEL, 1)) {
+            List<String> result = pool.findLabels(Lists.newArrayList("SB\tx", "SI\ty", "VB\tz"));
+            Assert.assertEquals(Lists.newArrayList("SB\tx\tSB", "SI\ty\tSI", "VB\tz\tVB"), result);
+            result = pool.findLabels(Lists.newArrayList("OB\tq"));
+            Assert.assertEquals(Lists.newArrayList("OB\tq\tOB"), result);
+        }
+    }
+
+    @Test
+    public void concurrentRequests() throws Exception {
+        try (final CrfPlusPlusProcessPool pool = new CrfPlusPlusProcessPool("test/data/fake_crf_test.sh", MODEL, 3)) {
+            ExecutorService service = Executors.newFixedThreadPool(6);
+            List<Future<List<String>>> futures = new ArrayList<>();
+            for (int i = 0; i < 30; i++) {
+                final String label = "L" + i;
+                futures.add(service.submit(new Callable<List<String>>() {
+                    @Override
+                    public List<String> call() throws Exception {
+                        return pool.findLabels(Lists.newArrayList(label + "\ta", label + "\tb"));
+                    }
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                Assert.assertEquals(Lists.newArrayList("L" + i + "\ta\tL" + i, "L" + i + "\tb\tL" + i),
+                        futures.get(i).get());
+            }
+            service.shutdown();
+        }
+    }
+
+    @Test
+    public void deadWorkersAreRestarted() throws IOException, InterruptedException {
+        try (CrfPlusPlusProcessPool pool = new CrfPlusPlusProcessPool("test/data/fake_crf_test_single.sh", MODEL, 1)) {
+            for (int i = 0; i < 3; i++) {
+                Assert.assertEquals(Lists.newArrayList("AB\tx\tAB"), pool.findLabels(Lists.newArrayList("AB\tx")));
+            }
+            Thread.sleep(200);
+            Assert.assertEquals(1, pool.checkHealth());
+        }
+    }
+
+    @Test
+    public void hangingWorkersAreRestarted() throws IOException, InterruptedException {
+        try (CrfPlusPlusProcessPool pool =
+                     new CrfPlusPlusProcessPool("test/data/fake_crf_test_slow.sh", MODEL, 1, 500)) {
+            long start = System.currentTimeMillis();
+            try {
+                pool.findLabels(Lists.newArrayList("SB\tx", "SLOW\ty"));
+                Assert.fail("Expected a timeout.");
+            } catch (IOException e) {
+                // first worker and its replacement both time out.
+            }
+            long elapsed = System.currentTimeMillis() - start;
+            Assert.assertTrue(elapsed >= 1000 && elapsed < 5000);
+            Assert.assertEquals(Lists.newArrayList("AB\tx\tAB"), pool.findLabels(Lists.newArrayList("AB\tx")));
+        }
+    }
+
+    @Test
+    public void interruptedWorkersAreNotReused() throws Exception {
+        try (final CrfPlusPlusProcessPool pool =
+                     new CrfPlusPlusProcessPool("test/data/fake_crf_test_slow.sh", MODEL, 1, 30000)) {
+            ExecutorService service = Executors.newSingleThreadExecutor();
+            Future<List<String>> abandoned = service.submit(new Callable<List<String>>() {
+                @Override
+                public List<String> call() throws Exception {
+                    return pool.findLabels(Lists.newArrayList("SLOW\ty"));
+                }
+            });
+            Thread.sleep(300);
+            service.shutdownNow();
+            try {
+                abandoned.get();
+                Assert.fail("Expected an interruption.");
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof InterruptedException);
+            }
+            // late output of the abandoned sentence has the same line count, it must not be returned.
+            long start = System.currentTimeMillis();
+            Assert.assertEquals(Lists.newArrayList("AB\tx\tAB"), pool.findLabels(Lists.newArrayList("AB\tx")));
+            Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package trnlp.apps;
 
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.File;
@@ -18,4 +21,16 @@ public class CrfTemplatesTest {
         );
     }
 
+    @Test
+    public void streamingOutputIsSameForAllThreadCounts() throws IOException {
+        CrfTemplates templates = CrfTemplates.loadFromCrfPlusPlusTemplate(
+                new File("test/data/crfpp_template_1.txt"), "/");
+        String expected = Files.toString(new File("test/data/full_features_2.txt"), Charsets.UTF_8);
+        File out = new File("test/data/features_out.txt");
+        for (int threadCount : new int[]{1, 2, 4}) {
+            templates.generateFullFeatures(new File("test/data/single_features_2.txt"), out, " ", threadCount);
+            Assert.assertEquals(expected, Files.toString(out, Charsets.UTF_8));
+        }
+    }
+
 }
@@ -0,0 +1,70 @@
+package trnlp.apps;
+
+import cc.mallet.fst.CRF;
+import cc.mallet.fst.Transducer;
+import cc.mallet.types.FeatureVector;
+import cc.mallet.types.FeatureVectorSequence;
+import cc.mallet.types.Sequence;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class CrfViterbiDecoderTest {
+
+    @Test
+    public void sameWithTransduce() {
+        Random random = new Random(1);
+        int featureCount = 20;
+        CRF crf = BinaryCrfModelTest.randomCrf(random, featureCount);
+        CrfViterbiDecoder decoder = CrfViterbiDecoder.fromCrf(crf);
+        CrfViterbiDecoder.Lattice lattice = decoder.newLattice();
+        byte[] labels = new byte[100];
+        for (int k = 0; k < 500; k++) {
+            // longer sentences make lattice grow.
+            int length = 1 + random.nextInt(k < 250 ? 10 : 80);
+            int[][] indexes = new int[length][];
+            FeatureVector[] vectors = new FeatureVector[length];
+            for (int i = 0; i < length; i++) {
+                // duplicates and unordered indexes are allowed.
+                indexes[i] = new int[]{random.nextInt(featureCount), random.nextInt(featureCount), random.nextInt(featureCount)};
+                vectors[i] = new FeatureVector(crf.getInputAlphabet(), indexes[i]);
+            }
+            Sequence expected = crf.transduce(new FeatureVectorSequence(vectors));
+            Assert.assertEquals(length, decoder.decode(indexes, lattice, labels));
+            byte[] threadLocal = decoder.decode(indexes);
+            for (int i = 0; i < length; i++) {
+                Assert.assertEquals(expected.get(i), decoder.getLabel(labels[i]));
+                Assert.assertEquals(labels[i], threadLocal[i]);
+            }
+        }
+    }
+
+    @Test
+    public void emptySentence() {
+        CRF crf = BinaryCrfModelTest.randomCrf(new Random(1), 10);
+        CrfViterbiDecoder decoder = CrfViterbiDecoder.fromCrf(crf);
+        Assert.assertEquals(0, decoder.decode(new int[0][]).length);
+    }
+
+    @Test
+    public void noPath() {
+        CRF crf = BinaryCrfModelTest.randomCrf(new Random(1), 10);
+        for (int i = 0; i < crf.numStates(); i++) {
+            crf.getState(i).setFinalWeight(Transducer.IMPOSSIBLE_WEIGHT);
+        }
+        CrfViterbiDecoder decoder = CrfViterbiDecoder.fromCrf(crf);
+        int[][] sentence = {{1, 2}, {3}};
+        Assert.assertEquals(-1, decoder.decode(sentence, decoder.newLattice(), new byte[2]));
+        try {
+            decoder.decode(sentence);
+            Assert.fail("Sentence without a path is decoded.");
+        } catch (IllegalStateException expected) {
+        }
+        try {
+            new CrfBeamDecoder(decoder, 4, Double.POSITIVE_INFINITY).decode(sentence);
+            Assert.fail("Sentence without a path is decoded.");
+        } catch (IllegalStateException expected) {
+        }
+    }
+}
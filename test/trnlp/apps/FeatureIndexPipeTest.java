@@ -0,0 +1,74 @@
+package trnlp.apps;
+
+import cc.mallet.pipe.Pipe;
+import cc.mallet.pipe.iterator.LineGroupIterator;
+import cc.mallet.types.FeatureVectorSequence;
+import cc.mallet.types.Instance;
+import cc.mallet.types.InstanceList;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.regex.Pattern;
+
+public class FeatureIndexPipeTest {
+
+    static InstanceList load(Pipe pipe, File file) throws IOException {
+        InstanceList instances = new InstanceList(pipe);
+        try (Reader reader = new FileReader(file)) {
+            instances.addThruPipe(new LineGroupIterator(reader, Pattern.compile("^\\s*$"), true));
+        }
+        return instances;
+    }
+
+    static void assertSame(InstanceList expected, InstanceList actual) {
+        Assert.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            FeatureVectorSequence e = (FeatureVectorSequence) expected.get(i).getData();
+            FeatureVectorSequence a = (FeatureVectorSequence) actual.get(i).getData();
+            Assert.assertEquals(e.size(), a.size());
+            for (int j = 0; j < e.size(); j++) {
+                Assert.assertArrayEquals(e.get(j).getIndices(), a.get(j).getIndices());
+            }
+            Assert.assertEquals(expected.get(i).getTarget().toString(), actual.get(i).getTarget().toString());
+        }
+    }
+
+    @Test
+    public void sameIndexesWithSimpleTaggerPipe() throws IOException {
+        File file = new File("test/data/full_features_2.txt");
+        Pipe simple = new CrfTrainer.SimpleTaggerSentence2FeatureVectorSequence();
+        FeatureIndexPipe pipe = new FeatureIndexPipe();
+        InstanceList expected = load(simple, file);
+        InstanceList actual = load(pipe, file);
+        assertSame(expected, actual);
+        for (int i = 0; i < simple.getDataAlphabet().size(); i++) {
+            Assert.assertEquals(simple.getDataAlphabet().lookupObject(i), pipe.getDataAlphabet().lookupObject(i));
+        }
+
+        // unknown features are ignored when alphabet growth is stopped.
+        simple.getDataAlphabet().stopGrowth();
+        pipe.getDataAlphabet().stopGrowth();
+        String[][] tokens = {{"a0", "unknown", "_/a0", "SB"}, {"x", "b1", "VB"}};
+        InstanceList e = new InstanceList(simple);
+        e.addThruPipe(new Instance(tokens, null, "s", null));
+        InstanceList a = new InstanceList(pipe);
+        a.addThruPipe(new Instance(tokens, null, "s", null));
+        assertSame(e, a);
+        Assert.assertEquals(2, ((FeatureVectorSequence) a.get(0).getData()).get(0).numLocations());
+    }
+
+    @Test
+    public void hashedIndexesAreSame() throws IOException {
+        File file = new File("test/data/full_features_2.txt");
+        FeatureHashing hashing = new FeatureHashing(10);
+        CrfTrainer.SimpleTaggerSentence2FeatureVectorSequence simple =
+                new CrfTrainer.SimpleTaggerSentence2FeatureVectorSequence(hashing);
+        FeatureIndexPipe pipe = new FeatureIndexPipe(hashing);
+        assertSame(load(simple, file), load(pipe, file));
+        Assert.assertEquals(simple.getCollisionStats().toString(), pipe.getCollisionStats().toString());
+    }
+}
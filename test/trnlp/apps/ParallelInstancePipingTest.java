@@ -0,0 +1,104 @@
+package trnlp.apps;
+
+import cc.mallet.types.Alphabet;
+import cc.mallet.types.Instance;
+import cc.mallet.types.InstanceList;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class ParallelInstancePipingTest {
+
+    static final String[] LABELS = {"SB", "SI", "OB", "OI", "AB", "AI", "VB", "VI"};
+
+    // sentences in full feature file format, features are drawn with a skewed distribution.
+    static List<String> randomSentences(Random random, int count) {
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            StringBuilder sb = new StringBuilder();
+            int length = 1 + random.nextInt(12);
+            for (int w = 0; w < length; w++) {
+                for (int f = 0; f < 8; f++) {
+                    double r = random.nextDouble();
+                    sb.append('f').append(f).append(':').append((int) (r * r * 500)).append(' ');
+                }
+                sb.append(LABELS[random.nextInt(LABELS.length)]).append('\n');
+            }
+            result.add(sb.toString());
+        }
+        return result;
+    }
+
+    static List<Instance> toInstances(List<String> sentences) {
+        List<Instance> result = new ArrayList<>();
+        for (int i = 0; i < sentences.size(); i++) {
+            result.add(new Instance(sentences.get(i), null, "sentence:" + i, null));
+        }
+        return result;
+    }
+
+    static InstanceList sequential(FeatureIndexPipe pipe, List<String> sentences) {
+        InstanceList instances = new InstanceList(pipe);
+        instances.addThruPipe(toInstances(sentences).iterator());
+        return instances;
+    }
+
+    static InstanceList parallel(FeatureIndexPipe pipe, List<String> sentences, int threadCount, int blockSize)
+            throws IOException {
+        InstanceList instances = new InstanceList(pipe);
+        new ParallelInstancePiping(pipe, threadCount, blockSize).addThruPipe(toInstances(sentences).iterator(), instances);
+        return instances;
+    }
+
+    static void assertSameAlphabet(Alphabet expected, Alphabet actual) {
+        Assert.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertEquals(expected.lookupObject(i), actual.lookupObject(i));
+        }
+    }
+
+    @Test
+    public void sameWithSequentialPiping() throws IOException {
+        List<String> sentences = randomSentences(new Random(1), 300);
+        FeatureIndexPipe expectedPipe = new FeatureIndexPipe();
+        InstanceList expected = sequential(expectedPipe, sentences);
+        for (int threadCount : new int[]{1, 2, 4}) {
+            for (int blockSize : new int[]{1, 7, 1000}) {
+                FeatureIndexPipe pipe = new FeatureIndexPipe();
+                InstanceList actual = parallel(pipe, sentences, threadCount, blockSize);
+                assertSameAlphabet(expectedPipe.getDataAlphabet(), pipe.getDataAlphabet());
+                assertSameAlphabet(expectedPipe.getTargetAlphabet(), pipe.getTargetAlphabet());
+                FeatureIndexPipeTest.assertSame(expected, actual);
+                for (int i = 0; i < expected.size(); i++) {
+                    Assert.assertEquals(expected.get(i).getName(), actual.get(i).getName());
+                }
+            }
+        }
+
+        // piping more data to a stopped alphabet ignores the new features.
+        List<String> more = randomSentences(new Random(2), 50);
+        more.add("unknown1 unknown2 f0:1 SB\n");
+        expectedPipe.getDataAlphabet().stopGrowth();
+        FeatureIndexPipe pipe = new FeatureIndexPipe();
+        parallel(pipe, sentences, 3, 16);
+        pipe.getDataAlphabet().stopGrowth();
+        FeatureIndexPipeTest.assertSame(sequential(expectedPipe, more), parallel(pipe, more, 3, 16));
+    }
+
+    @Test
+    public void sameCollisionStatsWhenHashed() throws IOException {
+        List<String> sentences = randomSentences(new Random(3), 200);
+        FeatureHashing hashing = new FeatureHashing(8);
+        FeatureIndexPipe expectedPipe = new FeatureIndexPipe(hashing);
+        InstanceList expected = sequential(expectedPipe, sentences);
+        FeatureIndexPipe pipe = new FeatureIndexPipe(hashing);
+        InstanceList actual = parallel(pipe, sentences, 4, 5);
+        FeatureIndexPipeTest.assertSame(expected, actual);
+        Assert.assertTrue(pipe.getCollisionStats().getCollisionCount() > 0);
+        Assert.assertEquals(expectedPipe.getCollisionStats().toString(), pipe.getCollisionStats().toString());
+    }
+}
@@ -0,0 +1,125 @@
+package trnlp.apps;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.io.Files;
+import org.jcaki.SimpleTextReader;
+import org.junit.Assert;
+import org.junit.Test;
+import zemberek3.apps.TurkishSentenceParser;
+import zemberek3.parser.morphology.SentenceMorphParse;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+
+public class TurkishMorphologyTest {
+
+    // sentences with unknown words, numbers and punctuation.
+    static final String[] SENTENCES = {
+            "Ali xqzvbn'ye 3,5 kilo elma aldı .",
+            "Ali , xqzvbn'ye gelmedi mi ?",
+            "\" Kitaplar masada \" dedi 1984'te ."
+    };
+
+    static String describe(SentenceMorphParse parse) {
+        StringBuilder sb = new StringBuilder();
+        for (SentenceMorphParse.Entry entry : parse) {
+            sb.append(entry.input).append(' ').append(entry.parses).append('\n');
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void sameWithSentenceParser() throws IOException {
+        TurkishMorphology uncached = new TurkishMorphology(0);
+        TurkishMorphology cached = new TurkishMorphology();
+        TurkishSentenceParser sentenceParser = new TurkishSentenceParser(cached.wordParser, cached.disambiguator);
+        // second pass uses cached analyses, disambiguation must not change them.
+        for (int pass = 0; pass < 2; pass++) {
+            for (String sentence : SENTENCES) {
+                SentenceMorphParse expected = sentenceParser.parse(sentence);
+                Assert.assertEquals(describe(expected), describe(uncached.parseSentence(sentence)));
+                Assert.assertEquals(describe(expected), describe(cached.parseSentence(sentence)));
+                Assert.assertEquals(describe(expected),
+                        describe(cached.parseSentence(Arrays.asList(sentence.split(" ")))));
+
+                sentenceParser.disambiguate(expected);
+                Assert.assertEquals(describe(expected), describe(uncached.parseAndDisambiguateSentence(sentence)));
+                Assert.assertEquals(describe(expected), describe(cached.parseAndDisambiguateSentence(sentence)));
+            }
+        }
+        Assert.assertTrue(cached.getCache().getHitCount() > 0);
+    }
+
+    @Test
+    public void splitTokensAreNotCached() throws IOException {
+        TurkishMorphology morphology = new TurkishMorphology();
+        // splits trailing punctuation like Zemberek's tokenizer.
+        TurkishSentenceParser splitting = new TurkishSentenceParser(morphology.wordParser, morphology.disambiguator) {
+            @Override
+            public SentenceMorphParse parse(String sentence) {
+                return super.parse(sentence.replace(".", " ."));
+            }
+        };
+        morphology.sentenceParsers.set(splitting);
+        String sentence = "Ali kitabı okudu.";
+        Assert.assertEquals(4, splitting.parse(sentence).size());
+
+        Assert.assertFalse(morphology.parseWord("okudu.").isEmpty());
+        Assert.assertFalse(morphology.getCache().contains("okudu."));
+        File words = File.createTempFile("words", ".txt");
+        words.deleteOnExit();
+        Files.write("okudu. 10\nkitabı 5\n", words, Charsets.UTF_8);
+        Assert.assertEquals(1, morphology.warmUpCache(words, 10));
+        Assert.assertFalse(morphology.getCache().contains("okudu."));
+        Assert.assertEquals(describe(splitting.parse(sentence)), describe(morphology.parseSentence(sentence)));
+    }
+
+    static List<String> parseAll(TurkishMorphology morphology, List<String> sentences, int offset) {
+        List<String> results = new ArrayList<>(sentences);
+        for (int i = 0; i < sentences.size(); i++) {
+            int k = (i + offset) % sentences.size();
+            results.set(k, describe(morphology.parseAndDisambiguateSentence(sentences.get(k))));
+        }
+        return results;
+    }
+
+    @Test
+    public void sharedBetweenThreads() throws Exception {
+        final List<String> sentences = new ArrayList<>(Arrays.asList(SENTENCES));
+        TurkishSentenceTokenizer tokenizer = new TurkishSentenceTokenizer();
+        for (String line : new SimpleTextReader("data/chunker-test.txt", "utf-8").asStringList()) {
+            sentences.add(Joiner.on(' ').join(tokenizer.tokenizeAsStrings(line)));
+        }
+        List<String> expected = parseAll(new TurkishMorphology(0), sentences, 0);
+
+        TurkishMorphology[] morphologies = {
+                new TurkishMorphology(0), new TurkishMorphology(), new TurkishMorphology(1000, false)};
+        for (final TurkishMorphology morphology : morphologies) {
+            ExecutorService executor = Executors.newFixedThreadPool(8);
+            List<Future<List<String>>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                final int offset = t * 7;
+                futures.add(executor.submit(new Callable<List<String>>() {
+                    @Override
+                    public List<String> call() {
+                        List<String> results = null;
+                        for (int repeat = 0; repeat < 5; repeat++) {
+                            results = parseAll(morphology, sentences, offset);
+                        }
+                        return results;
+                    }
+                }));
+            }
+            executor.shutdown();
+            Assert.assertTrue(executor.awaitTermination(5, TimeUnit.MINUTES));
+            for (Future<List<String>> future : futures) {
+                Assert.assertEquals(expected, future.get());
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package trnlp.apps;
+
+import org.junit.Assert;
+import org.junit.Test;
+import zemberek3.parser.morphology.MorphParse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class WordAnalysisCacheTest {
+
+    @Test
+    public void countersAndCopies() {
+        WordAnalysisCache cache = new WordAnalysisCache(10);
+        Assert.assertNull(cache.get("elma"));
+        List<MorphParse> parses = new ArrayList<>();
+        parses.add(null);
+        cache.put("elma", parses);
+        parses.clear();
+
+        List<MorphParse> cached = cache.get("elma");
+        Assert.assertEquals(1, cached.size());
+        // returned lists can be modified without changing the cache.
+        cached.clear();
+        Assert.assertEquals(1, cache.get("elma").size());
+
+        Assert.assertEquals(2, cache.getHitCount());
+        Assert.assertEquals(1, cache.getMissCount());
+        Assert.assertEquals(0, cache.getEvictionCount());
+    }
+
+    @Test
+    public void sizeIsBounded() {
+        WordAnalysisCache cache = new WordAnalysisCache(5);
+        for (int i = 0; i < 100; i++) {
+            cache.put("w" + i, new ArrayList<MorphParse>());
+        }
+        Assert.assertTrue(cache.size() <= 5);
+        Assert.assertEquals(100 - cache.size(), cache.getEvictionCount());
+        Assert.assertTrue(cache.contains("w99"));
+    }
+}
@@ -0,0 +1,71 @@
+package trnlp.chunking;
+
+import com.google.common.collect.Lists;
+import org.junit.Assert;
+import org.junit.Test;
+import zemberek3.parser.morphology.MorphParse;
+
+import java.util.Collections;
+import java.util.List;
+
+public class ChunkLabelsTest {
+
+    @Test
+    public void chunksFromLabels() {
+        List<String> tokens = Lists.newArrayList("Ali", "dün", "bu", "kitabı", "okudu", ".");
+        List<String> labels = Lists.newArrayList("SB", "AB", "OB", "OI", "VB", "VI");
+        List<Chunk> chunks = ChunkLabels.ALL.toChunks(ChunkLabels.ALL.encode(labels), tokens, null);
+        Assert.assertEquals("[[Ali:SUBJECT], [dün:ADJUNCT], [bu kitabı:OBJECT], [okudu .:VERB]]", chunks.toString());
+        Assert.assertEquals(2, chunks.get(2).getStart());
+        Assert.assertEquals(4, chunks.get(2).getEnd());
+        Assert.assertEquals(Lists.newArrayList("bu", "kitabı"), chunks.get(2).getWords());
+    }
+
+    @Test
+    public void beginLabelSplitsSameType() {
+        List<String> tokens = Lists.newArrayList("a", "b", "c");
+        List<Chunk> chunks = ChunkLabels.ALL.toChunks(
+                ChunkLabels.ALL.encode(Lists.newArrayList("AI", "AB", "AI")), tokens, null);
+        Assert.assertEquals("[[a:ADJUNCT], [b c:ADJUNCT]]", chunks.toString());
+    }
+
+    @Test
+    public void invalidLabelsAreSkipped() {
+        List<String> tokens = Lists.newArrayList("a", "b", "c", "d");
+        List<Chunk> chunks = ChunkLabels.ALL.toChunks(
+                ChunkLabels.ALL.encode(Lists.newArrayList("SB", "X", "SI", "Q")), tokens, null);
+        Assert.assertEquals("[[a:SUBJECT], [c:SUBJECT]]", chunks.toString());
+    }
+
+    @Test
+    public void modelLabelOrder() {
+        ChunkLabels labels = new ChunkLabels(new String[]{"VI", "SB", "VB"});
+        List<Chunk> chunks = labels.toChunks(new byte[]{1, 2, 0}, Lists.newArrayList("a", "b", "c"), null);
+        Assert.assertEquals("[[a:SUBJECT], [b c:VERB]]", chunks.toString());
+    }
+
+    @Test
+    public void tokenOffsets() {
+        String sentence = "Ali  geldi.";
+        List<String> tokens = Lists.newArrayList("Ali", "geldi", ".");
+        Assert.assertArrayEquals(new int[]{0, 3, 5, 10, 10, 11},
+                ChunkingPipeline.findTokenOffsets(sentence, tokens));
+        Chunk chunk = new Chunk(1, 3, ChunkerAnnotationFeatureExtractor.ChunkType.VERB, tokens, null);
+        Assert.assertEquals(-1, chunk.getCharStart());
+        chunk.setTokenOffsets(ChunkingPipeline.findTokenOffsets(sentence, tokens));
+        Assert.assertEquals("geldi.", sentence.substring(chunk.getCharStart(), chunk.getCharEnd()));
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void deprecatedChunkConstructor() {
+        List<MorphParse> parses = Collections.nCopies(2, null);
+        Chunk chunk = new Chunk(3, ChunkerAnnotationFeatureExtractor.ChunkType.OBJECT, parses,
+                Lists.newArrayList("bu", "kitabı"));
+        Assert.assertEquals(3, chunk.getStart());
+        Assert.assertEquals(5, chunk.getEnd());
+        Assert.assertEquals(Lists.newArrayList("bu", "kitabı"), chunk.getWords());
+        Assert.assertEquals(parses, chunk.getParses());
+        Assert.assertEquals("[bu kitabı:OBJECT]", chunk.toString());
+    }
+}
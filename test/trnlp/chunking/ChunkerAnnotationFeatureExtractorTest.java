@@ -0,0 +1,67 @@
+package trnlp.chunking;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.io.Files;
+import org.junit.Assert;
+import org.junit.Test;
+import trnlp.apps.TurkishMorphology;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ChunkerAnnotationFeatureExtractorTest {
+
+    static final File ANNOTATED = new File("data/chunker-annotated.txt");
+
+    // single threaded extraction of the original implementation, with an uncached sentence parse.
+    static void baselineExtraction(ChunkerAnnotationFeatureExtractor extractor, File in, File out)
+            throws IOException {
+        try (PrintWriter pw = new PrintWriter(out, "utf-8")) {
+            for (List<ChunkerAnnotationFeatureExtractor.ChunkData> chunkDataList : extractor.getProperLines(in)) {
+                List<ChunkerAnnotationFeatureExtractor.WordFeature> wordFeatures = new ArrayList<>();
+                List<String> words = new ArrayList<>();
+                for (ChunkerAnnotationFeatureExtractor.ChunkData chunkData : chunkDataList) {
+                    List<String> chunkWords = ChunkerAnnotationFeatureExtractor.tokenizer.tokenizeAsStrings(
+                            extractor.preprocessor.process(chunkData.wordsBlock));
+                    for (int i = 0; i < chunkWords.size(); i++) {
+                        wordFeatures.add(extractor.new WordFeature(chunkWords.get(i),
+                                chunkData.tag.label + (i == 0 ? "B" : "I")));
+                    }
+                    words.addAll(chunkWords);
+                }
+                List<String> featureLines = extractor.getFeatureLines(wordFeatures, Joiner.on(" ").join(words));
+                if (featureLines == null)
+                    continue;
+                for (String featureLine : featureLines) {
+                    pw.print(featureLine);
+                    pw.print('\n');
+                }
+                pw.print('\n');
+            }
+        }
+    }
+
+    @Test
+    public void sameWithBaselineExtraction() throws IOException {
+        File expected = File.createTempFile("expected-features", ".txt");
+        expected.deleteOnExit();
+        File actual = File.createTempFile("actual-features", ".txt");
+        actual.deleteOnExit();
+
+        baselineExtraction(new ChunkerAnnotationFeatureExtractor(new TurkishMorphology(0), " ", false),
+                ANNOTATED, expected);
+        ChunkerAnnotationFeatureExtractor extractor =
+                new ChunkerAnnotationFeatureExtractor(new TurkishMorphology(), " ", false);
+        ChunkerAnnotationFeatureExtractor.ExtractionReport report =
+                extractor.generateFromAnnotationFile(ANNOTATED, actual, 4);
+
+        String expectedText = Files.toString(expected, Charsets.UTF_8);
+        Assert.assertEquals(expectedText, Files.toString(actual, Charsets.UTF_8));
+        Assert.assertTrue(report.getSentenceCount() > 0);
+        Assert.assertEquals(expectedText.split("\n\n").length, report.getSentenceCount());
+    }
+}
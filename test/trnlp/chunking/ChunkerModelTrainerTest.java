@@ -0,0 +1,64 @@
+package trnlp.chunking;
+
+import cc.mallet.pipe.Pipe;
+import cc.mallet.pipe.iterator.LineGroupIterator;
+import cc.mallet.types.FeatureVectorSequence;
+import cc.mallet.types.InstanceList;
+import cc.mallet.types.LabelSequence;
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.junit.Assert;
+import org.junit.Test;
+import trnlp.apps.CrfTemplates;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.List;
+import java.util.regex.Pattern;
+
+public class ChunkerModelTrainerTest {
+
+    @Test
+    public void inMemoryInstancesAreSameWithFullFeatureFile() throws IOException {
+        CrfTemplates templates = CrfTemplates.loadFromCrfPlusPlusTemplate(
+                new File("test/data/crfpp_template_1.txt"), "/");
+        File single = new File("test/data/features_out.txt");
+        File full = File.createTempFile("full-features", ".txt");
+        full.deleteOnExit();
+
+        Pipe pipe = ChunkerModelTrainer.newPipe(0);
+        InstanceList instances = new InstanceList(pipe);
+        try (ChunkerModelTrainer.InstanceBuilder builder =
+                     new ChunkerModelTrainer.InstanceBuilder(templates, instances, single, full, " ")) {
+            for (List<CrfTemplates.SingleWordFeature> sentence :
+                    templates.getSingleFeatures(new File("test/data/single_features_2.txt"), " ")) {
+                builder.handle(sentence);
+            }
+        }
+        Assert.assertEquals(Files.toString(new File("test/data/full_features_2.txt"), Charsets.UTF_8),
+                Files.toString(full, Charsets.UTF_8));
+        Assert.assertEquals(templates.getSingleFeatures(new File("test/data/single_features_2.txt"), " ").toString(),
+                templates.getSingleFeatures(single, " ").toString());
+
+        Pipe filePipe = ChunkerModelTrainer.newPipe(0);
+        InstanceList fromFile = new InstanceList(filePipe);
+        try (Reader reader = new FileReader(new File("test/data/full_features_2.txt"))) {
+            fromFile.addThruPipe(new LineGroupIterator(reader, Pattern.compile("^\\s*$"), true));
+        }
+
+        Assert.assertEquals(fromFile.size(), instances.size());
+        Assert.assertEquals(filePipe.getDataAlphabet().size(), pipe.getDataAlphabet().size());
+        for (int i = 0; i < instances.size(); i++) {
+            FeatureVectorSequence expected = (FeatureVectorSequence) fromFile.get(i).getData();
+            FeatureVectorSequence actual = (FeatureVectorSequence) instances.get(i).getData();
+            Assert.assertEquals(expected.size(), actual.size());
+            for (int j = 0; j < expected.size(); j++) {
+                Assert.assertEquals(expected.get(j).toString(true), actual.get(j).toString(true));
+            }
+            Assert.assertEquals(((LabelSequence) fromFile.get(i).getTarget()).toString(),
+                    ((LabelSequence) instances.get(i).getTarget()).toString());
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package trnlp.chunking;
+
+import org.jcaki.SimpleTextReader;
+import org.junit.Assert;
+import org.junit.Test;
+import trnlp.apps.BinaryCrfModel;
+import trnlp.apps.CrfTemplates;
+import trnlp.apps.TurkishMorphology;
+import zemberek3.parser.morphology.SentenceMorphParse;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ChunkingPipelineTest {
+
+    static MalletBasedChunker modelChunker() throws IOException {
+        return new MalletBasedChunker(new File("src/tr/models/chunk-model.ser"),
+                CrfTemplates.loadFromCrfPlusPlusTemplate(new File("crfplusplus/template_cemil"), "/"));
+    }
+
+    static List<String> sentences() throws IOException {
+        List<String> sentences = new ArrayList<>();
+        // unknown words, numbers and punctuation.
+        sentences.add("Ali xqzvbn'ye 3,5 kilo elma aldı.");
+        sentences.add("\"Kitaplar masada\" dedi, 1984'te qwx gelmedi mi?");
+        sentences.addAll(new SimpleTextReader("data/chunker-test.txt", "utf-8").asStringList());
+        return sentences;
+    }
+
+    @Test
+    public void unknownTokensAreChunked() throws IOException {
+        MalletBasedChunker chunker = modelChunker();
+        ChunkingPipeline pipeline = new ChunkingPipeline(chunker, new TurkishMorphology());
+        ChunkingPipeline uncached = new ChunkingPipeline(chunker, new TurkishMorphology(0));
+        List<String> sentences = sentences();
+        List<ChunkingPipeline.Result> batch = pipeline.process(sentences);
+        for (int i = 0; i < sentences.size(); i++) {
+            String sentence = sentences.get(i);
+            ChunkingPipeline.Result result = pipeline.process(sentence);
+            Assert.assertEquals(result.tokens.size(), result.parse.size());
+            for (int j = 0; j < result.tokens.size(); j++) {
+                Assert.assertEquals(result.tokens.get(j), result.parse.getEntry(j).input);
+            }
+            // chunks cover all tokens in order.
+            int position = 0;
+            for (Chunk chunk : result.chunks) {
+                Assert.assertEquals(position, chunk.getStart());
+                Assert.assertTrue(chunk.getCharStart() >= 0 && chunk.getCharEnd() <= sentence.length());
+                position = chunk.getEnd();
+            }
+            Assert.assertEquals(result.tokens.size(), position);
+            Assert.assertEquals(result.toString(), batch.get(i).toString());
+            Assert.assertEquals(result.toString(), uncached.process(sentence).toString());
+        }
+    }
+
+    @Test
+    public void bestOfNBestIsViterbiResult() throws IOException {
+        MalletBasedChunker chunker = modelChunker();
+        ChunkingPipeline pipeline = new ChunkingPipeline(chunker, new TurkishMorphology());
+        for (String sentence : sentences()) {
+            ChunkingPipeline.Result result = pipeline.process(sentence);
+            for (int k : new int[]{1, 5}) {
+                List<MalletBasedChunker.ScoredChunks> nBest = chunker.getNBestChunks(result.tokens, result.parse, k);
+                Assert.assertEquals(result.chunks.toString(), nBest.get(0).chunks.toString());
+            }
+        }
+    }
+
+    @Test
+    public void symbolIdsGiveSameIndexesAsFeatureStrings() throws IOException {
+        MalletBasedChunker chunker = modelChunker();
+        ChunkingPipeline pipeline = new ChunkingPipeline(chunker, new TurkishMorphology());
+        for (String sentence : sentences()) {
+            SentenceMorphParse parse = pipeline.process(sentence).parse;
+            List<List<String>> singleFeatures = new ArrayList<>();
+            for (SentenceMorphParse.Entry entry : parse) {
+                singleFeatures.add(new ChunkerAnnotationFeatureExtractor.TurkishChunkFeatures(
+                        entry.input, entry.parses.get(0)).getColumns());
+            }
+            int[][] expected = chunker.compiledTemplates.getFeatureIndexes(singleFeatures);
+            int[][] actual = chunker.getFeatureIndexes(parse);
+            Assert.assertEquals(expected.length, actual.length);
+            for (int i = 0; i < expected.length; i++) {
+                Assert.assertArrayEquals(expected[i], actual[i]);
+            }
+        }
+    }
+
+    @Test
+    public void binaryModelIsDecodedWithoutCrf() throws IOException {
+        MalletBasedChunker serialized = modelChunker();
+        File serFile = new File("src/tr/models/chunk-model.ser");
+        File binFile = File.createTempFile("chunk-model", ".bin");
+        binFile.deleteOnExit();
+        BinaryCrfModel.fromCrf(serialized.crf).save(binFile);
+        Assert.assertTrue(binFile.length() < serFile.length());
+
+        MalletBasedChunker binary = new MalletBasedChunker(binFile, serialized.templates);
+        Assert.assertNull(binary.crf);
+        TurkishMorphology morphology = new TurkishMorphology();
+        ChunkingPipeline expected = new ChunkingPipeline(serialized, morphology);
+        ChunkingPipeline actual = new ChunkingPipeline(binary, morphology);
+        for (String sentence : sentences()) {
+            Assert.assertEquals(expected.process(sentence).toString(), actual.process(sentence).toString());
+        }
+        Assert.assertNull(binary.crf);
+        Assert.assertEquals(serialized.crf.numStates(), binary.getCrf().numStates());
+    }
+}
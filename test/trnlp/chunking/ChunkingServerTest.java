@@ -0,0 +1,136 @@
+package trnlp.chunking;
+
+import com.google.common.base.Charsets;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+public class ChunkingServerTest {
+
+    // upper cases sentences instead of chunking, and can block workers until released.
+    static class TestServer extends ChunkingServer {
+        final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        final CountDownLatch release;
+
+        TestServer(int workers, int maxBatch, long maxWait, int queueSize, CountDownLatch release) {
+            super(null, workers, maxBatch, maxWait, queueSize, 16);
+            this.release = release;
+        }
+
+        @Override
+        List<String> chunk(List<String> sentences) {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            batchSizes.add(sentences.size());
+            List<String> result = new ArrayList<>();
+            for (String sentence : sentences) {
+                if (sentence.equals("fail"))
+                    throw new IllegalArgumentException("bad sentence");
+                result.add(sentence.toUpperCase());
+            }
+            return result;
+        }
+    }
+
+    static class Client implements Closeable {
+        final Socket socket;
+        final BufferedReader reader;
+        final Writer writer;
+
+        Client(int port) throws IOException {
+            socket = new Socket(InetAddress.getLoopbackAddress(), port);
+            reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), Charsets.UTF_8));
+            writer = new OutputStreamWriter(socket.getOutputStream(), Charsets.UTF_8);
+        }
+
+        String send(String line) throws IOException {
+            writer.write(line + "\n");
+            writer.flush();
+            return reader.readLine();
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void requestsAndErrors() throws IOException {
+        try (TestServer server = new TestServer(2, 8, 1, 100, new CountDownLatch(0))) {
+            server.start(0);
+            try (Client client = new Client(server.getPort())) {
+                Assert.assertEquals("OK ALI GELDI.", client.send("ali geldi."));
+                Assert.assertEquals("OK ", client.send("  "));
+                Assert.assertEquals("ERROR bad sentence", client.send("fail"));
+                Assert.assertEquals("OK ÇAY", client.send("çay"));
+            }
+            Assert.assertEquals(1, server.getStats().getFailedCount());
+        }
+    }
+
+    @Test
+    public void concurrentRequestsAreBatched() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        try (final TestServer server = new TestServer(1, 8, 50, 100, release)) {
+            server.start(0);
+            ExecutorService executor = Executors.newFixedThreadPool(8);
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                final String sentence = "cümle " + i;
+                futures.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws IOException {
+                        try (Client client = new Client(server.getPort())) {
+                            return client.send(sentence);
+                        }
+                    }
+                }));
+            }
+            // let the requests pile up while the only worker is blocked in its first batch.
+            Thread.sleep(300);
+            release.countDown();
+            for (int i = 0; i < 8; i++) {
+                Assert.assertEquals("OK CÜMLE " + i, futures.get(i).get(10, TimeUnit.SECONDS));
+            }
+            executor.shutdown();
+            Assert.assertEquals(8, server.getStats().getAcceptedCount());
+            Assert.assertTrue("batches: " + server.batchSizes, server.batchSizes.size() < 8);
+            for (int size : server.batchSizes) {
+                Assert.assertTrue(size <= 8);
+            }
+        }
+    }
+
+    @Test
+    public void fullQueueIsRejected() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        try (TestServer server = new TestServer(1, 1, 0, 1, release)) {
+            server.start(0);
+            // first request blocks the worker, second fills the queue.
+            ChunkingServer.Request first = server.submit("a");
+            while (!server.queue.isEmpty()) {
+                Thread.sleep(1);
+            }
+            ChunkingServer.Request second = server.submit("b");
+            Assert.assertNotNull(first);
+            Assert.assertNotNull(second);
+            try (Client client = new Client(server.getPort())) {
+                Assert.assertEquals("BUSY", client.send("c"));
+            }
+            release.countDown();
+            Assert.assertEquals("OK A", first.await());
+            Assert.assertEquals("OK B", second.await());
+            Assert.assertEquals(1, server.getStats().getRejectedCount());
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package trnlp.chunking;
+
+import cc.mallet.fst.CRF;
+import cc.mallet.types.Alphabet;
+import cc.mallet.types.IndexedSparseVector;
+import cc.mallet.types.LabelAlphabet;
+import cc.mallet.types.SparseVector;
+import org.jcaki.SimpleTextReader;
+import org.junit.Assert;
+import org.junit.Test;
+import trnlp.apps.CrfTemplates;
+import trnlp.apps.TurkishSentenceTokenizer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.*;
+
+/**
+ * Uses single tokenizer and chunker instances from many threads and checks that results are the same with single
+ * threaded results.
+ */
+public class ConcurrentChunkingTest {
+
+    static final int THREAD_COUNT = 8;
+    static final String[] LABELS = {"SB", "SI", "OB", "OI", "AB", "AI", "VB", "VI"};
+
+    static List<String> randomWords(Random random, int vocabularySize) {
+        int length = 1 + random.nextInt(15);
+        List<String> words = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) {
+            words.add("w" + random.nextInt(vocabularySize));
+        }
+        return words;
+    }
+
+    static List<List<String>> singleFeatures(List<String> words) {
+        List<List<String>> result = new ArrayList<>();
+        for (String word : words) {
+            result.add(Arrays.asList(word, word.toUpperCase()));
+        }
+        return result;
+    }
+
+    static MalletBasedChunker randomChunker(Random random) throws IOException {
+        CrfTemplates templates = CrfTemplates.loadFromCrfPlusPlusTemplate(
+                new File("test/data/crfpp_template_1.txt"), "/");
+        Alphabet features = new Alphabet();
+        for (int i = 0; i < 200; i++) {
+            for (List<String> line : templates.getFeatureLinesForTest(singleFeatures(randomWords(random, 50)))) {
+                for (String feature : line.subList(0, line.size() - 1)) {
+                    features.lookupIndex(feature);
+                }
+            }
+        }
+        features.stopGrowth();
+        LabelAlphabet labels = new LabelAlphabet();
+        for (String label : LABELS) {
+            labels.lookupIndex(label);
+        }
+        CRF crf = new CRF(features, labels);
+        crf.addFullyConnectedStates(LABELS);
+        for (int i = 0; i < crf.numStates(); i++) {
+            crf.getState(i).setInitialWeight(random.nextGaussian());
+            crf.getState(i).setFinalWeight(random.nextGaussian());
+        }
+        SparseVector[] weights = crf.getWeights();
+        int featureCount = features.size();
+        for (int w = 0; w < weights.length; w++) {
+            int[] indexes = new int[featureCount / 4];
+            double[] values = new double[indexes.length];
+            for (int i = 0; i < indexes.length; i++) {
+                indexes[i] = i * 4 + random.nextInt(4);
+                values[i] = random.nextGaussian();
+            }
+            crf.setWeights(w, new IndexedSparseVector(indexes, values));
+            crf.setDefaultWeight(w, random.nextGaussian());
+        }
+        return new MalletBasedChunker(crf, templates);
+    }
+
+    static String chunkString(MalletBasedChunker chunker, List<String> words, byte[] labels) {
+        return chunker.getChunks(words, labels, chunker.labels, null).toString();
+    }
+
+    @Test
+    public void sharedChunker() throws Exception {
+        Random random = new Random(1);
+        final MalletBasedChunker shared = randomChunker(random);
+        final MalletBasedChunker reference = new MalletBasedChunker(shared.getCrf(), shared.templates);
+
+        // most words are not in the model, they must not change the vocabulary shared by the threads.
+        int symbolCount = shared.compiledTemplates.getSymbolCount();
+        final List<List<String>> sentences = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            sentences.add(randomWords(random, 100000));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        List<Future<List<String>>> futures = new ArrayList<>();
+        for (int t = 0; t < THREAD_COUNT; t++) {
+            final int offset = t * 97;
+            futures.add(executor.submit(new Callable<List<String>>() {
+                @Override
+                public List<String> call() throws Exception {
+                    startLatch.await();
+                    List<String> results = new ArrayList<>(Collections.<String>nCopies(sentences.size(), null));
+                    // every thread starts from a different sentence.
+                    for (int i = 0; i < sentences.size(); i++) {
+                        int k = (i + offset) % sentences.size();
+                        List<String> words = sentences.get(k);
+                        results.set(k, chunkString(shared, words, shared.decodeFeatures(singleFeatures(words))));
+                    }
+                    return results;
+                }
+            }));
+        }
+        startLatch.countDown();
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(2, TimeUnit.MINUTES));
+
+        List<String> expected = new ArrayList<>();
+        for (List<String> words : sentences) {
+            expected.add(chunkString(reference, words, reference.decodeFeatures(singleFeatures(words))));
+        }
+        for (Future<List<String>> future : futures) {
+            Assert.assertEquals(expected, future.get());
+        }
+        Assert.assertEquals(symbolCount, shared.compiledTemplates.getSymbolCount());
+    }
+
+    @Test
+    public void sharedTokenizer() throws Exception {
+        final List<String> sentences = new SimpleTextReader("data/chunker-test.txt", "utf-8").asStringList();
+        final TurkishSentenceTokenizer shared = new TurkishSentenceTokenizer();
+        List<List<String>> expected = new ArrayList<>();
+        for (String sentence : sentences) {
+            expected.add(new TurkishSentenceTokenizer().tokenizeAsStrings(sentence));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+        List<Future<List<List<String>>>> futures = new ArrayList<>();
+        for (int t = 0; t < THREAD_COUNT; t++) {
+            futures.add(executor.submit(new Callable<List<List<String>>>() {
+                @Override
+                public List<List<String>> call() {
+                    List<List<String>> results = new ArrayList<>();
+                    for (int repeat = 0; repeat < 20; repeat++) {
+                        results.clear();
+                        for (String sentence : sentences) {
+                            results.add(shared.tokenizeAsStrings(sentence));
+                        }
+                    }
+                    return results;
+                }
+            }));
+        }
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(2, TimeUnit.MINUTES));
+        for (Future<List<List<String>>> future : futures) {
+            Assert.assertEquals(expected, future.get());
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package trnlp.chunking;
+
+import org.junit.Assert;
+import org.junit.Test;
+import trnlp.apps.TurkishMorphology;
+import zemberek3.parser.morphology.SentenceMorphParse;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CorpusChunkerTest {
+
+    // makes one subject chunk of all words after a random delay. Fails for sentences that contain "fail".
+    static class SlowChunker extends Chunker {
+        final Random random = new Random(1);
+
+        @Override
+        protected List<Chunk> getChunks(List<String> words, SentenceMorphParse input) {
+            int delay;
+            synchronized (random) {
+                delay = words.get(0).equals("w0") ? 300 : random.nextInt(4);
+            }
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            if (words.contains("fail"))
+                throw new IllegalArgumentException("bad sentence");
+            return Collections.singletonList(
+                    new Chunk(0, words.size(), ChunkerAnnotationFeatureExtractor.ChunkType.SUBJECT, words, input));
+        }
+    }
+
+    // counts lines written by the chunker.
+    static class CountingWriter extends StringWriter {
+        final AtomicInteger lines = new AtomicInteger();
+
+        @Override
+        public void write(int c) {
+            super.write(c);
+            if (c == '\n')
+                lines.incrementAndGet();
+        }
+    }
+
+    // records the most lines read but not written yet.
+    static class CountingReader extends BufferedReader {
+        final CountingWriter writer;
+        int read;
+        int maxInFlight;
+
+        CountingReader(String input, CountingWriter writer) {
+            super(new StringReader(input));
+            this.writer = writer;
+        }
+
+        @Override
+        public String readLine() throws IOException {
+            maxInFlight = Math.max(maxInFlight, read - writer.lines.get());
+            String line = super.readLine();
+            if (line != null)
+                read++;
+            return line;
+        }
+    }
+
+    @Test
+    public void outputIsInInputOrder() throws IOException {
+        int threads = 4;
+        int window = 8;
+        List<String> lines = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            if (i == 57) {
+                lines.add("w57 fail");
+                expected.add("");
+            } else if (i == 90) {
+                lines.add("");
+                expected.add("");
+            } else {
+                lines.add("w" + i + " a b");
+                expected.add("[w" + i + " a b:SUBJECT]");
+            }
+        }
+        StringBuilder input = new StringBuilder();
+        for (String line : lines) {
+            input.append(line).append('\n');
+        }
+        CountingWriter writer = new CountingWriter();
+        CountingReader reader = new CountingReader(input.toString(), writer);
+        CorpusChunker corpusChunker = new CorpusChunker(
+                new SlowChunker(), new TurkishMorphology(), threads, window, CorpusChunker.Unit.LINE, 0);
+
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        PrintStream systemErr = System.err;
+        System.setErr(new PrintStream(errors, true, "utf-8"));
+        CorpusChunker.Stats stats;
+        try {
+            stats = corpusChunker.process(reader, writer);
+        } finally {
+            System.setErr(systemErr);
+        }
+
+        Assert.assertTrue(errors.toString("utf-8").contains("Cannot chunk sentence 57 [w57 fail]"));
+        Assert.assertEquals(200, stats.getSentenceCount());
+        Assert.assertEquals(1, stats.getFailedCount());
+        List<String> actual = new ArrayList<>();
+        Collections.addAll(actual, writer.toString().split("\n", -1));
+        Assert.assertEquals("", actual.remove(actual.size() - 1));
+        Assert.assertEquals(expected, actual);
+        // first sentence is slow, so reading goes on until the window is full and then waits for the writer.
+        // Writer holds one more sentence that it waits for.
+        Assert.assertTrue("In flight: " + reader.maxInFlight, reader.maxInFlight >= window);
+        Assert.assertTrue("In flight: " + reader.maxInFlight, reader.maxInFlight <= window + 1);
+    }
+}
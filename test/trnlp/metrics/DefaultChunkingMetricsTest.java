@@ -0,0 +1,80 @@
+package trnlp.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+public class DefaultChunkingMetricsTest {
+
+    @Test
+    public void histogramBuckets() {
+        for (long value : new long[]{0, 1, 3, 4, 7, 8, 1000, 123456789, Long.MAX_VALUE}) {
+            int index = LatencyHistogram.bucketIndex(value);
+            Assert.assertTrue(index < LatencyHistogram.BUCKET_COUNT);
+            Assert.assertTrue(value <= LatencyHistogram.bucketUpperBound(index));
+            if (index > 0)
+                Assert.assertTrue(value > LatencyHistogram.bucketUpperBound(index - 1));
+        }
+    }
+
+    @Test
+    public void percentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000);
+        }
+        Assert.assertEquals(1000, histogram.getCount());
+        Assert.assertEquals(1000000, histogram.getMaxNanos());
+        Assert.assertEquals(500500, histogram.getMeanNanos(), 0.001);
+        long p50 = histogram.getPercentileNanos(50);
+        Assert.assertTrue(p50 >= 500000 && p50 <= 500000 * 1.25);
+        Assert.assertEquals(1000000, histogram.getPercentileNanos(100));
+    }
+
+    @Test
+    public void sentencesAndChunks() throws Exception {
+        DefaultChunkingMetrics metrics = new DefaultChunkingMetrics();
+        metrics.stop(Stage.DECODE, metrics.start());
+        metrics.sentence(5);
+        metrics.sentence(500);
+        metrics.chunk("Özne");
+        metrics.chunk("Özne");
+        metrics.chunk("Yüklem");
+
+        Assert.assertEquals(2, metrics.getSentenceCount());
+        Assert.assertEquals(505, metrics.getTokenCount());
+        long[] lengths = metrics.getSentenceLengthHistogram();
+        Assert.assertEquals(1, lengths[5]);
+        Assert.assertEquals(1, lengths[DefaultChunkingMetrics.MAX_SENTENCE_LENGTH]);
+        Assert.assertEquals(2L, (long) metrics.getChunkTypeCounts().get("Özne"));
+        Assert.assertEquals(1L, (long) metrics.getStageCounts().get("DECODE"));
+        Assert.assertEquals(0L, (long) metrics.getStageCounts().get("PARSE"));
+
+        ObjectName name = metrics.registerMBean("trnlp:type=ChunkingMetricsTest");
+        try {
+            Object count = ManagementFactory.getPlatformMBeanServer().getAttribute(name, "SentenceCount");
+            Assert.assertEquals(2L, count);
+        } finally {
+            DefaultChunkingMetrics.unregisterMBean(name);
+        }
+
+        metrics.reset();
+        Assert.assertEquals(0, metrics.getSentenceCount());
+        Assert.assertTrue(metrics.getChunkTypeCounts().isEmpty());
+    }
+
+    @Test
+    public void registry() {
+        Assert.assertSame(ChunkingMetrics.NOOP, MetricsRegistry.get());
+        DefaultChunkingMetrics metrics = new DefaultChunkingMetrics();
+        MetricsRegistry.set(metrics);
+        try {
+            Assert.assertSame(metrics, MetricsRegistry.get());
+        } finally {
+            MetricsRegistry.disable();
+        }
+        Assert.assertSame(ChunkingMetrics.NOOP, MetricsRegistry.get());
+    }
+}